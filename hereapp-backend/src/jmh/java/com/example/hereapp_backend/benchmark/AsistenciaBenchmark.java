@@ -0,0 +1,145 @@
+package com.example.hereapp_backend.benchmark;
+
+import com.example.hereapp_backend.models.ResultadoRegistros;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.example.hereapp_backend.benchmark.EntornoBenchmark.ASIGNATURA_ID;
+import static com.example.hereapp_backend.benchmark.EntornoBenchmark.GRUPO_ID;
+import static com.example.hereapp_backend.benchmark.EntornoBenchmark.HOY;
+import static com.example.hereapp_backend.benchmark.EntornoBenchmark.PROFESOR_EMAIL;
+import static com.example.hereapp_backend.benchmark.EntornoBenchmark.PROFESOR_UID;
+
+/**
+ * Caminos críticos de asistencia: los cuatro tipos de pase NFC, la creación de registros
+ * de matriculados y la cadena de finalización, para clases de 10, 50 y 200 alumnos.
+ *
+ * Cada escenario necesita un estado de partida concreto (sin asistencia, con entrada abierta,
+ * sin sesión, con sesión abierta...), así que se restaura antes de cada invocación. Las
+ * operaciones cuestan decenas o cientos de microsegundos, por encima del margen en que
+ * Level.Invocation distorsiona la medida.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsistenciaBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Clase {
+        @Param({"10", "50", "200"})
+        public int alumnos;
+
+        EntornoBenchmark entorno;
+
+        @Setup(Level.Trial)
+        public void arrancar() throws Exception {
+            entorno = new EntornoBenchmark(alumnos);
+        }
+
+        @TearDown(Level.Trial)
+        public void parar() {
+            entorno.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SinAsistencia {
+        @Setup(Level.Invocation)
+        public void preparar(Clase clase) {
+            clase.entorno.vaciarAsistencias();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class EntradaAbierta {
+        @Setup(Level.Invocation)
+        public void preparar(Clase clase) {
+            clase.entorno.prepararEntradaAbierta(0);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SinSesion {
+        @Setup(Level.Invocation)
+        public void preparar(Clase clase) {
+            clase.entorno.vaciarSesiones();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SesionAbierta {
+        @Setup(Level.Invocation)
+        public void preparar(Clase clase) {
+            clase.entorno.prepararSesion(null);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SesionSinRegistros {
+        int sesionId;
+
+        @Setup(Level.Invocation)
+        public void preparar(Clase clase) {
+            sesionId = clase.entorno.prepararSesion(null);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ClaseTerminada {
+        int sesionId;
+
+        @Setup(Level.Invocation)
+        public void preparar(Clase clase) {
+            sesionId = clase.entorno.prepararClaseTerminada();
+        }
+    }
+
+    @Benchmark
+    public String alumnoEntrada(Clase clase, SinAsistencia estado) {
+        return clase.entorno.asistenciaBBDD.procesarAsistenciaNFC(
+                EntornoBenchmark.uidAlumno(0), EntornoBenchmark.emailAlumno(0));
+    }
+
+    @Benchmark
+    public String alumnoSalida(Clase clase, EntradaAbierta estado) {
+        return clase.entorno.asistenciaBBDD.procesarAsistenciaNFC(
+                EntornoBenchmark.uidAlumno(0), EntornoBenchmark.emailAlumno(0));
+    }
+
+    @Benchmark
+    public String profesorAbreSesion(Clase clase, SinSesion estado) {
+        return clase.entorno.asistenciaBBDD.procesarAsistenciaNFC(PROFESOR_UID, PROFESOR_EMAIL);
+    }
+
+    @Benchmark
+    public String profesorCierraSesion(Clase clase, SesionAbierta estado) {
+        return clase.entorno.asistenciaBBDD.procesarAsistenciaNFC(PROFESOR_UID, PROFESOR_EMAIL);
+    }
+
+    @Benchmark
+    public ResultadoRegistros crearRegistrosAlumnosMatriculados(Clase clase, SesionSinRegistros estado) {
+        return clase.entorno.asistenciaAlumnoBBDD.crearRegistrosAlumnosMatriculados(
+                estado.sesionId, ASIGNATURA_ID, GRUPO_ID, HOY);
+    }
+
+    @Benchmark
+    public void finalizarAsistenciasSesion(Clase clase, ClaseTerminada estado) {
+        clase.entorno.finalizacionSesionBBDD.finalizarAsistenciasSesion(
+                estado.sesionId, ASIGNATURA_ID, GRUPO_ID, HOY);
+    }
+}
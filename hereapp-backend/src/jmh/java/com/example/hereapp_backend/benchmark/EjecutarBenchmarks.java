@@ -0,0 +1,28 @@
+package com.example.hereapp_backend.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Punto de entrada del perfil jmh. Lanza los benchmarks que coincidan con el patrón recibido
+ * con el perfilador de GC (bytes asignados por operación, gc.alloc.rate.norm) además de los
+ * percentiles de latencia de Mode.SampleTime, y deja el resultado en target/jmh-resultados.json.
+ */
+public class EjecutarBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        String incluir = args.length > 0 ? args[0] : ".*";
+
+        Options opciones = new OptionsBuilder()
+                .include(incluir)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-resultados.json")
+                .build();
+
+        new Runner(opciones).run();
+    }
+}
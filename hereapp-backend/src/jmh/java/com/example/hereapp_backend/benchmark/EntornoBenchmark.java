@@ -0,0 +1,223 @@
+package com.example.hereapp_backend.benchmark;
+
+import com.example.hereapp_backend.config.JdbcTemplateContado;
+import com.example.hereapp_backend.config.MetricasAsistencia;
+import com.example.hereapp_backend.config.RelojAplicacion;
+import com.example.hereapp_backend.config.TimeZoneConfig;
+import com.example.hereapp_backend.dataAccess.AsistenciaAlumnoBBDD;
+import com.example.hereapp_backend.dataAccess.AsistenciaBBDD;
+import com.example.hereapp_backend.dataAccess.BaseDatosPrueba;
+import com.example.hereapp_backend.dataAccess.BloqueosPorUsuario;
+import com.example.hereapp_backend.dataAccess.FinalizacionSesionBBDD;
+import com.example.hereapp_backend.dataAccess.HorarioBBDD;
+import com.example.hereapp_backend.dataAccess.ResumenAsistenciaBBDD;
+import com.example.hereapp_backend.dataAccess.SesionBBDD;
+import com.example.hereapp_backend.dataAccess.TarjetaBBDD;
+import com.example.hereapp_backend.dataAccess.UsuarioBBDD;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Base de datos H2 en modo MySQL con los *BBDD reales montados a mano, sin contexto Spring.
+ *
+ * El reloj está fijo el lunes 10/03/2025 a las 09:10: el profesor tiene clase a las 09:00,
+ * así que un pase suyo abre sesión, y los registros preparados a las 09:00 llevan 10 minutos
+ * abiertos, lo que permite registrar salidas y cerrar sesiones.
+ */
+public class EntornoBenchmark implements AutoCloseable {
+
+    public static final int PROFESOR_ID = 1;
+    public static final String PROFESOR_UID = "P0001";
+    public static final String PROFESOR_EMAIL = "profesor@ufv.es";
+    public static final int PRIMER_ALUMNO_ID = 1000;
+    public static final int ASIGNATURA_ID = 1;
+    public static final int GRUPO_ID = 1;
+    public static final LocalDate HOY = LocalDate.of(2025, 3, 10);
+    public static final LocalTime INICIO_CLASE = LocalTime.of(9, 0);
+
+    private static final ZonedDateTime AHORA = ZonedDateTime.of(HOY, LocalTime.of(9, 10), TimeZoneConfig.ZONA_MADRID);
+    private static final AtomicInteger BASES = new AtomicInteger();
+
+    private final HikariDataSource dataSource;
+    private final int alumnos;
+
+    final JdbcTemplate jdbcTemplate;
+    final AsistenciaBBDD asistenciaBBDD;
+    final AsistenciaAlumnoBBDD asistenciaAlumnoBBDD;
+    final FinalizacionSesionBBDD finalizacionSesionBBDD;
+
+    public EntornoBenchmark(int alumnos) throws Exception {
+        this(alumnos, 4, 0);
+    }
+
+    /**
+     * @param conexiones tamaño del pool Hikari
+     * @param latenciaMs espera añadida a cada sentencia, como el viaje de ida y vuelta a RDS
+     *                   que H2 en memoria no tiene
+     */
+    public EntornoBenchmark(int alumnos, int conexiones, long latenciaMs) throws Exception {
+        this.alumnos = alumnos;
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:benchmark" + BASES.incrementAndGet()
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setMaximumPoolSize(conexiones);
+
+        BaseDatosPrueba.crearEsquema(dataSource);
+
+        jdbcTemplate = latenciaMs > 0 ? new JdbcTemplateConLatencia(dataSource, latenciaMs)
+                : new JdbcTemplateContado(dataSource);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        RelojAplicacion reloj = new RelojAplicacion(Clock.fixed(AHORA.toInstant(), TimeZoneConfig.ZONA_MADRID));
+
+        poblar();
+
+        TarjetaBBDD tarjetaBBDD = new TarjetaBBDD(jdbcTemplate, transactionTemplate, 50_000);
+        tarjetaBBDD.recargarCache();
+        UsuarioBBDD usuarioBBDD = new UsuarioBBDD(null, jdbcTemplate, tarjetaBBDD, 60_000, 600_000);
+        HorarioBBDD horarioBBDD = new HorarioBBDD(jdbcTemplate, reloj);
+        horarioBBDD.recargarIndice();
+
+        asistenciaAlumnoBBDD = new AsistenciaAlumnoBBDD(jdbcTemplate, transactionTemplate);
+        SesionBBDD sesionBBDD = new SesionBBDD(jdbcTemplate, asistenciaAlumnoBBDD, horarioBBDD, transactionTemplate);
+        ResumenAsistenciaBBDD resumenAsistenciaBBDD = new ResumenAsistenciaBBDD(jdbcTemplate, transactionTemplate,
+                reloj, false);
+        finalizacionSesionBBDD = new FinalizacionSesionBBDD(jdbcTemplate, asistenciaAlumnoBBDD, sesionBBDD,
+                resumenAsistenciaBBDD, transactionTemplate, reloj, 10, 5, 20, 1, 5, false);
+        asistenciaBBDD = new AsistenciaBBDD(usuarioBBDD, sesionBBDD, asistenciaAlumnoBBDD,
+                finalizacionSesionBBDD, new BloqueosPorUsuario(256), reloj,
+                new MetricasAsistencia(new SimpleMeterRegistry()));
+    }
+
+    public static String uidAlumno(int indice) {
+        return String.format("A%05d", indice);
+    }
+
+    public static String emailAlumno(int indice) {
+        return "alumno" + indice + "@ufv.es";
+    }
+
+    private void poblar() {
+        jdbcTemplate.update("INSERT INTO usuario (usuario_id, nombre, email) VALUES (?, 'Profesor', ?)",
+                PROFESOR_ID, PROFESOR_EMAIL);
+        jdbcTemplate.update("INSERT INTO usuario_roles VALUES (?, 'PROFESOR')", PROFESOR_ID);
+        jdbcTemplate.update("INSERT INTO tarjetas_mifare (uid_mifare, usuario_id) VALUES (?, ?)",
+                PROFESOR_UID, PROFESOR_ID);
+        jdbcTemplate.update("""
+                INSERT INTO horario (profesor_id, dia_semana, asignatura_id, grupo_id, hora_inicio, hora_fin)
+                VALUES (?, 'lunes', ?, ?, ?, ?)
+                """, PROFESOR_ID, ASIGNATURA_ID, GRUPO_ID, INICIO_CLASE, INICIO_CLASE.plusHours(1));
+
+        List<Object[]> usuarios = new ArrayList<>();
+        List<Object[]> ids = new ArrayList<>();
+        List<Object[]> tarjetas = new ArrayList<>();
+        for (int i = 0; i < alumnos; i++) {
+            int usuarioId = PRIMER_ALUMNO_ID + i;
+            usuarios.add(new Object[]{usuarioId, emailAlumno(i)});
+            ids.add(new Object[]{usuarioId});
+            tarjetas.add(new Object[]{uidAlumno(i), usuarioId});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO usuario (usuario_id, nombre, email) VALUES (?, 'Alumno', ?)", usuarios);
+        jdbcTemplate.batchUpdate("INSERT INTO usuario_roles VALUES (?, 'ALUMNO')", ids);
+        jdbcTemplate.batchUpdate("INSERT INTO tarjetas_mifare (uid_mifare, usuario_id) VALUES (?, ?)", tarjetas);
+        jdbcTemplate.batchUpdate("INSERT INTO matricula VALUES (?, " + ASIGNATURA_ID + ", " + GRUPO_ID + ")", ids);
+    }
+
+    // ===== Estados de partida de cada escenario =====
+
+    void vaciarAsistencias() {
+        jdbcTemplate.update("DELETE FROM asistencia_alumno");
+        jdbcTemplate.update("DELETE FROM finalizacion_sesion");
+        jdbcTemplate.update("DELETE FROM resumen_asistencia");
+        jdbcTemplate.update("DELETE FROM resumen_asistencia_sesion");
+    }
+
+    void vaciarSesiones() {
+        vaciarAsistencias();
+        jdbcTemplate.update("DELETE FROM sesion");
+    }
+
+    // Alumno con la entrada registrada a la hora de inicio de la clase
+    void prepararEntradaAbierta(int indiceAlumno) {
+        jdbcTemplate.update("DELETE FROM asistencia_alumno WHERE usuario_id = ?", PRIMER_ALUMNO_ID + indiceAlumno);
+        jdbcTemplate.update("""
+                INSERT INTO asistencia_alumno
+                (usuario_id, fecha_asistencia_alumno, hora_entrada_alumno, tipo_asistencia_id, tarjeta_id)
+                VALUES (?, ?, ?, 5, NULL)
+                """, PRIMER_ALUMNO_ID + indiceAlumno, HOY, INICIO_CLASE);
+    }
+
+    // Sesión del profesor iniciada a la hora de clase; con salida si se pide cerrada
+    int prepararSesion(LocalTime horaSalida) {
+        vaciarSesiones();
+        jdbcTemplate.update("""
+                INSERT INTO sesion (fecha_creacion, usuario_id, profesor_id, hora_entrada_profesor,
+                                    hora_salida_profesor, asignatura_id, grupo_id, tarjeta_id)
+                VALUES (?, ?, ?, ?, ?, ?, ?, 1)
+                """, HOY, PROFESOR_ID, PROFESOR_ID, INICIO_CLASE, horaSalida, ASIGNATURA_ID, GRUPO_ID);
+        return jdbcTemplate.queryForObject("SELECT MAX(sesion_id) FROM sesion", Integer.class);
+    }
+
+    /**
+     * Registros de una clase ya cerrada a las 09:50: un tercio entró y salió, un tercio
+     * solo entró y el resto no pasó la tarjeta
+     */
+    int prepararClaseTerminada() {
+        int sesionId = prepararSesion(LocalTime.of(9, 50));
+        List<Object[]> filas = new ArrayList<>();
+        for (int i = 0; i < alumnos; i += 3) {
+            filas.add(new Object[]{PRIMER_ALUMNO_ID + i, INICIO_CLASE, LocalTime.of(9, 45)});
+            if (i + 1 < alumnos) {
+                filas.add(new Object[]{PRIMER_ALUMNO_ID + i + 1, INICIO_CLASE, null});
+            }
+        }
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO asistencia_alumno
+                (usuario_id, asignatura_id, grupo_id, fecha_asistencia_alumno,
+                 hora_entrada_alumno, hora_salida_alumno, tipo_asistencia_id)
+                VALUES (?, %d, %d, '%s', ?, ?, 5)
+                """.formatted(ASIGNATURA_ID, GRUPO_ID, HOY), filas);
+        return sesionId;
+    }
+
+    // Duerme antes de cada sentencia con la conexión ya tomada, igual que esperaría la respuesta de la red
+    private static final class JdbcTemplateConLatencia extends JdbcTemplateContado {
+        private final long latenciaMs;
+
+        private JdbcTemplateConLatencia(DataSource dataSource, long latenciaMs) {
+            super(dataSource);
+            this.latenciaMs = latenciaMs;
+        }
+
+        @Override
+        protected void applyStatementSettings(Statement stmt) throws SQLException {
+            try {
+                Thread.sleep(latenciaMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrumpido durante la latencia simulada", e);
+            }
+            super.applyStatementSettings(stmt);
+        }
+    }
+
+    @Override
+    public void close() {
+        finalizacionSesionBBDD.detener();
+        dataSource.close();
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.hereapp_backend.benchmark;
+
+import com.example.hereapp_backend.config.EjecutorContrasenas;
+import com.example.hereapp_backend.dataAccess.LogInBBDD;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.example.hereapp_backend.benchmark.EntornoBenchmark.PROFESOR_EMAIL;
+import static com.example.hereapp_backend.benchmark.EntornoBenchmark.PROFESOR_ID;
+
+/**
+ * Inicios de sesión por segundo con un solo hilo, es decir, por núcleo, según el coste de
+ * BCrypt. Cada punto de coste debería dividir el resultado aproximadamente por dos; la
+ * consulta de credenciales apenas cuenta frente a BCrypt.
+ *
+ * El hash guardado tiene el mismo coste que el codificador, así que no se rehace en cada
+ * iteración; rehacerlo solo ocurre una vez por usuario tras subir el coste.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@Threads(1)
+public class LogInBenchmark {
+
+    private static final String CONTRASENA = "contrasena-de-prueba";
+
+    @State(Scope.Benchmark)
+    public static class Login {
+        @Param({"8", "10", "12"})
+        public int coste;
+
+        EntornoBenchmark entorno;
+        EjecutorContrasenas ejecutor;
+        LogInBBDD logInBBDD;
+
+        @Setup(Level.Trial)
+        public void arrancar() throws Exception {
+            entorno = new EntornoBenchmark(10);
+            BCryptPasswordEncoder codificador = new BCryptPasswordEncoder(coste);
+            entorno.jdbcTemplate.update("UPDATE usuario SET contrasena = ? WHERE usuario_id = ?",
+                    codificador.encode(CONTRASENA), PROFESOR_ID);
+            ejecutor = new EjecutorContrasenas(1, 10, 60_000);
+            logInBBDD = new LogInBBDD(entorno.jdbcTemplate, codificador, ejecutor);
+        }
+
+        @TearDown(Level.Trial)
+        public void parar() {
+            ejecutor.detener();
+            entorno.close();
+        }
+    }
+
+    @Benchmark
+    public String loginCorrecto(Login login) {
+        return login.logInBBDD.validarTipoUsuario(PROFESOR_EMAIL, CONTRASENA);
+    }
+
+    @Benchmark
+    public String loginIncorrecto(Login login) {
+        return login.logInBBDD.validarTipoUsuario(PROFESOR_EMAIL, "otra");
+    }
+}
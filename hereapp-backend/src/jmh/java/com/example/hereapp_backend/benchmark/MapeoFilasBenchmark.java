@@ -0,0 +1,91 @@
+package com.example.hereapp_backend.benchmark;
+
+import com.example.hereapp_backend.dataAccess.AsistenciaAlumnoBBDD;
+import com.example.hereapp_backend.dataAccess.SesionBBDD;
+import com.example.hereapp_backend.models.AsistenciaAbierta;
+import com.example.hereapp_backend.models.SesionAbierta;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.hereapp_backend.benchmark.EntornoBenchmark.HOY;
+import static com.example.hereapp_backend.benchmark.EntornoBenchmark.PRIMER_ALUMNO_ID;
+import static com.example.hereapp_backend.benchmark.EntornoBenchmark.PROFESOR_ID;
+
+/**
+ * Lecturas de un pase (asistencia abierta, sesión abierta y hora de salida del profesor) con
+ * queryForList, como antes de los RowMapper tipados, frente a los RowMapper tipados. Las
+ * sentencias son las mismas que lanzan AsistenciaAlumnoBBDD y SesionBBDD.
+ *
+ * La diferencia que interesa es gc.alloc.rate.norm (bytes por operación), que da el
+ * perfilador de GC de EjecutarBenchmarks; el tiempo lo domina H2 y apenas cambia.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapeoFilasBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Pase {
+        EntornoBenchmark entorno;
+        JdbcTemplate jdbcTemplate;
+        int sesionId;
+
+        @Setup(Level.Trial)
+        public void arrancar() throws Exception {
+            entorno = new EntornoBenchmark(10);
+            jdbcTemplate = entorno.jdbcTemplate;
+            sesionId = entorno.prepararSesion(null);
+            entorno.prepararEntradaAbierta(0);
+        }
+
+        @TearDown(Level.Trial)
+        public void parar() {
+            entorno.close();
+        }
+    }
+
+    @Benchmark
+    public void conMapas(Pase pase, Blackhole bh) {
+        List<Map<String, Object>> asistencias = pase.jdbcTemplate.queryForList(
+                AsistenciaAlumnoBBDD.SQL_ASISTENCIA_ABIERTA, PRIMER_ALUMNO_ID, HOY);
+        List<Map<String, Object>> sesiones = pase.jdbcTemplate.queryForList(
+                SesionBBDD.SQL_SESION_ABIERTA_PROFESOR, PROFESOR_ID);
+        List<Map<String, Object>> salidas = pase.jdbcTemplate.queryForList(
+                SesionBBDD.SQL_HORA_SALIDA_PROFESOR, pase.sesionId);
+        bh.consume(asistencias);
+        bh.consume(sesiones);
+        bh.consume(salidas);
+    }
+
+    @Benchmark
+    public void tipado(Pase pase, Blackhole bh) {
+        List<AsistenciaAbierta> asistencias = pase.jdbcTemplate.query(
+                AsistenciaAlumnoBBDD.SQL_ASISTENCIA_ABIERTA, AsistenciaAbierta.MAPPER, PRIMER_ALUMNO_ID, HOY);
+        List<SesionAbierta> sesiones = pase.jdbcTemplate.query(
+                SesionBBDD.SQL_SESION_ABIERTA_PROFESOR, SesionAbierta.MAPPER, PROFESOR_ID);
+        List<LocalTime> salidas = pase.jdbcTemplate.query(SesionBBDD.SQL_HORA_SALIDA_PROFESOR,
+                (rs, rowNum) -> rs.getObject("hora_salida_profesor", LocalTime.class), pase.sesionId);
+        bh.consume(asistencias);
+        bh.consume(sesiones);
+        bh.consume(salidas);
+    }
+}
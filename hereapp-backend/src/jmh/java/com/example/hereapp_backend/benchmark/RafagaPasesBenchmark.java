@@ -0,0 +1,134 @@
+package com.example.hereapp_backend.benchmark;
+
+import com.example.hereapp_backend.config.LimitadorConexiones;
+import com.example.hereapp_backend.config.LimitadorConexiones.ServicioSaturadoException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ráfaga de pases de las en punto con el modelo de hilos de Tomcat frente a hilos virtuales.
+ *
+ * Cada pase es lo que hace AsistenciaController: turno en LimitadorConexiones y
+ * procesarAsistenciaNFC de un alumno distinto que entra. Con "plataforma" los pases se reparten
+ * entre 200 hilos fijos (server.tomcat.threads.max) y el resto espera en la cola del ejecutor,
+ * como en la cola de aceptación de Tomcat; con "virtuales" cada pase tiene su hilo virtual.
+ * La latencia simulada por sentencia representa el viaje a RDS que H2 en memoria no tiene.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RafagaPasesBenchmark {
+
+    static final int PASES = 1000;
+    static final int CONEXIONES = 10;
+    static final int HILOS_TOMCAT = 200;
+
+    @State(Scope.Benchmark)
+    public static class Servidor {
+        @Param({"plataforma", "virtuales"})
+        public String hilos;
+
+        @Param({"0", "2"})
+        public long latenciaMs;
+
+        EntornoBenchmark entorno;
+        LimitadorConexiones limitador;
+        ExecutorService ejecutor;
+
+        @Setup(Level.Trial)
+        public void arrancar() throws Exception {
+            entorno = new EntornoBenchmark(PASES, CONEXIONES, latenciaMs);
+            // Sin tareas de fondo en el benchmark: todas las conexiones son para los pases
+            limitador = new LimitadorConexiones(CONEXIONES, 0, 5000);
+            ejecutor = "virtuales".equals(hilos)
+                    ? Executors.newVirtualThreadPerTaskExecutor()
+                    : Executors.newFixedThreadPool(HILOS_TOMCAT);
+        }
+
+        @TearDown(Level.Trial)
+        public void parar() {
+            ejecutor.shutdownNow();
+            entorno.close();
+        }
+
+        List<Future<String>> lanzarRafaga() {
+            List<Future<String>> pases = new ArrayList<>(PASES);
+            for (int i = 0; i < PASES; i++) {
+                String uid = EntornoBenchmark.uidAlumno(i);
+                String email = EntornoBenchmark.emailAlumno(i);
+                pases.add(ejecutor.submit(() -> {
+                    try {
+                        return limitador.ejecutar(() -> entorno.asistenciaBBDD.procesarAsistenciaNFC(uid, email));
+                    } catch (ServicioSaturadoException e) {
+                        return e.getMessage();
+                    }
+                }));
+            }
+            return pases;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SinAsistencia {
+        @Setup(Level.Invocation)
+        public void preparar(Servidor servidor) {
+            servidor.entorno.vaciarAsistencias();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RafagaEnCurso {
+        List<Future<String>> pases;
+
+        @Setup(Level.Invocation)
+        public void preparar(Servidor servidor) {
+            servidor.entorno.vaciarAsistencias();
+            pases = servidor.lanzarRafaga();
+        }
+
+        @TearDown(Level.Invocation)
+        public void esperar() throws Exception {
+            for (Future<String> pase : pases) {
+                pase.get();
+            }
+        }
+    }
+
+    // Tiempo hasta atender todos los pases de la ráfaga
+    @Benchmark
+    public int rafaga(Servidor servidor, SinAsistencia estado) throws Exception {
+        int saturados = 0;
+        for (Future<String> pase : servidor.lanzarRafaga()) {
+            if (pase.get().startsWith("Servicio saturado")) {
+                saturados++;
+            }
+        }
+        return saturados;
+    }
+
+    // Latencia de una petición que no usa la base de datos (otro endpoint) con la ráfaga en curso
+    @Benchmark
+    public String otraPeticionDuranteRafaga(Servidor servidor, RafagaEnCurso estado) throws Exception {
+        return servidor.ejecutor.submit(() -> "ok").get();
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.hereapp_backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+@Configuration
+public class ContrasenasConfig {
+
+    /**
+     * Codificador BCrypt con coste configurable. Cada punto más de coste duplica el tiempo
+     * de CPU por verificación. Los hashes con un coste menor se rehacen al iniciar sesión
+     * (ver LogInBBDD), así que subirlo no obliga a cambiar contraseñas.
+     */
+    @Bean
+    public PasswordEncoder passwordEncoder(@Value("${hereapp.login.bcrypt-coste:10}") int coste) {
+        return new BCryptPasswordEncoder(coste);
+    }
+}
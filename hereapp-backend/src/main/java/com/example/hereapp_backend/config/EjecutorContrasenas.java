@@ -0,0 +1,77 @@
+package com.example.hereapp_backend.config;
+
+import com.example.hereapp_backend.config.LimitadorConexiones.ServicioSaturadoException;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Hilos dedicados para el trabajo de BCrypt de los inicios de sesión.
+ *
+ * BCrypt consume CPU durante decenas de milisegundos por verificación. Al principio de
+ * curso cientos de alumnos inician sesión a la vez y, ejecutado en los hilos de Tomcat,
+ * ocuparía todos los núcleos y retrasaría los pases NFC. Aquí se limita a un número fijo
+ * de hilos con una cola acotada: si la cola está llena o la espera supera el máximo, el
+ * inicio de sesión se rechaza con ServicioSaturadoException (503) en lugar de acumularse.
+ */
+@Component
+public class EjecutorContrasenas {
+
+    private final ThreadPoolExecutor ejecutor;
+    private final long esperaMaximaMs;
+
+    public EjecutorContrasenas(@Value("${hereapp.login.hilos:0}") int hilos,
+                               @Value("${hereapp.login.capacidad-cola:200}") int capacidadCola,
+                               @Value("${hereapp.login.espera-maxima-ms:5000}") long esperaMaximaMs) {
+        // Por defecto la mitad de los núcleos, para dejar siempre CPU a los pases NFC
+        int numHilos = hilos > 0 ? hilos : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.ejecutor = new ThreadPoolExecutor(numHilos, numHilos, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacidadCola),
+                Thread.ofPlatform().name("contrasenas-", 0).daemon(true).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.esperaMaximaMs = esperaMaximaMs;
+    }
+
+    public <T> T ejecutar(Supplier<T> operacion) {
+        Future<T> resultado;
+        try {
+            resultado = ejecutor.submit(operacion::get);
+        } catch (RejectedExecutionException e) {
+            throw new ServicioSaturadoException("Demasiados inicios de sesión simultáneos, inténtelo de nuevo en unos segundos");
+        }
+
+        try {
+            return resultado.get(esperaMaximaMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            resultado.cancel(true);
+            throw new ServicioSaturadoException("Servicio saturado, inténtelo de nuevo en unos segundos");
+        } catch (InterruptedException e) {
+            resultado.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ServicioSaturadoException("Petición interrumpida mientras esperaba turno");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    // Verificaciones esperando un hilo libre (útil para métricas)
+    public int getEnCola() {
+        return ejecutor.getQueue().size();
+    }
+
+    @PreDestroy
+    public void detener() {
+        ejecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.hereapp_backend.config;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * JdbcTemplate que cuenta, por hilo, las sentencias que envía a la base de datos.
+ *
+ * JdbcTemplate llama a applyStatementSettings una vez por cada Statement que crea, sea una
+ * consulta, un update o un lote completo, así que el contador equivale a los viajes a MySQL
+ * (sin contar BEGIN/COMMIT de las transacciones). El contador es acumulativo: quien quiera
+ * medir un tramo lee el valor al empezar y al terminar.
+ */
+public class JdbcTemplateContado extends JdbcTemplate {
+
+    private static final ThreadLocal<int[]> SENTENCIAS = ThreadLocal.withInitial(() -> new int[1]);
+
+    public JdbcTemplateContado(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    public static int sentenciasDelHilo() {
+        return SENTENCIAS.get()[0];
+    }
+
+    @Override
+    protected void applyStatementSettings(Statement stmt) throws SQLException {
+        SENTENCIAS.get()[0]++;
+        super.applyStatementSettings(stmt);
+    }
+}
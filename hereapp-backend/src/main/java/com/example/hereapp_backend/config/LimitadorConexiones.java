@@ -0,0 +1,73 @@
+package com.example.hereapp_backend.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Limita cuántas peticiones pueden estar trabajando contra la base de datos a la vez.
+ *
+ * Con hilos virtuales Tomcat acepta miles de pases simultáneos, pero el pool JDBC
+ * sigue teniendo pocas conexiones. El semáforo (justo, en orden de llegada) hace que
+ * los pases sobrantes esperen aquí, aparcados sin coste, en lugar de agotar el
+ * tiempo de espera del pool; si la espera supera el máximo se rechaza el pase.
+ *
+ * El pool no es solo de los pases: la finalización de sesiones, las exportaciones, el
+ * planificador y los inicios de sesión también toman conexiones. El semáforo tiene las del
+ * pool menos hereapp.bbdd.conexiones-reservadas, así que una ráfaga de pases nunca deja sin
+ * conexión a esas tareas. El reparto está en docs/hilos-virtuales.md.
+ */
+@Component
+public class LimitadorConexiones {
+
+    private static final Logger log = LoggerFactory.getLogger(LimitadorConexiones.class);
+
+    private final Semaphore permisos;
+    private final long esperaMaximaMs;
+
+    public LimitadorConexiones(@Value("${spring.datasource.hikari.maximum-pool-size:10}") int tamanoPool,
+                               @Value("${hereapp.bbdd.conexiones-reservadas:4}") int conexionesReservadas,
+                               @Value("${hereapp.bbdd.espera-maxima-ms:5000}") long esperaMaximaMs) {
+        int maxConcurrencia = tamanoPool - conexionesReservadas;
+        if (maxConcurrencia < 1) {
+            log.warn("El pool de {} conexiones no deja sitio a los pases con {} reservadas; se admite un pase a la vez",
+                    tamanoPool, conexionesReservadas);
+            maxConcurrencia = 1;
+        }
+        this.permisos = new Semaphore(maxConcurrencia, true);
+        this.esperaMaximaMs = esperaMaximaMs;
+    }
+
+    public <T> T ejecutar(Supplier<T> operacion) {
+        boolean adquirido;
+        try {
+            adquirido = permisos.tryAcquire(esperaMaximaMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServicioSaturadoException("Petición interrumpida mientras esperaba turno");
+        }
+        if (!adquirido) {
+            throw new ServicioSaturadoException("Servicio saturado, inténtelo de nuevo en unos segundos");
+        }
+        try {
+            return operacion.get();
+        } finally {
+            permisos.release();
+        }
+    }
+
+    // Peticiones esperando turno (útil para métricas)
+    public int getEnEspera() {
+        return permisos.getQueueLength();
+    }
+
+    public static class ServicioSaturadoException extends RuntimeException {
+        public ServicioSaturadoException(String mensaje) {
+            super(mensaje);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.hereapp_backend.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Métricas de los pases NFC.
+ *
+ * - hereapp.asistencia.pase: duración total por rol y resultado.
+ * - hereapp.asistencia.etapa: duración de cada etapa del pase (contexto, espera del bloqueo,
+ *   búsqueda de asistencia o sesión abierta, registro, creación de sesión...).
+ * - hereapp.asistencia.sentencias: sentencias SQL enviadas por pase, por rol y resultado.
+ *
+ * El resultado se deduce del mensaje devuelto al cliente, que lleva minutos y no sirve como
+ * etiqueta; se reduce a un conjunto fijo de valores para no multiplicar las series.
+ */
+@Component
+public class MetricasAsistencia {
+
+    private static final Map<String, String> RESULTADOS = new LinkedHashMap<>();
+
+    static {
+        RESULTADOS.put("Entrada registrada", "entrada");
+        RESULTADOS.put("Nueva entrada", "nueva_entrada");
+        RESULTADOS.put("Salida registrada", "salida");
+        RESULTADOS.put("Asistencia reciente", "salida_rechazada");
+        RESULTADOS.put("Nueva sesión creada", "sesion_abierta");
+        RESULTADOS.put("No hay clase programada", "sin_clase");
+        RESULTADOS.put("Sesión cerrada", "sesion_cerrada");
+        RESULTADOS.put("Sesión reciente", "cierre_rechazado");
+        RESULTADOS.put("Usuario administrador", "administrador");
+        RESULTADOS.put("Rol no reconocido", "rol_no_reconocido");
+    }
+
+    private final MeterRegistry registro;
+
+    public MetricasAsistencia(MeterRegistry registro) {
+        this.registro = registro;
+    }
+
+    public Pase iniciarPase() {
+        return new Pase();
+    }
+
+    static String clasificarResultado(String mensaje) {
+        for (Map.Entry<String, String> resultado : RESULTADOS.entrySet()) {
+            if (mensaje.startsWith(resultado.getKey())) {
+                return resultado.getValue();
+            }
+        }
+        return "otro";
+    }
+
+    private void registrarEtapa(String etapa, long desdeNanos) {
+        Timer.builder("hereapp.asistencia.etapa")
+                .description("Duración de cada etapa de un pase NFC")
+                .tag("etapa", etapa)
+                .register(registro)
+                .record(System.nanoTime() - desdeNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Medición de un pase concreto. Vive en el hilo que procesa el pase.
+     */
+    public class Pase {
+
+        private final long inicio = System.nanoTime();
+        private final int sentenciasAlInicio = JdbcTemplateContado.sentenciasDelHilo();
+        private String rol = "desconocido";
+
+        public void setRol(String rol) {
+            this.rol = rol;
+        }
+
+        public <T> T etapa(String etapa, Supplier<T> paso) {
+            long desde = System.nanoTime();
+            try {
+                return paso.get();
+            } finally {
+                registrarEtapa(etapa, desde);
+            }
+        }
+
+        public void etapa(String etapa, Runnable paso) {
+            long desde = System.nanoTime();
+            try {
+                paso.run();
+            } finally {
+                registrarEtapa(etapa, desde);
+            }
+        }
+
+        // Tiempo transcurrido desde un instante anterior, p. ej. la espera hasta obtener un bloqueo
+        public void etapaDesde(String etapa, long desdeNanos) {
+            registrarEtapa(etapa, desdeNanos);
+        }
+
+        public void terminar(String mensaje) {
+            registrar(clasificarResultado(mensaje));
+        }
+
+        public void fallar() {
+            registrar("error");
+        }
+
+        private void registrar(String resultado) {
+            Timer.builder("hereapp.asistencia.pase")
+                    .description("Duración total de un pase NFC")
+                    .tags("rol", rol, "resultado", resultado)
+                    .register(registro)
+                    .record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+
+            DistributionSummary.builder("hereapp.asistencia.sentencias")
+                    .description("Sentencias SQL enviadas durante un pase NFC")
+                    .tags("rol", rol, "resultado", resultado)
+                    .register(registro)
+                    .record(JdbcTemplateContado.sentenciasDelHilo() - sentenciasAlInicio);
+        }
+    }
+}
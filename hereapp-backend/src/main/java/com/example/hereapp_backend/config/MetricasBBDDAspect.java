@@ -0,0 +1,49 @@
+package com.example.hereapp_backend.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Temporizador hereapp.bbdd para cada método público de las clases *BBDD, con la clase,
+ * el método y la excepción (si la hubo) como etiquetas.
+ *
+ * Solo se miden las llamadas entre beans: las llamadas de una clase a sus propios métodos
+ * no pasan por el proxy.
+ */
+@Aspect
+@Component
+public class MetricasBBDDAspect {
+
+    private final MeterRegistry registro;
+
+    public MetricasBBDDAspect(MeterRegistry registro) {
+        this.registro = registro;
+    }
+
+    // Los getters de estado (getEnCola, isHabilitada...) se leen en cada scrape y no se miden
+    @Around("within(com.example.hereapp_backend.dataAccess.*BBDD) && execution(public * *(..))"
+            + " && !execution(* get*(..)) && !execution(* is*(..))")
+    public Object medir(ProceedingJoinPoint llamada) throws Throwable {
+        long inicio = System.nanoTime();
+        String excepcion = "ninguna";
+        try {
+            return llamada.proceed();
+        } catch (Throwable e) {
+            excepcion = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            Timer.builder("hereapp.bbdd")
+                    .description("Duración de los métodos de acceso a datos")
+                    .tags("clase", llamada.getSignature().getDeclaringType().getSimpleName(),
+                            "metodo", llamada.getSignature().getName(),
+                            "excepcion", excepcion)
+                    .register(registro)
+                    .record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        }
+    }
+}
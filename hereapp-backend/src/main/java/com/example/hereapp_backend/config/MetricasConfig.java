@@ -0,0 +1,71 @@
+package com.example.hereapp_backend.config;
+
+import com.example.hereapp_backend.dataAccess.ExportacionAsistenciaBBDD;
+import com.example.hereapp_backend.dataAccess.FinalizacionSesionBBDD;
+import com.example.hereapp_backend.dataAccess.ImportacionUsuariosBBDD;
+import com.example.hereapp_backend.dataAccess.IngestaFichajesBBDD;
+import com.example.hereapp_backend.dataAccess.TarjetaBBDD;
+import com.example.hereapp_backend.dataAccess.UsuarioBBDD;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class MetricasConfig {
+
+    // Sustituye al JdbcTemplate de Spring Boot para contar las sentencias de cada pase
+    @Bean
+    public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+        return new JdbcTemplateContado(dataSource);
+    }
+
+    // Colas y cachés que ya exponen su estado; se leen en cada scrape, sin consultas
+    @Bean
+    public MeterBinder metricasColasYCaches(LimitadorConexiones limitadorConexiones,
+                                            EjecutorContrasenas ejecutorContrasenas,
+                                            IngestaFichajesBBDD ingestaFichajesBBDD,
+                                            FinalizacionSesionBBDD finalizacionSesionBBDD,
+                                            TarjetaBBDD tarjetaBBDD,
+                                            UsuarioBBDD usuarioBBDD,
+                                            ExportacionAsistenciaBBDD exportacionAsistenciaBBDD,
+                                            ImportacionUsuariosBBDD importacionUsuariosBBDD) {
+        return registro -> {
+            Gauge.builder("hereapp.bbdd.en_espera", limitadorConexiones, LimitadorConexiones::getEnEspera)
+                    .description("Pases esperando turno en LimitadorConexiones")
+                    .register(registro);
+            Gauge.builder("hereapp.login.en_cola", ejecutorContrasenas, EjecutorContrasenas::getEnCola)
+                    .description("Inicios de sesión esperando un hilo de BCrypt")
+                    .register(registro);
+            Gauge.builder("hereapp.ingesta.en_cola", ingestaFichajesBBDD, IngestaFichajesBBDD::getEnCola)
+                    .description("Pases encolados en la ingesta agrupada")
+                    .register(registro);
+            Gauge.builder("hereapp.finalizacion.pendientes", finalizacionSesionBBDD, FinalizacionSesionBBDD::getProfundidadCola)
+                    .description("Sesiones pendientes de finalizar")
+                    .register(registro);
+            Gauge.builder("hereapp.finalizacion.retraso", finalizacionSesionBBDD, FinalizacionSesionBBDD::getRetrasoSegundos)
+                    .description("Antigüedad del trabajo de finalización más antiguo")
+                    .baseUnit("seconds")
+                    .register(registro);
+            Gauge.builder("hereapp.cache.tarjetas.tamano", tarjetaBBDD, TarjetaBBDD::getTamanoCache)
+                    .register(registro);
+            FunctionCounter.builder("hereapp.cache.tarjetas.aciertos", tarjetaBBDD, TarjetaBBDD::getAciertos)
+                    .register(registro);
+            FunctionCounter.builder("hereapp.cache.tarjetas.fallos", tarjetaBBDD, TarjetaBBDD::getFallos)
+                    .register(registro);
+            Gauge.builder("hereapp.cache.usuarios.tamano", usuarioBBDD, UsuarioBBDD::getTamanoCacheUsuarios)
+                    .register(registro);
+            Gauge.builder("hereapp.exportacion.en_curso", exportacionAsistenciaBBDD, ExportacionAsistenciaBBDD::getEnCurso)
+                    .description("Exportaciones de asistencia en curso, cada una con una conexión ocupada")
+                    .register(registro);
+            FunctionCounter.builder("hereapp.importacion.usuarios_creados", importacionUsuariosBBDD,
+                            ImportacionUsuariosBBDD::getUsuariosCreados)
+                    .description("Usuarios creados por la importación desde CSV")
+                    .register(registro);
+        };
+    }
+}
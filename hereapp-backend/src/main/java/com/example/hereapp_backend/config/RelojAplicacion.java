@@ -0,0 +1,37 @@
+package com.example.hereapp_backend.config;
+
+import org.springframework.stereotype.Component;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * Hora actual de Madrid a partir del reloj de TimeZoneConfig.
+ *
+ * Cada pase toma "ahora" una sola vez con ahora() y lo pasa a las consultas como
+ * parámetro, así todas las escrituras de un pase llevan la misma hora y las
+ * diferencias en minutos se calculan en Java. En los tests se construye con un
+ * Clock fijo.
+ */
+@Component
+public class RelojAplicacion {
+
+    private final Clock reloj;
+
+    public RelojAplicacion(Clock reloj) {
+        this.reloj = reloj;
+    }
+
+    public LocalDateTime ahora() {
+        return LocalDateTime.now(reloj).withNano(0);
+    }
+
+    public LocalDate hoy() {
+        return LocalDate.now(reloj);
+    }
+
+    public LocalTime horaActual() {
+        return ahora().toLocalTime();
+    }
+}
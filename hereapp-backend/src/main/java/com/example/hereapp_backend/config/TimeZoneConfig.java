@@ -1,17 +1,34 @@
 package com.example.hereapp_backend.config;
 
 import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import java.time.Clock;
+import java.time.ZoneId;
 import java.util.TimeZone;
 
 @Configuration
 public class TimeZoneConfig {
 
+    private static final Logger log = LoggerFactory.getLogger(TimeZoneConfig.class);
+
+    public static final ZoneId ZONA_MADRID = ZoneId.of("Europe/Madrid");
+
     @PostConstruct
     public void init() {
         // Establecer la zona horaria de Madrid para toda la aplicación
-        TimeZone.setDefault(TimeZone.getTimeZone("Europe/Madrid"));
-        System.out.println("Zona horaria establecida: " + TimeZone.getDefault().getID());
-        System.out.println("Hora actual del sistema: " + new java.util.Date());
+        TimeZone.setDefault(TimeZone.getTimeZone(ZONA_MADRID));
+        log.info("Zona horaria establecida: {}", TimeZone.getDefault().getID());
+    }
+
+    /**
+     * Reloj de la aplicación en hora de Madrid. Las fechas y horas que se guardan en la
+     * base de datos salen de aquí, en lugar de CONVERT_TZ(NOW(), ...) en cada sentencia.
+     */
+    @Bean
+    public Clock reloj() {
+        return Clock.system(ZONA_MADRID);
     }
-}
\ No newline at end of file
+}
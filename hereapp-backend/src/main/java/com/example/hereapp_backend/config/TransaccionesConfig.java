@@ -0,0 +1,24 @@
+package com.example.hereapp_backend.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.support.JdbcTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class TransaccionesConfig {
+
+    /**
+     * TransactionTemplate de las clases *BBDD, que trabajan con JdbcTemplate. Usa un
+     * JdbcTransactionManager sobre el mismo DataSource porque admite transacciones anidadas
+     * (PROPAGATION_NESTED, con savepoints JDBC) y el JpaTransactionManager con Hibernate no.
+     * El JpaTransactionManager de Spring Boot sigue atendiendo a los repositorios JPA, que
+     * no se usan dentro de estas transacciones.
+     */
+    @Bean
+    public TransactionTemplate transactionTemplate(DataSource dataSource) {
+        return new TransactionTemplate(new JdbcTransactionManager(dataSource));
+    }
+}
@@ -1,20 +1,36 @@
 package com.example.hereapp_backend.controllers;
 
+import com.example.hereapp_backend.config.LimitadorConexiones;
+import com.example.hereapp_backend.config.LimitadorConexiones.ServicioSaturadoException;
 import com.example.hereapp_backend.dataAccess.AsistenciaBBDD;
+import com.example.hereapp_backend.dataAccess.IngestaFichajesBBDD;
 import com.example.hereapp_backend.models.Asistencia;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 @RestController
 @CrossOrigin(origins = "*")
 @RequestMapping("/asistencia")
 public class AsistenciaController {
 
     private final AsistenciaBBDD asistenciaBBDD;
+    private final LimitadorConexiones limitadorConexiones;
+    private final IngestaFichajesBBDD ingestaFichajesBBDD;
+    private final long esperaIngestaMs;
 
-    public AsistenciaController(AsistenciaBBDD asistenciaBBDD) {
+    public AsistenciaController(AsistenciaBBDD asistenciaBBDD, LimitadorConexiones limitadorConexiones,
+                                IngestaFichajesBBDD ingestaFichajesBBDD,
+                                @Value("${hereapp.ingesta.espera-maxima-ms:10000}") long esperaIngestaMs) {
         this.asistenciaBBDD = asistenciaBBDD;
+        this.limitadorConexiones = limitadorConexiones;
+        this.ingestaFichajesBBDD = ingestaFichajesBBDD;
+        this.esperaIngestaMs = esperaIngestaMs;
     }
 
     @PostMapping("/procesar-nfc")
@@ -31,14 +47,20 @@ public class AsistenciaController {
                         .body("El email del usuario no puede estar vacío");
             }
 
-            // Procesar la asistencia
-            String resultado = asistenciaBBDD.procesarAsistenciaNFC(
-                    request.getUidMifare().trim(),
-                    request.getEmailUsuario().trim()
-            );
+            String uidMifare = request.getUidMifare().trim();
+            String emailUsuario = request.getEmailUsuario().trim();
+
+            // Procesar la asistencia: por la cola de ingesta agrupada si está habilitada,
+            // o directamente esperando turno si el pool de conexiones está saturado
+            String resultado = ingestaFichajesBBDD.isHabilitada()
+                    ? esperarIngesta(uidMifare, emailUsuario)
+                    : limitadorConexiones.ejecutar(() -> asistenciaBBDD.procesarAsistenciaNFC(uidMifare, emailUsuario));
 
             return ResponseEntity.ok(resultado);
 
+        } catch (ServicioSaturadoException ex) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(ex.getMessage());
         } catch (RuntimeException ex) {
             // Manejo específico para tarjetas no registradas
             if (ex.getMessage().contains("no está registrada")) {
@@ -52,4 +74,18 @@ public class AsistenciaController {
                     .body("Error inesperado al procesar asistencia: " + ex.getMessage());
         }
     }
+
+    private String esperarIngesta(String uidMifare, String emailUsuario) throws Exception {
+        try {
+            return ingestaFichajesBBDD.encolar(uidMifare, emailUsuario).get(esperaIngestaMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ex) {
+            // Propagar la excepción original para mantener los mismos códigos de respuesta
+            if (ex.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw ex;
+        } catch (TimeoutException ex) {
+            throw new ServicioSaturadoException("El pase no se pudo procesar a tiempo, inténtelo de nuevo");
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,80 @@
+package com.example.hereapp_backend.controllers;
+
+import com.example.hereapp_backend.config.LimitadorConexiones.ServicioSaturadoException;
+import com.example.hereapp_backend.dataAccess.ExportacionAsistenciaBBDD;
+import com.example.hereapp_backend.dataAccess.ExportacionAsistenciaBBDD.Exportacion;
+import com.example.hereapp_backend.dataAccess.ExportacionAsistenciaBBDD.Formato;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDate;
+import java.util.Locale;
+
+@RestController
+@CrossOrigin(origins = "*")
+@RequestMapping("/exportacion")
+public class ExportacionController {
+
+    private final ExportacionAsistenciaBBDD exportacionAsistenciaBBDD;
+
+    public ExportacionController(ExportacionAsistenciaBBDD exportacionAsistenciaBBDD) {
+        this.exportacionAsistenciaBBDD = exportacionAsistenciaBBDD;
+    }
+
+    /**
+     * Asistencias de una asignatura, opcionalmente de un grupo y entre dos fechas (incluidas),
+     * en CSV o NDJSON. Las filas se envían según se leen de la base de datos.
+     */
+    @GetMapping("/asistencia")
+    public ResponseEntity<StreamingResponseBody> exportarAsistencia(
+            @RequestParam Integer asignaturaId,
+            @RequestParam(required = false) Integer grupoId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+            @RequestParam(defaultValue = "csv") String formato,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        Formato formatoExportacion;
+        try {
+            formatoExportacion = Formato.valueOf(formato.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        if (desde != null && hasta != null && desde.isAfter(hasta)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        Exportacion exportacion;
+        try {
+            exportacion = exportacionAsistenciaBBDD.reservar(asignaturaId, grupoId, desde, hasta,
+                    formatoExportacion, gzip);
+        } catch (ServicioSaturadoException ex) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+
+        // Nombre del fichero: asistencia-<asignatura>[-<grupo>].csv[.gz]
+        String nombre = "asistencia-" + asignaturaId + (grupoId != null ? "-" + grupoId : "")
+                + (formatoExportacion == Formato.CSV ? ".csv" : ".ndjson") + (gzip ? ".gz" : "");
+        MediaType tipo = gzip
+                ? MediaType.parseMediaType("application/gzip")
+                : formatoExportacion == Formato.CSV
+                ? MediaType.parseMediaType("text/csv;charset=UTF-8")
+                : MediaType.parseMediaType("application/x-ndjson;charset=UTF-8");
+
+        StreamingResponseBody cuerpo = salida -> {
+            try (exportacion) {
+                exportacion.escribir(salida);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(tipo)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(nombre).build().toString())
+                .body(cuerpo);
+    }
+}
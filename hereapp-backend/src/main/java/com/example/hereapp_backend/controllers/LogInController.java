@@ -1,6 +1,8 @@
 package com.example.hereapp_backend.controllers;
 
+import com.example.hereapp_backend.config.LimitadorConexiones.ServicioSaturadoException;
 import com.example.hereapp_backend.dataAccess.LogInBBDD;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -21,7 +23,13 @@ public class LogInController {
         String email = body.get("email");
         String contrasena = body.get("contrasena");
 
-        String rol = logInBBDD.validarTipoUsuario(email, contrasena);
+        String rol;
+        try {
+            rol = logInBBDD.validarTipoUsuario(email, contrasena);
+        } catch (ServicioSaturadoException ex) {
+            // Demasiados inicios de sesión a la vez: el cliente debe reintentar
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ex.getMessage());
+        }
         if (rol == null) {
             return ResponseEntity.ok("NONE");
         } else {
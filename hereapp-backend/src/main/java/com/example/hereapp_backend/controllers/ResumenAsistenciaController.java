@@ -0,0 +1,47 @@
+package com.example.hereapp_backend.controllers;
+
+import com.example.hereapp_backend.dataAccess.ResumenAsistenciaBBDD;
+import com.example.hereapp_backend.models.ResumenAsistencia;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * Porcentajes de asistencia leídos de la tabla resumen_asistencia, sin agregar el historial
+ */
+@RestController
+@CrossOrigin(origins = "*")
+@RequestMapping("/resumen-asistencia")
+public class ResumenAsistenciaController {
+
+    private final ResumenAsistenciaBBDD resumenAsistenciaBBDD;
+
+    public ResumenAsistenciaController(ResumenAsistenciaBBDD resumenAsistenciaBBDD) {
+        this.resumenAsistenciaBBDD = resumenAsistenciaBBDD;
+    }
+
+    @GetMapping("/alumno/{usuarioId}")
+    public ResponseEntity<List<ResumenAsistencia>> getResumenAlumno(@PathVariable Integer usuarioId) {
+        return ResponseEntity.ok(resumenAsistenciaBBDD.obtenerResumenAlumno(usuarioId));
+    }
+
+    @GetMapping("/alumno/{usuarioId}/asignatura/{asignaturaId}/grupo/{grupoId}")
+    public ResponseEntity<ResumenAsistencia> getResumen(@PathVariable Integer usuarioId,
+                                                        @PathVariable Integer asignaturaId,
+                                                        @PathVariable Integer grupoId) {
+        ResumenAsistencia resumen = resumenAsistenciaBBDD.obtenerResumen(usuarioId, asignaturaId, grupoId);
+        if (resumen == null) {
+            // Sin sesiones finalizadas de ese grupo para el alumno
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        return ResponseEntity.ok(resumen);
+    }
+
+    @GetMapping("/asignatura/{asignaturaId}/grupo/{grupoId}")
+    public ResponseEntity<List<ResumenAsistencia>> getResumenGrupo(@PathVariable Integer asignaturaId,
+                                                                   @PathVariable Integer grupoId) {
+        return ResponseEntity.ok(resumenAsistenciaBBDD.obtenerResumenGrupo(asignaturaId, grupoId));
+    }
+}
@@ -1,21 +1,37 @@
 package com.example.hereapp_backend.controllers;
 
+import com.example.hereapp_backend.config.LimitadorConexiones.ServicioSaturadoException;
+import com.example.hereapp_backend.dataAccess.ImportacionUsuariosBBDD;
 import com.example.hereapp_backend.dataAccess.UsuarioBBDD;
 import com.example.hereapp_backend.models.MifareRegistro;
+import com.example.hereapp_backend.models.MifareRegistroLote;
+import com.example.hereapp_backend.models.ResultadoImportacionUsuarios;
+import com.example.hereapp_backend.models.ResultadoLoteMifare;
 import com.example.hereapp_backend.models.UsuarioDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.InputStream;
+import java.util.List;
+
 @RestController
 @CrossOrigin(origins = "*")
 @RequestMapping("/usuario")
 public class UsuarioController {
 
     private final UsuarioBBDD usuarioBBDD;
+    private final ImportacionUsuariosBBDD importacionUsuariosBBDD;
+    private final int maxTarjetasLote;
 
-    public UsuarioController(UsuarioBBDD usuarioBBDD) {
+    public UsuarioController(UsuarioBBDD usuarioBBDD, ImportacionUsuariosBBDD importacionUsuariosBBDD,
+                             @Value("${hereapp.tarjetas.lote.max-tarjetas:10000}") int maxTarjetasLote) {
         this.usuarioBBDD = usuarioBBDD;
+        this.importacionUsuariosBBDD = importacionUsuariosBBDD;
+        this.maxTarjetasLote = maxTarjetasLote;
     }
 
     @GetMapping
@@ -28,6 +44,26 @@ public class UsuarioController {
         }
     }
 
+    /**
+     * Vacía la caché de identidades de los pases, o solo la de un usuario si se indica su email.
+     * Para cuando se cambian usuarios o roles directamente en la base de datos: sin esto el
+     * cambio tarda hasta hereapp.cache.usuarios.ttl-ms en notarse.
+     */
+    @PostMapping("/cache/invalidar")
+    public ResponseEntity<String> invalidarCacheUsuarios(@RequestParam String emailUsuario,
+                                                         @RequestParam(required = false) String email) {
+        if (!usuarioBBDD.esUsuarioAdmin(emailUsuario.trim())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body("No tiene permisos para invalidar la caché de usuarios. Solo los administradores pueden realizar esta acción.");
+        }
+        if (email != null && !email.trim().isEmpty()) {
+            usuarioBBDD.invalidarUsuario(email);
+            return ResponseEntity.ok("Caché del usuario invalidada");
+        }
+        usuarioBBDD.invalidarCacheUsuarios();
+        return ResponseEntity.ok("Caché de usuarios invalidada");
+    }
+
     @PostMapping("/registrar-mifare")
     public ResponseEntity<String> registrarMifare(@RequestBody MifareRegistro registro) {
         try {
@@ -62,4 +98,85 @@ public class UsuarioController {
                     .body("Error inesperado al registrar mifare: " + ex.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    @PostMapping(value = "/registrar-mifare/lote", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> registrarMifaresLote(@RequestBody MifareRegistroLote lote) {
+        return registrarLote(lote.getTarjetas(), lote.getEmailUsuario());
+    }
+
+    // Mismo alta con un CSV en el cuerpo: una tarjeta por línea, uid[,email del titular]
+    @PostMapping(value = "/registrar-mifare/lote", consumes = {"text/csv", MediaType.TEXT_PLAIN_VALUE})
+    public ResponseEntity<?> registrarMifaresLoteCsv(@RequestParam String emailUsuario, @RequestBody String csv) {
+        return registrarLote(MifareRegistroLote.tarjetasDesdeCsv(csv), emailUsuario);
+    }
+
+    private ResponseEntity<?> registrarLote(List<MifareRegistroLote.Tarjeta> tarjetas, String emailUsuario) {
+        if (emailUsuario == null || emailUsuario.trim().isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body("El email del usuario no puede estar vacío");
+        }
+        if (tarjetas == null || tarjetas.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body("El lote no contiene tarjetas");
+        }
+        if (tarjetas.size() > maxTarjetasLote) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body("El lote supera el máximo de " + maxTarjetasLote + " tarjetas");
+        }
+        try {
+            ResultadoLoteMifare resultado = usuarioBBDD.registrarMifaresLote(tarjetas, emailUsuario.trim());
+            return ResponseEntity.ok(resultado);
+        } catch (DuplicateKeyException ex) {
+            // Otra petición registró alguno de los UID a la vez; el lote no se guardó
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body("Alguna tarjeta se registró a la vez desde otra petición. Vuelva a enviar el lote");
+        } catch (RuntimeException ex) {
+            if (ex.getMessage() != null && ex.getMessage().contains("No tiene permisos")) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                        .body(ex.getMessage());
+            }
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error al registrar tarjetas: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Importación de usuarios desde un CSV con cabecera (email, nombre, apellido1, apellido2,
+     * roles, contrasena). El cuerpo se lee por bloques según se procesa; si la importación se
+     * corta, se puede reenviar el mismo fichero y continúa donde se quedó.
+     */
+    @PostMapping(value = "/importar", consumes = {"text/csv", MediaType.TEXT_PLAIN_VALUE})
+    public ResponseEntity<?> importarUsuarios(@RequestParam String emailUsuario, InputStream csv) {
+        if (emailUsuario == null || emailUsuario.trim().isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body("El email del usuario no puede estar vacío");
+        }
+        try {
+            return ResponseEntity.ok(importacionUsuariosBBDD.importar(csv, emailUsuario.trim()));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ex.getMessage());
+        } catch (ServicioSaturadoException ex) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ex.getMessage());
+        } catch (DuplicateKeyException ex) {
+            // Otra petición creó alguno de los usuarios del bloque a la vez; los bloques anteriores sí se guardaron
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body("Algún usuario se creó a la vez desde otra petición. Vuelva a enviar el fichero para continuar");
+        } catch (RuntimeException ex) {
+            if (ex.getMessage() != null && ex.getMessage().contains("No tiene permisos")) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                        .body(ex.getMessage());
+            }
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error al importar usuarios: " + ex.getMessage() + ". Vuelva a enviar el fichero para continuar");
+        }
+    }
+
+    // Progreso de la importación en curso o resultado de la última
+    @GetMapping("/importar/estado")
+    public ResponseEntity<ResultadoImportacionUsuarios> estadoImportacion() {
+        ResultadoImportacionUsuarios estado = importacionUsuariosBBDD.obtenerEstado();
+        return estado != null ? ResponseEntity.ok(estado) : ResponseEntity.noContent().build();
+    }
+}
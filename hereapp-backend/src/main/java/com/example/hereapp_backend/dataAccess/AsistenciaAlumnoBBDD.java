@@ -1,161 +1,267 @@
 package com.example.hereapp_backend.dataAccess;
 
+import com.example.hereapp_backend.models.AsistenciaAbierta;
+import com.example.hereapp_backend.models.ResultadoRegistros;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 @Service
 public class AsistenciaAlumnoBBDD {
 
+    private static final Logger log = LoggerFactory.getLogger(AsistenciaAlumnoBBDD.class);
+
+    private static final int MAX_PARAMETROS_IN = 1000;
+
+    // Sentencias del camino crítico, compartidas con ComprobacionIndicesBBDD para el EXPLAIN al arrancar
+    // (las públicas también con MapeoFilasBenchmark)
+    public static final String SQL_ASISTENCIA_ABIERTA = """
+        SELECT aa.asistencia_alumno_id, aa.sesion_id, aa.hora_entrada_alumno, aa.tipo_asistencia_id
+        FROM asistencia_alumno aa
+        WHERE aa.usuario_id = ?
+          AND aa.fecha_asistencia_alumno = ?
+          AND aa.hora_salida_alumno IS NULL
+        ORDER BY aa.hora_entrada_alumno IS NOT NULL
+                 AND (aa.sesion_id IS NULL OR NOT EXISTS (
+                     SELECT 1
+                     FROM finalizacion_sesion f
+                     WHERE f.sesion_id = aa.sesion_id
+                       AND f.estado = 'COMPLETADA')) DESC,
+                 aa.asistencia_alumno_id DESC
+        LIMIT 1
+        """;
+    static final String SQL_MATRICULADOS_CON_REGISTROS = """
+        SELECT m.usuario_id,
+               (SELECT MAX(t.tarjeta_id) FROM tarjetas_mifare t WHERE t.usuario_id = m.usuario_id) AS tarjeta_id,
+               aa.asistencia_alumno_id, aa.sesion_id, aa.asignatura_id, aa.grupo_id
+        FROM matricula m
+        LEFT JOIN asistencia_alumno aa
+               ON aa.usuario_id = m.usuario_id
+              AND aa.fecha_asistencia_alumno = ?
+        WHERE m.asignatura_id = ?
+          AND m.grupo_id = ?
+        ORDER BY m.usuario_id, aa.asistencia_alumno_id DESC
+        """;
+    static final String SQL_INSERTAR_NO_ASISTENCIAS = """
+        INSERT INTO asistencia_alumno
+        (usuario_id, asignatura_id, grupo_id, sesion_id, fecha_asistencia_alumno, tipo_asistencia_id, tarjeta_id)
+        SELECT m.usuario_id, m.asignatura_id, m.grupo_id, ?, ?, 2,
+               (SELECT MAX(t.tarjeta_id) FROM tarjetas_mifare t WHERE t.usuario_id = m.usuario_id)
+        FROM matricula m
+        WHERE m.asignatura_id = ?
+          AND m.grupo_id = ?
+          AND NOT EXISTS (
+              SELECT 1
+              FROM asistencia_alumno aa
+              WHERE aa.usuario_id = m.usuario_id
+                AND aa.asignatura_id = m.asignatura_id
+                AND aa.grupo_id = m.grupo_id
+                AND aa.fecha_asistencia_alumno = ?
+          )
+        """;
+    static final String SQL_ASISTENCIAS_COMPLETADAS = """
+        SELECT asistencia_alumno_id, hora_salida_alumno
+        FROM asistencia_alumno
+        WHERE fecha_asistencia_alumno = ?
+          AND asignatura_id = ?
+          AND grupo_id = ?
+          AND hora_entrada_alumno IS NOT NULL
+          AND hora_salida_alumno IS NOT NULL
+          AND tipo_asistencia_id = 5
+        """;
+
     private final JdbcTemplate jdbcTemplate;
-    private final TarjetaBBDD tarjetaBBDD;
-    private final MatriculaBBDD matriculaBBDD;
+    private final TransactionTemplate transactionTemplate;
 
-    public AsistenciaAlumnoBBDD(JdbcTemplate jdbcTemplate, TarjetaBBDD tarjetaBBDD,
-                                MatriculaBBDD matriculaBBDD) {
+    public AsistenciaAlumnoBBDD(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
         this.jdbcTemplate = jdbcTemplate;
-        this.tarjetaBBDD = tarjetaBBDD;
-        this.matriculaBBDD = matriculaBBDD;
+        // Anidada: dentro del lote de IngestaFichajesBBDD un fallo solo deshace esta parte
+        this.transactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
     }
 
-    public Map<String, Object> obtenerAsistenciaAbierta(Integer alumnoId) {
-        String sql = """
-            SELECT asistencia_alumno_id, sesion_id, hora_entrada_alumno, tipo_asistencia_id
-            FROM asistencia_alumno
-            WHERE usuario_id = ?
-              AND fecha_asistencia_alumno = DATE(CONVERT_TZ(NOW(), 'UTC', 'Europe/Madrid'))
-              AND hora_salida_alumno IS NULL
-            ORDER BY asistencia_alumno_id DESC
-            LIMIT 1
-            """;
-
-        List<Map<String, Object>> asistencias = jdbcTemplate.queryForList(sql, alumnoId);
+    /**
+     * Registro abierto (sin salida) del alumno hoy. Si tiene uno con entrada de una clase que
+     * sigue en curso se devuelve ese antes que los preparados para la lista de clase: el
+     * planificador deja el de la clase siguiente (sin entrada, con id mayor) antes de que
+     * termine la actual, y el pase de salida de la clase actual no debe tomarse como entrada en
+     * la siguiente. La clase sigue en curso mientras su sesión no esté finalizada, que es hasta
+     * donde el pase de salida todavía cuenta; una entrada sin salida de una sesión ya finalizada
+     * es una salida olvidada y no le quita el pase al registro más reciente.
+     */
+    public AsistenciaAbierta obtenerAsistenciaAbierta(Integer alumnoId, LocalDate hoy) {
+        List<AsistenciaAbierta> asistencias = jdbcTemplate.query(SQL_ASISTENCIA_ABIERTA, AsistenciaAbierta.MAPPER,
+                alumnoId, hoy);
         return asistencias.isEmpty() ? null : asistencias.get(0);
     }
 
-    public void registrarEntrada(Long asistenciaId, Integer tarjetaId) {
+    public void registrarEntrada(Long asistenciaId, Integer tarjetaId, LocalTime hora) {
         jdbcTemplate.update("""
             UPDATE asistencia_alumno
-            SET hora_entrada_alumno = TIME(CONVERT_TZ(NOW(), 'UTC', 'Europe/Madrid')),
+            SET hora_entrada_alumno = ?,
                 tipo_asistencia_id = 5,
                 tarjeta_id = ?
             WHERE asistencia_alumno_id = ?
-            """, tarjetaId, asistenciaId);
+            """, hora, tarjetaId, asistenciaId);
     }
 
-    public void registrarSalida(Long asistenciaId) {
+    public void registrarSalida(Long asistenciaId, LocalTime hora) {
         jdbcTemplate.update("""
             UPDATE asistencia_alumno
-            SET hora_salida_alumno = TIME(CONVERT_TZ(NOW(), 'UTC', 'Europe/Madrid'))
+            SET hora_salida_alumno = ?
             WHERE asistencia_alumno_id = ?
-            """, asistenciaId);
+            """, hora, asistenciaId);
     }
 
-    public void crearNuevaEntrada(Integer alumnoId, Integer tarjetaId) {
-        jdbcTemplate.update("""
-            INSERT INTO asistencia_alumno
-            (usuario_id, fecha_asistencia_alumno, hora_entrada_alumno, tipo_asistencia_id, tarjeta_id)
-            VALUES (?, DATE(CONVERT_TZ(NOW(), 'UTC', 'Europe/Madrid')), TIME(CONVERT_TZ(NOW(), 'UTC', 'Europe/Madrid')), 5, ?)
-            """, alumnoId, tarjetaId);
+    /**
+     * Crea un registro de entrada sin sesión. Devuelve false si el alumno ya tiene hoy una
+     * entrada abierta sin sesión: el índice único uk_asistencia_entrada_abierta rechaza la
+     * segunda cuando otra instancia atiende a la vez un pase de la misma tarjeta.
+     */
+    public boolean crearNuevaEntrada(Integer alumnoId, Integer tarjetaId, LocalDateTime ahora) {
+        try {
+            jdbcTemplate.update("""
+                INSERT INTO asistencia_alumno
+                (usuario_id, fecha_asistencia_alumno, hora_entrada_alumno, tipo_asistencia_id, tarjeta_id)
+                VALUES (?, ?, ?, 5, ?)
+                """, alumnoId, ahora.toLocalDate(), ahora.toLocalTime(), tarjetaId);
+            return true;
+        } catch (DuplicateKeyException e) {
+            log.debug("Entrada abierta del alumno {} ya creada por otra instancia", alumnoId);
+            return false;
+        }
     }
 
-    public int calcularMinutosDesdeEntrada(Long asistenciaId) {
-        String sql = """
-            SELECT TIMESTAMPDIFF(MINUTE, 
-                CONCAT(fecha_asistencia_alumno, ' ', hora_entrada_alumno), 
-                CONVERT_TZ(NOW(), 'UTC', 'Europe/Madrid')) AS diffMin 
-            FROM asistencia_alumno 
-            WHERE asistencia_alumno_id = ?
-            """;
-        Integer diffMin = jdbcTemplate.queryForObject(sql, Integer.class, asistenciaId);
-        return diffMin != null ? diffMin : 0;
+    /**
+     * Crea o vincula los registros de asistencia de todos los matriculados de una sesión.
+     * Una sola consulta carga a los matriculados con su tarjeta y sus registros de hoy;
+     * la reconciliación se hace en memoria y las escrituras se envían como lotes JDBC
+     * dentro de una única transacción. Si un alumno ya tiene registro para la sesión
+     * no se vuelve a tocar, por lo que la operación es idempotente.
+     * Los errores se registran y se devuelve un resultado vacío.
+     */
+    public ResultadoRegistros crearRegistrosAlumnosMatriculados(Integer sesionId, Integer asignaturaId,
+                                                                Integer grupoId, LocalDate fecha) {
+        try {
+            return vincularMatriculados(sesionId, asignaturaId, grupoId, fecha);
+        } catch (Exception e) {
+            log.error("Error creando registros de alumnos matriculados de la sesión {}", sesionId, e);
+            return new ResultadoRegistros(0, 0);
+        }
     }
 
-    public void crearRegistrosAlumnosMatriculados(Integer sesionId, Integer asignaturaId, Integer grupoId) {
-        try {
-            // Obtener alumnos matriculados usando MatriculaBBDD
-            List<Map<String, Object>> matriculados = matriculaBBDD.obtenerAlumnosMatriculados(asignaturaId, grupoId);
-
-            System.out.println("Alumnos matriculados encontrados: " + matriculados.size());
-
-            for (Map<String, Object> matricula : matriculados) {
-                Integer alumnoId = (Integer) matricula.get("usuario_id");
-
-                // Buscar la tarjeta asociada al alumno
-                Integer tarjetaAlumnoId = tarjetaBBDD.obtenerTarjetaDeUsuario(alumnoId);
-
-                // Buscar registros existentes del alumno de hoy
-                String checkSql = """
-                    SELECT asistencia_alumno_id, sesion_id, hora_entrada_alumno, asignatura_id, grupo_id 
-                    FROM asistencia_alumno 
-                    WHERE usuario_id = ? 
-                      AND fecha_asistencia_alumno = DATE(CONVERT_TZ(NOW(), 'UTC', 'Europe/Madrid'))
-                    ORDER BY asistencia_alumno_id DESC
-                    """;
-
-                List<Map<String, Object>> existentes = jdbcTemplate.queryForList(checkSql, alumnoId);
-
-                boolean registroActualizado = false;
-
-                // Buscar si ya existe un registro que podamos actualizar
-                for (Map<String, Object> existente : existentes) {
-                    Long asistenciaId = ((Number) existente.get("asistencia_alumno_id")).longValue();
-                    Object sesionIdExistente = existente.get("sesion_id");
-                    Object asignaturaIdExistente = existente.get("asignatura_id");
-                    Object grupoIdExistente = existente.get("grupo_id");
-
-                    // Si el registro no tiene sesión asignada O si es de la misma asignatura/grupo
-                    if (sesionIdExistente == null ||
-                            (asignaturaId.equals(asignaturaIdExistente) && grupoId.equals(grupoIdExistente))) {
-
-                        // Actualizar el registro existente incluyendo tarjeta_id si no lo tiene
-                        jdbcTemplate.update("""
-                            UPDATE asistencia_alumno 
-                            SET sesion_id = ?, 
-                                asignatura_id = ?, 
-                                grupo_id = ?,
-                                tarjeta_id = COALESCE(tarjeta_id, ?)
-                            WHERE asistencia_alumno_id = ?
-                            """, sesionId, asignaturaId, grupoId, tarjetaAlumnoId, asistenciaId);
-
-                        registroActualizado = true;
-                        System.out.println("Actualizado registro existente para alumno " + alumnoId);
-                        break;
-                    }
+    /**
+     * Igual que crearRegistrosAlumnosMatriculados pero propaga los errores, para usarlo
+     * dentro de una transacción que debe deshacerse entera si la lista de clase falla.
+     * Son dos sentencias: la consulta de matriculados y un lote (o dos) de escrituras.
+     */
+    public ResultadoRegistros vincularMatriculados(Integer sesionId, Integer asignaturaId,
+                                                   Integer grupoId, LocalDate fecha) {
+        List<FilaMatriculado> filas = jdbcTemplate.query(SQL_MATRICULADOS_CON_REGISTROS, (rs, rowNum) -> new FilaMatriculado(
+                rs.getInt("usuario_id"),
+                rs.getObject("tarjeta_id", Integer.class),
+                rs.getObject("asistencia_alumno_id", Long.class),
+                rs.getObject("sesion_id", Integer.class),
+                rs.getObject("asignatura_id", Integer.class),
+                rs.getObject("grupo_id", Integer.class)), fecha, asignaturaId, grupoId);
+
+        List<Object[]> actualizaciones = new ArrayList<>();
+        List<Object[]> inserciones = new ArrayList<>();
+        int matriculados = 0;
+
+        // Las filas llegan agrupadas por alumno y, dentro de cada alumno, de la más reciente a la más antigua
+        int i = 0;
+        while (i < filas.size()) {
+            FilaMatriculado primera = filas.get(i);
+            Long candidato = null;
+            boolean yaVinculado = false;
+
+            for (; i < filas.size() && filas.get(i).usuarioId() == primera.usuarioId(); i++) {
+                FilaMatriculado fila = filas.get(i);
+                if (fila.asistenciaId() == null) {
+                    continue;
                 }
-
-                // Solo crear nuevo registro si no se actualizó ninguno existente
-                if (!registroActualizado) {
-                    // Verificar que no exista ya un registro para esta sesión específica
-                    String checkDuplicadoSql = """
-                        SELECT COUNT(*) 
-                        FROM asistencia_alumno 
-                        WHERE usuario_id = ? 
-                          AND sesion_id = ?
-                          AND fecha_asistencia_alumno = DATE(CONVERT_TZ(NOW(), 'UTC', 'Europe/Madrid'))
-                        """;
-
-                    Integer countDuplicado = jdbcTemplate.queryForObject(checkDuplicadoSql, Integer.class,
-                            alumnoId, sesionId);
-
-                    if (countDuplicado == null || countDuplicado == 0) {
-                        // Crear nuevo registro incluyendo tarjeta_id
-                        jdbcTemplate.update("""
-                            INSERT INTO asistencia_alumno 
-                            (usuario_id, asignatura_id, grupo_id, sesion_id, fecha_asistencia_alumno, tipo_asistencia_id, tarjeta_id) 
-                            VALUES (?, ?, ?, ?, DATE(CONVERT_TZ(NOW(), 'UTC', 'Europe/Madrid')), 2, ?)
-                            """, alumnoId, asignaturaId, grupoId, sesionId, tarjetaAlumnoId);
-
-                        System.out.println("Creado nuevo registro para alumno " + alumnoId + " con tarjeta " + tarjetaAlumnoId);
-                    }
+                if (sesionId.equals(fila.sesionId())) {
+                    yaVinculado = true;
+                } else if (candidato == null && (fila.sesionId() == null ||
+                        (asignaturaId.equals(fila.asignaturaId()) && grupoId.equals(fila.grupoId())))) {
+                    // Registro sin sesión asignada o de la misma asignatura/grupo: se reutiliza
+                    candidato = fila.asistenciaId();
                 }
             }
-        } catch (Exception e) {
-            System.err.println("Error creando registros de alumnos matriculados: " + e.getMessage());
-            e.printStackTrace();
+            matriculados++;
+
+            if (yaVinculado) {
+                continue;
+            }
+            if (candidato != null) {
+                // Actualizar el registro existente incluyendo tarjeta_id si no lo tiene
+                actualizaciones.add(new Object[]{sesionId, asignaturaId, grupoId, primera.tarjetaId(), candidato});
+            } else {
+                inserciones.add(new Object[]{primera.usuarioId(), asignaturaId, grupoId, sesionId, fecha, primera.tarjetaId()});
+            }
         }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!actualizaciones.isEmpty()) {
+                jdbcTemplate.batchUpdate("""
+                    UPDATE asistencia_alumno
+                    SET sesion_id = ?,
+                        asignatura_id = ?,
+                        grupo_id = ?,
+                        tarjeta_id = COALESCE(tarjeta_id, ?)
+                    WHERE asistencia_alumno_id = ?
+                    """, actualizaciones);
+            }
+            if (!inserciones.isEmpty()) {
+                jdbcTemplate.batchUpdate("""
+                    INSERT INTO asistencia_alumno
+                    (usuario_id, asignatura_id, grupo_id, sesion_id, fecha_asistencia_alumno, tipo_asistencia_id, tarjeta_id)
+                    VALUES (?, ?, ?, ?, ?, 2, ?)
+                    """, inserciones);
+            }
+        });
+
+        ResultadoRegistros resultado = new ResultadoRegistros(inserciones.size(), actualizaciones.size());
+        // Una línea por sesión con el resumen, nunca una por alumno
+        log.atInfo()
+                .addKeyValue("sesionId", sesionId)
+                .addKeyValue("matriculados", matriculados)
+                .addKeyValue("creados", resultado.getCreados())
+                .addKeyValue("actualizados", resultado.getActualizados())
+                .log("Registros de matriculados de la sesión {}: {}", sesionId, resultado);
+        return resultado;
+    }
+
+    /**
+     * Deshace la preparación de una sesión descartada: borra los registros que nadie llegó
+     * a usar y deja sin sesión los de los alumnos que ya habían registrado entrada.
+     */
+    public void desvincularDeSesion(Integer sesionId) {
+        jdbcTemplate.update("""
+            DELETE FROM asistencia_alumno
+            WHERE sesion_id = ?
+              AND hora_entrada_alumno IS NULL
+              AND tipo_asistencia_id = 2
+            """, sesionId);
+        jdbcTemplate.update("""
+            UPDATE asistencia_alumno
+            SET sesion_id = NULL,
+                asignatura_id = NULL,
+                grupo_id = NULL
+            WHERE sesion_id = ?
+            """, sesionId);
     }
 
     public void marcarAsistencia(Long asistenciaId, int tipoAsistencia) {
@@ -166,78 +272,58 @@ public class AsistenciaAlumnoBBDD {
             """, tipoAsistencia, asistenciaId);
     }
 
-    public void insertarNoAsistencias(Integer sesionId, Integer asignaturaId,
-                                      Integer grupoId, LocalDate fechaCreacion) {
-        try {
-            // Obtener alumnos matriculados usando MatriculaBBDD
-            List<Map<String, Object>> matriculados = matriculaBBDD.obtenerAlumnosMatriculados(asignaturaId, grupoId);
-
-            for (Map<String, Object> matricula : matriculados) {
-                Integer alumnoId = (Integer) matricula.get("usuario_id");
-
-                // Buscar la tarjeta asociada al alumno
-                Integer tarjetaAlumnoId = tarjetaBBDD.obtenerTarjetaDeUsuario(alumnoId);
-
-                // Verificar si ya existe un registro de asistencia
-                String checkSql = """
-                    SELECT COUNT(*) FROM asistencia_alumno 
-                    WHERE usuario_id = ? 
-                      AND asignatura_id = ? 
-                      AND grupo_id = ? 
-                      AND DATE(fecha_asistencia_alumno) = ?
-                    """;
-                Integer count = jdbcTemplate.queryForObject(checkSql, Integer.class,
-                        alumnoId, asignaturaId, grupoId, fechaCreacion);
-
-                if (count == null || count == 0) {
-                    // Insertar registro de no asistencia con tarjeta_id
-                    jdbcTemplate.update("""
-                        INSERT INTO asistencia_alumno 
-                        (usuario_id, asignatura_id, grupo_id, sesion_id, fecha_asistencia_alumno, tipo_asistencia_id, tarjeta_id) 
-                        VALUES (?, ?, ?, ?, ?, 2, ?)
-                        """, alumnoId, asignaturaId, grupoId, sesionId, fechaCreacion, tarjetaAlumnoId);
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Error insertando no asistencias: " + e.getMessage());
-            e.printStackTrace();
-        }
+    /**
+     * Inserta en una sola sentencia un registro de no asistencia para cada matriculado
+     * que no tenga ya registro en esa asignatura, grupo y fecha (anti-join).
+     * La fecha se compara directamente con la columna para poder usar el índice.
+     */
+    public int insertarNoAsistencias(Integer sesionId, Integer asignaturaId,
+                                     Integer grupoId, LocalDate fechaCreacion) {
+        return jdbcTemplate.update(SQL_INSERTAR_NO_ASISTENCIAS, sesionId, fechaCreacion, asignaturaId, grupoId, fechaCreacion);
     }
 
-    public void clasificarAsistenciasCompletadas(Integer sesionId, Integer asignaturaId,
-                                                 Integer grupoId, LocalDate fechaCreacion, Object horaSalidaProfesor) {
-        // Obtener asistencias completadas que necesitan clasificación
-        String sql = """
-        SELECT asistencia_alumno_id, hora_salida_alumno
-        FROM asistencia_alumno
-        WHERE fecha_asistencia_alumno = ?
-          AND asignatura_id = ?
-          AND grupo_id = ?
-          AND hora_entrada_alumno IS NOT NULL
-          AND hora_salida_alumno IS NOT NULL
-          AND tipo_asistencia_id = 5
-        """;
+    /**
+     * Clasifica las asistencias completadas comparando en Java la salida de cada alumno
+     * con la del profesor, y escribe el resultado con una sentencia por tipo de asistencia
+     */
+    public int clasificarAsistenciasCompletadas(Integer sesionId, Integer asignaturaId,
+                                                Integer grupoId, LocalDate fechaCreacion, LocalTime salidaProfesor) {
+        if (salidaProfesor == null) {
+            return 0;
+        }
 
-        List<Map<String, Object>> asistencias = jdbcTemplate.queryForList(sql,
-                fechaCreacion, asignaturaId, grupoId);
+        List<Long> asisten = new ArrayList<>();
+        List<Long> mediaAsistencia = new ArrayList<>();
 
-        for (Map<String, Object> asistencia : asistencias) {
-            Long asistenciaId = ((Number) asistencia.get("asistencia_alumno_id")).longValue();
-            Object horaSalidaAlumno = asistencia.get("hora_salida_alumno");
+        // Asistencias completadas que necesitan clasificación
+        jdbcTemplate.query(SQL_ASISTENCIAS_COMPLETADAS, rs -> {
+            LocalTime salidaAlumno = rs.getObject("hora_salida_alumno", LocalTime.class);
+            long diffMin = Math.abs(Duration.between(salidaAlumno, salidaProfesor).getSeconds()) / 60;
 
-            if (horaSalidaAlumno != null && horaSalidaProfesor != null) {
-                // Calcular diferencia en segundos y convertir a minutos
-                String diffSql = """
-                SELECT ABS(TIME_TO_SEC(?) - TIME_TO_SEC(?)) / 60 AS diffMin
-                """;
-                Integer diffMin = jdbcTemplate.queryForObject(diffSql, Integer.class,
-                        horaSalidaProfesor, horaSalidaAlumno);
+            // Asiste (1) si ≤15 min, media asistencia (3) si >15 min
+            (diffMin <= 15 ? asisten : mediaAsistencia).add(rs.getLong("asistencia_alumno_id"));
+        }, fechaCreacion, asignaturaId, grupoId);
 
-                // Asiste (1) si ≤15 min, media asistencia (3) si >15 min
-                int tipoAsistencia = (diffMin != null && diffMin <= 15) ? 1 : 3;
+        marcarAsistencias(asisten, 1);
+        marcarAsistencias(mediaAsistencia, 3);
+        return asisten.size() + mediaAsistencia.size();
+    }
 
-                marcarAsistencia(asistenciaId, tipoAsistencia);
-            }
+    /**
+     * Marca el mismo tipo de asistencia a un conjunto de registros con un UPDATE ... IN
+     * (troceado para no superar un número razonable de parámetros por sentencia)
+     */
+    private void marcarAsistencias(List<Long> asistenciaIds, int tipoAsistencia) {
+        for (int desde = 0; desde < asistenciaIds.size(); desde += MAX_PARAMETROS_IN) {
+            List<Long> trozo = asistenciaIds.subList(desde, Math.min(desde + MAX_PARAMETROS_IN, asistenciaIds.size()));
+            String marcadores = String.join(", ", Collections.nCopies(trozo.size(), "?"));
+
+            List<Object> params = new ArrayList<>(trozo.size() + 1);
+            params.add(tipoAsistencia);
+            params.addAll(trozo);
+
+            jdbcTemplate.update("UPDATE asistencia_alumno SET tipo_asistencia_id = ? WHERE asistencia_alumno_id IN ("
+                    + marcadores + ")", params.toArray());
         }
     }
 
@@ -273,7 +359,7 @@ public class AsistenciaAlumnoBBDD {
     }
 
     public void marcarAsistenciasInmediatas(Integer sesionId, Integer asignaturaId,
-                                            Integer grupoId, LocalDate fechaCreacion, Object horaSalidaProfesor) {
+                                            Integer grupoId, LocalDate fechaCreacion, LocalTime horaSalidaProfesor) {
         if (horaSalidaProfesor != null) {
             // Marcar como asiste si salieron ≤15 min antes del profesor
             String updateSql = """
@@ -283,10 +369,18 @@ public class AsistenciaAlumnoBBDD {
               AND asignatura_id = ?
               AND grupo_id = ?
               AND hora_salida_alumno IS NOT NULL
-              AND TIME_TO_SEC(hora_salida_alumno) >= TIME_TO_SEC(?) - 900
+              AND hora_salida_alumno >= ?
             """;
-            // 900 segundos = 15 minutos
-            jdbcTemplate.update(updateSql, sesionId, fechaCreacion, asignaturaId, grupoId, horaSalidaProfesor);
+            // El límite se calcula aquí para que la columna se compare directamente (sin TIME_TO_SEC)
+            LocalTime limite = horaSalidaProfesor.isBefore(LocalTime.of(0, 15))
+                    ? LocalTime.MIN
+                    : horaSalidaProfesor.minusMinutes(15);
+            jdbcTemplate.update(updateSql, sesionId, fechaCreacion, asignaturaId, grupoId, limite);
         }
     }
+
+    // Fila de la consulta de matriculados con sus registros de asistencia de hoy
+    private record FilaMatriculado(int usuarioId, Integer tarjetaId, Long asistenciaId,
+                                   Integer sesionId, Integer asignaturaId, Integer grupoId) {
+    }
 }
\ No newline at end of file
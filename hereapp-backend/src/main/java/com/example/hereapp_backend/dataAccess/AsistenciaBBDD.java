@@ -1,59 +1,90 @@
 package com.example.hereapp_backend.dataAccess;
 
-import org.springframework.jdbc.core.JdbcTemplate;
+import com.example.hereapp_backend.config.MetricasAsistencia;
+import com.example.hereapp_backend.config.MetricasAsistencia.Pase;
+import com.example.hereapp_backend.config.RelojAplicacion;
+import com.example.hereapp_backend.models.AsistenciaAbierta;
+import com.example.hereapp_backend.models.ContextoFichaje;
+import com.example.hereapp_backend.models.Rol;
+import com.example.hereapp_backend.models.SesionAbierta;
 import org.springframework.stereotype.Service;
+import java.time.Duration;
 import java.time.LocalDate;
-import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 
 @Service
 public class AsistenciaBBDD {
 
     private final UsuarioBBDD usuarioBBDD;
-    private final TarjetaBBDD tarjetaBBDD;
     private final SesionBBDD sesionBBDD;
     private final AsistenciaAlumnoBBDD asistenciaAlumnoBBDD;
-    private final JdbcTemplate jdbcTemplate;
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final FinalizacionSesionBBDD finalizacionSesionBBDD;
+    private final BloqueosPorUsuario bloqueosPorUsuario;
+    private final RelojAplicacion reloj;
+    private final MetricasAsistencia metricas;
 
     public AsistenciaBBDD(UsuarioBBDD usuarioBBDD,
-                          TarjetaBBDD tarjetaBBDD,
                           SesionBBDD sesionBBDD,
                           AsistenciaAlumnoBBDD asistenciaAlumnoBBDD,
-                          JdbcTemplate jdbcTemplate) {
+                          FinalizacionSesionBBDD finalizacionSesionBBDD,
+                          BloqueosPorUsuario bloqueosPorUsuario,
+                          RelojAplicacion reloj,
+                          MetricasAsistencia metricas) {
         this.usuarioBBDD = usuarioBBDD;
-        this.tarjetaBBDD = tarjetaBBDD;
         this.sesionBBDD = sesionBBDD;
         this.asistenciaAlumnoBBDD = asistenciaAlumnoBBDD;
-        this.jdbcTemplate = jdbcTemplate;
+        this.finalizacionSesionBBDD = finalizacionSesionBBDD;
+        this.bloqueosPorUsuario = bloqueosPorUsuario;
+        this.reloj = reloj;
+        this.metricas = metricas;
     }
 
     public String procesarAsistenciaNFC(String uidMifare, String emailUsuario) {
-        // 1. Verificar que la tarjeta esté registrada
-        if (!tarjetaBBDD.existeTarjetaMifare(uidMifare)) {
-            throw new RuntimeException("La tarjeta no está registrada en el sistema");
+        Pase pase = metricas.iniciarPase();
+        try {
+            String mensaje = procesarPase(uidMifare, emailUsuario, pase);
+            pase.terminar(mensaje);
+            return mensaje;
+        } catch (RuntimeException e) {
+            pase.fallar();
+            throw e;
         }
+    }
 
-        // 2. Obtener el usuario y la tarjeta
-        Integer userId = usuarioBBDD.obtenerUsuarioId(emailUsuario);
-        if (userId == null) {
-            throw new RuntimeException("Usuario no encontrado");
+    private String procesarPase(String uidMifare, String emailUsuario, Pase pase) {
+        // 1. Resolver tarjeta, usuario y roles en un único viaje a la base de datos
+        ContextoFichaje contexto = pase.etapa("contexto",
+                () -> usuarioBBDD.resolverContextoFichaje(uidMifare, emailUsuario));
+
+        // 2. Verificar que la tarjeta esté registrada y que el usuario exista
+        if (contexto.getTarjetaId() == null) {
+            throw new RuntimeException("La tarjeta no está registrada en el sistema");
         }
 
-        Integer tarjetaId = tarjetaBBDD.obtenerTarjetaId(uidMifare);
-        if (tarjetaId == null) {
-            throw new RuntimeException("Error obteniendo ID de tarjeta");
+        if (contexto.getUsuarioId() == null) {
+            throw new RuntimeException("Usuario no encontrado");
         }
 
         // 3. Determinar cómo procesar según los roles del usuario
         // Prioridad: Si tiene rol PROFESOR (aunque también tenga ADMIN), procesar como profesor
-        if (usuarioBBDD.tieneRol(userId, "PROFESOR")) {
-            return procesarProfesor(userId, tarjetaId);
-        } else if (usuarioBBDD.tieneRol(userId, "ALUMNO")) {
-            return procesarAlumno(userId, tarjetaId);
-        } else if (usuarioBBDD.tieneRol(userId, "ADMIN")) {
+        // Los pases de un mismo usuario se serializan para que comprobar y crear sea atómico
+        long antesDelBloqueo = System.nanoTime();
+        if (contexto.tieneRol(Rol.PROFESOR)) {
+            pase.setRol("profesor");
+            // La hora se toma una sola vez, ya dentro del bloqueo, y se usa en todo el pase
+            return bloqueosPorUsuario.ejecutar(contexto.getUsuarioId(), () -> {
+                pase.etapaDesde("espera_bloqueo", antesDelBloqueo);
+                return procesarProfesor(contexto, reloj.ahora(), pase);
+            });
+        } else if (contexto.tieneRol(Rol.ALUMNO)) {
+            pase.setRol("alumno");
+            return bloqueosPorUsuario.ejecutar(contexto.getUsuarioId(), () -> {
+                pase.etapaDesde("espera_bloqueo", antesDelBloqueo);
+                return procesarAlumno(contexto, reloj.ahora(), pase);
+            });
+        } else if (contexto.tieneRol(Rol.ADMIN)) {
+            pase.setRol("admin");
             // Solo admin sin otros roles
             return "Usuario administrador: utilice la función de registro de tarjetas";
         } else {
@@ -61,35 +92,35 @@ public class AsistenciaBBDD {
         }
     }
 
-    private String procesarAlumno(Integer alumnoId, Integer tarjetaId) {
-        // Verificar que el usuario tenga rol alumno
-        if (!usuarioBBDD.tieneRol(alumnoId, "ALUMNO")) {
-            return "No se encontró alumno con ese ID";
-        }
+    private String procesarAlumno(ContextoFichaje contexto, LocalDateTime ahora, Pase pase) {
+        Integer alumnoId = contexto.getUsuarioId();
+        Integer tarjetaId = contexto.getTarjetaId();
 
         // Buscar asistencia abierta del alumno (sin salida registrada)
-        Map<String, Object> asistenciaAbierta = asistenciaAlumnoBBDD.obtenerAsistenciaAbierta(alumnoId);
+        AsistenciaAbierta asistenciaAbierta = pase.etapa("asistencia_abierta",
+                () -> asistenciaAlumnoBBDD.obtenerAsistenciaAbierta(alumnoId, ahora.toLocalDate()));
 
         if (asistenciaAbierta != null) {
-            Long asistenciaId = ((Number) asistenciaAbierta.get("asistencia_alumno_id")).longValue();
-            Object horaEntrada = asistenciaAbierta.get("hora_entrada_alumno");
-            Object sesionId = asistenciaAbierta.get("sesion_id");
+            Long asistenciaId = asistenciaAbierta.asistenciaAlumnoId();
+            LocalTime horaEntrada = asistenciaAbierta.horaEntrada();
+            Integer sesionId = asistenciaAbierta.sesionId();
 
             // Primer pase: no tenía hora_entrada
             if (horaEntrada == null) {
-                asistenciaAlumnoBBDD.registrarEntrada(asistenciaId, tarjetaId);
+                pase.etapa("registro", () -> asistenciaAlumnoBBDD.registrarEntrada(asistenciaId, tarjetaId, ahora.toLocalTime()));
                 return "Entrada registrada correctamente";
             }
 
             // Segundo pase: verificar si han pasado >= 5 minutos para poder registrar salida
-            int minutosDesdeEntrada = asistenciaAlumnoBBDD.calcularMinutosDesdeEntrada(asistenciaId);
+            long minutosDesdeEntrada = asistenciaAbierta.minutosDesdeEntrada(ahora.toLocalTime());
             if (minutosDesdeEntrada >= 5) {
                 // Registrar salida del alumno (NO crear registros de matriculados)
-                asistenciaAlumnoBBDD.registrarSalida(asistenciaId);
+                pase.etapa("registro", () -> asistenciaAlumnoBBDD.registrarSalida(asistenciaId, ahora.toLocalTime()));
 
                 // Verificar sesión del profesor y marcar asistencia si corresponde
                 if (sesionId != null) {
-                    verificarYMarcarAsistencia(asistenciaId, (Integer) sesionId);
+                    pase.etapa("marcar_asistencia",
+                            () -> verificarYMarcarAsistencia(asistenciaId, sesionId, ahora.toLocalTime()));
                 }
 
                 return "Salida registrada correctamente tras " + minutosDesdeEntrada + " minutos";
@@ -99,33 +130,34 @@ public class AsistenciaBBDD {
         }
 
         // Si no hay asistencia abierta, crear nueva entrada
-        asistenciaAlumnoBBDD.crearNuevaEntrada(alumnoId, tarjetaId);
-        return "Nueva entrada registrada";
+        boolean creada = pase.etapa("registro", () -> asistenciaAlumnoBBDD.crearNuevaEntrada(alumnoId, tarjetaId, ahora));
+        // Si otra instancia registró la entrada a la vez, se responde como a un segundo pase inmediato
+        return creada ? "Nueva entrada registrada" : "Asistencia reciente (0 min), no se puede registrar salida aún";
     }
 
-    private String procesarProfesor(Integer profesorId, Integer tarjetaId) {
-        // Verificar que el usuario tenga rol profesor
-        if (!usuarioBBDD.tieneRol(profesorId, "PROFESOR")) {
-            return "No se encontró profesor con ese ID";
-        }
+    private String procesarProfesor(ContextoFichaje contexto, LocalDateTime ahora, Pase pase) {
+        Integer profesorId = contexto.getUsuarioId();
+        Integer tarjetaId = contexto.getTarjetaId();
 
-        Map<String, Object> sesionAbierta = sesionBBDD.obtenerSesionAbiertaProfesor(profesorId);
+        SesionAbierta sesionAbierta = pase.etapa("sesion_abierta",
+                () -> sesionBBDD.obtenerSesionAbiertaProfesor(profesorId));
 
         if (sesionAbierta != null) {
             // CERRAR SESIÓN EXISTENTE
-            Integer sesionId = (Integer) sesionAbierta.get("sesion_id");
-            Integer asignaturaId = (Integer) sesionAbierta.get("asignatura_id");
-            Integer grupoId = (Integer) sesionAbierta.get("grupo_id");
-            LocalDate fechaCreacion = ((java.sql.Date) sesionAbierta.get("fecha_creacion")).toLocalDate();
+            Integer sesionId = sesionAbierta.sesionId();
+            Integer asignaturaId = sesionAbierta.asignaturaId();
+            Integer grupoId = sesionAbierta.grupoId();
+            LocalDate fechaCreacion = sesionAbierta.fechaCreacion();
 
-            int minutosDesdeInicio = sesionBBDD.calcularMinutosSesion(sesionId);
+            long minutosDesdeInicio = sesionAbierta.minutosDesdeInicio(ahora);
 
             if (minutosDesdeInicio >= 5) {
                 // Cerrar sesión del profesor prueba
-                sesionBBDD.cerrarSesion(sesionId);
+                pase.etapa("registro", () -> sesionBBDD.cerrarSesion(sesionId, ahora.toLocalTime()));
 
                 // Marcar asistencias y programar finalización
-                marcarAsistenciasYProgramarFinalizacion(sesionId, asignaturaId, grupoId, fechaCreacion);
+                pase.etapa("marcar_asistencia", () -> marcarAsistenciasYProgramarFinalizacion(sesionId,
+                        asignaturaId, grupoId, fechaCreacion, ahora.toLocalTime()));
 
                 return "Sesión cerrada tras " + minutosDesdeInicio + " minutos";
             } else {
@@ -133,73 +165,35 @@ public class AsistenciaBBDD {
             }
         } else {
             // CREAR NUEVA SESIÓN
-            // Solo aquí se deben crear los registros de alumnos matriculados
-            String resultado = sesionBBDD.crearNuevaSesion(profesorId, tarjetaId);
-
-            // Obtener la nueva sesión creada para poder crear los registros de matriculados
-            Map<String, Object> nuevaSesion = sesionBBDD.obtenerSesionAbiertaProfesor(profesorId);
-            if (nuevaSesion != null) {
-                Integer sesionId = (Integer) nuevaSesion.get("sesion_id");
-                Integer asignaturaId = (Integer) nuevaSesion.get("asignatura_id");
-                Integer grupoId = (Integer) nuevaSesion.get("grupo_id");
-
-                // SOLO cuando se crea una nueva sesión, crear registros de alumnos matriculados
-                asistenciaAlumnoBBDD.crearRegistrosAlumnosMatriculados(sesionId, asignaturaId, grupoId);
-            }
-
-            return resultado;
+            // crearNuevaSesion ya crea (o encuentra preparados) los registros de alumnos matriculados
+            SesionAbierta nuevaSesion = pase.etapa("crear_sesion",
+                    () -> sesionBBDD.crearNuevaSesion(profesorId, tarjetaId, ahora));
+            return nuevaSesion != null ? "Nueva sesión creada" : "No hay clase programada para este horario";
         }
     }
 
-    private void verificarYMarcarAsistencia(Long asistenciaId, Integer sesionId) {
-        Object horaSalidaProfesor = sesionBBDD.obtenerHoraSalidaProfesor(sesionId);
+    private void verificarYMarcarAsistencia(Long asistenciaId, Integer sesionId, LocalTime horaSalidaAlumno) {
+        LocalTime horaSalidaProfesor = sesionBBDD.obtenerHoraSalidaProfesor(sesionId);
 
         if (horaSalidaProfesor != null) {
             // Verificar si la salida del alumno fue dentro de los 15 minutos
-            String diffSql = """
-                SELECT TIMESTAMPDIFF(MINUTE, ?, TIME(CONVERT_TZ(NOW(), 'UTC', 'Europe/Madrid'))) AS diffMin
-                """;
-            Integer diffMin = jdbcTemplate.queryForObject(diffSql, Integer.class, horaSalidaProfesor);
+            long diffMin = Duration.between(horaSalidaProfesor, horaSalidaAlumno).toMinutes();
 
-            if (diffMin != null && diffMin >= -15) {
+            if (diffMin >= -15) {
                 asistenciaAlumnoBBDD.marcarAsistencia(asistenciaId, 1);
             }
         }
     }
 
     private void marcarAsistenciasYProgramarFinalizacion(Integer sesionId, Integer asignaturaId,
-                                                         Integer grupoId, LocalDate fechaCreacion) {
-        // Marcar asistencias inmediatas
-        Object horaSalidaProfesor = sesionBBDD.obtenerHoraSalidaProfesor(sesionId);
+                                                         Integer grupoId, LocalDate fechaCreacion,
+                                                         LocalTime horaSalidaProfesor) {
+        // Marcar asistencias inmediatas (la hora de salida es la que se acaba de guardar)
         asistenciaAlumnoBBDD.marcarAsistenciasInmediatas(sesionId, asignaturaId, grupoId,
                 fechaCreacion, horaSalidaProfesor);
 
-        // Programar finalización tras 10 minutos
-        scheduler.schedule(() -> {
-            finalizarAsistenciasSesion(sesionId, asignaturaId, grupoId, fechaCreacion);
-        }, 10, TimeUnit.MINUTES);
-    }
-
-    private void finalizarAsistenciasSesion(Integer sesionId, Integer asignaturaId,
-                                            Integer grupoId, LocalDate fechaCreacion) {
-        try {
-            // Actualizar registros con sesión
-            asistenciaAlumnoBBDD.actualizarRegistrosConSesion(sesionId, asignaturaId, grupoId, fechaCreacion);
-
-            // Clasificar asistencias completadas
-            Object horaSalidaProfesor = sesionBBDD.obtenerHoraSalidaProfesor(sesionId);
-            asistenciaAlumnoBBDD.clasificarAsistenciasCompletadas(sesionId, asignaturaId, grupoId,
-                    fechaCreacion, horaSalidaProfesor);
-
-            // Marcar solo entrada como asistencia media
-            asistenciaAlumnoBBDD.marcarSoloEntradaComoMedia(sesionId, asignaturaId, grupoId, fechaCreacion);
-
-            // Insertar registros de no asistencia
-            asistenciaAlumnoBBDD.insertarNoAsistencias(sesionId, asignaturaId, grupoId, fechaCreacion);
-
-        } catch (Exception e) {
-            System.err.println("Error finalizando asistencias de sesión " + sesionId + ": " + e.getMessage());
-        }
+        // Programar finalización diferida en la cola persistente (sobrevive a reinicios)
+        finalizacionSesionBBDD.programarFinalizacion(sesionId, asignaturaId, grupoId, fechaCreacion);
     }
 
     // Método delegado para compatibilidad con otros controladores
@@ -0,0 +1,51 @@
+package com.example.hereapp_backend.dataAccess;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Bloqueos por franjas indexados por usuario_id.
+ *
+ * Serializa las transiciones de estado de un mismo usuario (comprobar si hay asistencia
+ * o sesión abierta y, si no, crearla) sin tener que usar SELECT ... FOR UPDATE.
+ * Usuarios distintos caen casi siempre en franjas distintas y no se esperan entre sí.
+ * Se usa ReentrantLock en lugar de synchronized para no fijar hilos virtuales.
+ *
+ * Solo cubre esta instancia. Entre instancias, los duplicados los rechaza la base de datos:
+ * uk_sesion_abierta_profesor (una sesión abierta por profesor) y uk_asistencia_entrada_abierta
+ * (una entrada abierta sin sesión por alumno y día).
+ */
+@Component
+public class BloqueosPorUsuario {
+
+    private final ReentrantLock[] franjas;
+    private final int mascara;
+
+    public BloqueosPorUsuario(@Value("${hereapp.bloqueos.franjas:256}") int numFranjas) {
+        // Redondear a potencia de dos para calcular la franja con una máscara
+        int tamano = Integer.highestOneBit(Math.max(1, numFranjas - 1)) << 1;
+        this.franjas = new ReentrantLock[tamano];
+        for (int i = 0; i < tamano; i++) {
+            franjas[i] = new ReentrantLock();
+        }
+        this.mascara = tamano - 1;
+    }
+
+    public <T> T ejecutar(int usuarioId, Supplier<T> operacion) {
+        ReentrantLock bloqueo = franjas[franja(usuarioId)];
+        bloqueo.lock();
+        try {
+            return operacion.get();
+        } finally {
+            bloqueo.unlock();
+        }
+    }
+
+    private int franja(int usuarioId) {
+        // Mezcla de bits para que ids consecutivos no se concentren en franjas vecinas
+        int h = usuarioId * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mascara;
+    }
+}
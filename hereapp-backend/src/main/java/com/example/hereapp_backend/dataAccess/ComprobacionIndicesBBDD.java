@@ -0,0 +1,91 @@
+package com.example.hereapp_backend.dataAccess;
+
+import com.example.hereapp_backend.config.RelojAplicacion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Comprobación al arrancar de que las consultas del camino crítico usan índices.
+ *
+ * Ejecuta EXPLAIN sobre las mismas sentencias que lanzan los *BBDD (las constantes SQL_* de
+ * cada clase, no copias) y avisa si alguna tabla se recorre entera (type = ALL). No bloquea
+ * el arranque: solo deja el aviso en el log.
+ */
+@Component
+public class ComprobacionIndicesBBDD {
+
+    private static final Logger log = LoggerFactory.getLogger(ComprobacionIndicesBBDD.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RelojAplicacion reloj;
+    private final boolean habilitada;
+
+    public ComprobacionIndicesBBDD(JdbcTemplate jdbcTemplate,
+                                   RelojAplicacion reloj,
+                                   @Value("${hereapp.indices.comprobar-al-arrancar:true}") boolean habilitada) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.reloj = reloj;
+        this.habilitada = habilitada;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void comprobarAlArrancar() {
+        if (!habilitada) {
+            return;
+        }
+        int avisos = 0;
+
+        for (Map.Entry<String, Object[]> consulta : consultasCriticas(reloj.hoy()).entrySet()) {
+            try {
+                avisos += comprobar(consulta.getKey(), consulta.getValue());
+            } catch (Exception e) {
+                log.warn("No se pudo ejecutar EXPLAIN: {}", e.getMessage());
+            }
+        }
+
+        if (avisos == 0) {
+            log.info("Comprobación de índices: todas las consultas críticas usan índices");
+        }
+    }
+
+    private int comprobar(String sql, Object[] parametros) {
+        int[] recorridosCompletos = {0};
+        jdbcTemplate.query("EXPLAIN " + sql, rs -> {
+            // En un INSERT ... SELECT la fila de la tabla destino sale siempre como ALL: solo cuenta el SELECT
+            if ("ALL".equalsIgnoreCase(rs.getString("type"))
+                    && !"INSERT".equalsIgnoreCase(rs.getString("select_type"))) {
+                recorridosCompletos[0]++;
+                log.warn("Recorrido completo de la tabla '{}' (filas estimadas: {}) en la consulta:\n{}",
+                        rs.getString("table"), rs.getLong("rows"), sql.strip());
+            }
+        }, parametros);
+        return recorridosCompletos[0];
+    }
+
+    private Map<String, Object[]> consultasCriticas(LocalDate hoy) {
+        Map<String, Object[]> consultas = new LinkedHashMap<>();
+
+        // Pase de alumno
+        consultas.put(AsistenciaAlumnoBBDD.SQL_ASISTENCIA_ABIERTA, new Object[]{0, hoy});
+        // Pase de profesor
+        consultas.put(SesionBBDD.SQL_SESION_ABIERTA_PROFESOR, new Object[]{0});
+        // Fallo de la caché de tarjetas
+        consultas.put(TarjetaBBDD.SQL_TARJETA_POR_UID, new Object[]{""});
+        // Lista de clase al abrir o preabrir una sesión: matrícula con los registros de hoy
+        consultas.put(AsistenciaAlumnoBBDD.SQL_MATRICULADOS_CON_REGISTROS, new Object[]{hoy, 0, 0});
+        // Finalización: no asistencias (anti-join NOT EXISTS) y clasificación de las completadas
+        consultas.put(AsistenciaAlumnoBBDD.SQL_INSERTAR_NO_ASISTENCIAS, new Object[]{0, hoy, 0, 0, hoy});
+        consultas.put(AsistenciaAlumnoBBDD.SQL_ASISTENCIAS_COMPLETADAS, new Object[]{hoy, 0, 0});
+        consultas.put(SesionBBDD.SQL_HORA_SALIDA_PROFESOR, new Object[]{0});
+
+        return consultas;
+    }
+}
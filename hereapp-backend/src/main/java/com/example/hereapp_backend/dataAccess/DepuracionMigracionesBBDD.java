@@ -0,0 +1,284 @@
+package com.example.hereapp_backend.dataAccess;
+
+import org.flywaydb.core.api.callback.Callback;
+import org.flywaydb.core.api.callback.Context;
+import org.flywaydb.core.api.callback.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Component;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Comprueba, justo antes de que Flyway aplique V3 y V5, que no haya duplicados que impidan
+ * crear sus índices únicos. Por defecto solo informa: si los hay, la migración falla con la
+ * lista de grupos repetidos y la aplicación no arranca hasta depurarlos.
+ *
+ * Con hereapp.migraciones.depurar-duplicados=true los depura en vez de fallar, dejando un
+ * registro de cada grupo. Spring Boot registra en Flyway los beans Callback. Cada paso es
+ * idempotente y sin duplicados no escribe nada; lo que cambia queda en el log con los ids
+ * afectados.
+ */
+@Component
+public class DepuracionMigracionesBBDD implements Callback {
+
+    private static final Logger log = LoggerFactory.getLogger(DepuracionMigracionesBBDD.class);
+
+    private static final int MAX_PARAMETROS_IN = 1000;
+
+    private final boolean depurar;
+
+    public DepuracionMigracionesBBDD(@Value("${hereapp.migraciones.depurar-duplicados:false}") boolean depurar) {
+        this.depurar = depurar;
+    }
+
+    @Override
+    public boolean supports(Event event, Context context) {
+        return event == Event.BEFORE_EACH_MIGRATE
+                && context.getMigrationInfo() != null
+                && context.getMigrationInfo().getVersion() != null;
+    }
+
+    @Override
+    public boolean canHandleInTransaction(Event event, Context context) {
+        return true;
+    }
+
+    @Override
+    public void handle(Event event, Context context) {
+        // La conexión es la de la migración: no se cierra al terminar
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(context.getConnection(), true));
+        depurarAntesDe(context.getMigrationInfo().getVersion().getVersion(), jdbcTemplate);
+    }
+
+    @Override
+    public String getCallbackName() {
+        return "depuracion-duplicados";
+    }
+
+    void depurarAntesDe(String version, JdbcTemplate jdbcTemplate) {
+        List<String> pendientes = new ArrayList<>();
+        switch (version) {
+            case "3" -> {
+                unificarTarjetasRepetidas(jdbcTemplate, pendientes);
+                quitarRegistrosRepetidosPorSesion(jdbcTemplate, pendientes);
+                cerrarSesionesAbiertasRepetidas(jdbcTemplate, pendientes);
+            }
+            case "5" -> quitarEntradasAbiertasRepetidas(jdbcTemplate, pendientes);
+            default -> {
+            }
+        }
+        if (!pendientes.isEmpty()) {
+            throw new RuntimeException("No se puede aplicar V" + version + " con duplicados en la base. "
+                    + String.join("; ", pendientes)
+                    + ". Depúrelos a mano o arranque una vez con hereapp.migraciones.depurar-duplicados=true");
+        }
+    }
+
+    /**
+     * uk_tarjetas_uid_mifare: de cada UID se conserva la tarjeta de mayor tarjeta_id, la misma
+     * que elige el pase (MAX(tarjeta_id) del usuario), con el usuario_id del grupo si le faltaba.
+     * Los registros de asistencia y las sesiones que apuntaban a las demás pasan a apuntar a esa
+     * antes de borrarlas. Un UID asignado a usuarios distintos no se unifica nunca: hay que
+     * decidir a mano de quién es.
+     */
+    private void unificarTarjetasRepetidas(JdbcTemplate jdbcTemplate, List<String> pendientes) {
+        Map<String, List<Long>> grupos = new LinkedHashMap<>();
+        Map<String, Set<Integer>> usuarios = new HashMap<>();
+        Set<Long> conservadasSinUsuario = new HashSet<>();
+        jdbcTemplate.query("""
+            SELECT tarjeta_id, uid_mifare, usuario_id
+            FROM tarjetas_mifare
+            WHERE uid_mifare IN (SELECT uid_mifare FROM tarjetas_mifare GROUP BY uid_mifare HAVING COUNT(*) > 1)
+            ORDER BY uid_mifare, tarjeta_id DESC
+            """, rs -> {
+            String uid = rs.getString("uid_mifare");
+            long tarjetaId = rs.getLong("tarjeta_id");
+            Integer usuarioId = rs.getObject("usuario_id", Integer.class);
+            List<Long> grupo = grupos.computeIfAbsent(uid, k -> new ArrayList<>());
+            if (grupo.isEmpty() && usuarioId == null) {
+                conservadasSinUsuario.add(tarjetaId);
+            }
+            grupo.add(tarjetaId);
+            if (usuarioId != null) {
+                usuarios.computeIfAbsent(uid, k -> new HashSet<>()).add(usuarioId);
+            }
+        });
+        if (grupos.isEmpty()) {
+            return;
+        }
+
+        List<String> enConflicto = new ArrayList<>();
+        usuarios.forEach((uid, ids) -> {
+            if (ids.size() > 1) {
+                enConflicto.add(uid + " (usuarios " + ids + ")");
+            }
+        });
+        if (!enConflicto.isEmpty()) {
+            throw new RuntimeException("No se puede aplicar V3: hay UID MIFARE asignados a varios usuarios, "
+                    + "asígnelos a mano: " + String.join(", ", enConflicto));
+        }
+        if (!depurar) {
+            pendientes.add("tarjetas_mifare con uid_mifare repetido (uid=tarjeta_id): " + grupos);
+            return;
+        }
+
+        // La conservada hereda el usuario de las que se borran si ella no lo tenía
+        grupos.forEach((uid, ids) -> {
+            if (conservadasSinUsuario.contains(ids.get(0)) && usuarios.containsKey(uid)) {
+                jdbcTemplate.update("UPDATE tarjetas_mifare SET usuario_id = ? WHERE tarjeta_id = ?",
+                        usuarios.get(uid).iterator().next(), ids.get(0));
+            }
+        });
+        List<Long> descartadas = sobrantes(grupos);
+        String conservada = """
+            (SELECT MAX(t2.tarjeta_id)
+             FROM tarjetas_mifare t1
+             JOIN tarjetas_mifare t2 ON t2.uid_mifare = t1.uid_mifare
+             WHERE t1.tarjeta_id = %s.tarjeta_id)
+            """;
+        actualizarPorIds(jdbcTemplate, "UPDATE asistencia_alumno aa SET tarjeta_id = " + conservada.formatted("aa")
+                + " WHERE aa.tarjeta_id", descartadas);
+        actualizarPorIds(jdbcTemplate, "UPDATE sesion s SET tarjeta_id = " + conservada.formatted("s")
+                + " WHERE s.tarjeta_id", descartadas);
+        actualizarPorIds(jdbcTemplate, "DELETE FROM tarjetas_mifare WHERE tarjeta_id", descartadas);
+        log.warn("Antes de V3: {} tarjetas con UID repetido unificadas en la más reciente; borradas: {}",
+                descartadas.size(), descartadas);
+    }
+
+    /**
+     * uk_asistencia_usuario_sesion: de cada alumno y sesión se conserva el registro más completo
+     * (con entrada y salida antes que sin ellas) y, a igualdad, el más antiguo.
+     */
+    private void quitarRegistrosRepetidosPorSesion(JdbcTemplate jdbcTemplate, List<String> pendientes) {
+        Map<String, List<Long>> grupos = agrupar(jdbcTemplate, """
+            SELECT asistencia_alumno_id AS id, CONCAT(usuario_id, '/', sesion_id) AS grupo
+            FROM asistencia_alumno
+            WHERE sesion_id IS NOT NULL
+              AND (usuario_id, sesion_id) IN (
+                  SELECT usuario_id, sesion_id
+                  FROM asistencia_alumno
+                  WHERE sesion_id IS NOT NULL
+                  GROUP BY usuario_id, sesion_id
+                  HAVING COUNT(*) > 1)
+            ORDER BY usuario_id, sesion_id, hora_entrada_alumno IS NULL, hora_salida_alumno IS NULL,
+                     asistencia_alumno_id
+            """);
+        if (grupos.isEmpty()) {
+            return;
+        }
+        if (!depurar) {
+            pendientes.add("asistencia_alumno repetida por alumno y sesión (usuario/sesion=ids): " + grupos);
+            return;
+        }
+        List<Long> descartados = sobrantes(grupos);
+        actualizarPorIds(jdbcTemplate, "DELETE FROM asistencia_alumno WHERE asistencia_alumno_id", descartados);
+        log.warn("Antes de V3: {} registros de asistencia repetidos para el mismo alumno y sesión borrados: {}",
+                descartados.size(), descartados);
+    }
+
+    /**
+     * uk_sesion_abierta_profesor: si un profesor tiene varias sesiones abiertas sigue abierta la
+     * más reciente, que es la que usan los pases (SesionBBDD.obtenerSesionAbiertaProfesor), y las
+     * demás se cierran con la salida igual a la entrada.
+     */
+    private void cerrarSesionesAbiertasRepetidas(JdbcTemplate jdbcTemplate, List<String> pendientes) {
+        Map<String, List<Long>> grupos = agrupar(jdbcTemplate, """
+            SELECT sesion_id AS id, profesor_id AS grupo
+            FROM sesion
+            WHERE hora_entrada_profesor IS NOT NULL
+              AND hora_salida_profesor IS NULL
+              AND profesor_id IN (
+                  SELECT profesor_id
+                  FROM sesion
+                  WHERE hora_entrada_profesor IS NOT NULL AND hora_salida_profesor IS NULL
+                  GROUP BY profesor_id
+                  HAVING COUNT(*) > 1)
+            ORDER BY profesor_id, sesion_id DESC
+            """);
+        if (grupos.isEmpty()) {
+            return;
+        }
+        if (!depurar) {
+            pendientes.add("sesiones abiertas a la vez por profesor (profesor=sesion_id): " + grupos);
+            return;
+        }
+        List<Long> cerradas = sobrantes(grupos);
+        actualizarPorIds(jdbcTemplate, "UPDATE sesion SET hora_salida_profesor = hora_entrada_profesor WHERE sesion_id",
+                cerradas);
+        log.warn("Antes de V3: {} sesiones abiertas de más cerradas con salida igual a la entrada: {}",
+                cerradas.size(), cerradas);
+    }
+
+    /**
+     * uk_asistencia_entrada_abierta: de las entradas abiertas sin sesión de un alumno en un día
+     * se conserva la primera, que es la hora real de llegada; las demás vienen de pases atendidos
+     * a la vez por dos instancias.
+     */
+    private void quitarEntradasAbiertasRepetidas(JdbcTemplate jdbcTemplate, List<String> pendientes) {
+        Map<String, List<Long>> grupos = agrupar(jdbcTemplate, """
+            SELECT asistencia_alumno_id AS id, CONCAT(usuario_id, '/', fecha_asistencia_alumno) AS grupo
+            FROM asistencia_alumno
+            WHERE sesion_id IS NULL
+              AND hora_entrada_alumno IS NOT NULL
+              AND hora_salida_alumno IS NULL
+              AND (usuario_id, fecha_asistencia_alumno) IN (
+                  SELECT usuario_id, fecha_asistencia_alumno
+                  FROM asistencia_alumno
+                  WHERE sesion_id IS NULL AND hora_entrada_alumno IS NOT NULL AND hora_salida_alumno IS NULL
+                  GROUP BY usuario_id, fecha_asistencia_alumno
+                  HAVING COUNT(*) > 1)
+            ORDER BY usuario_id, fecha_asistencia_alumno, asistencia_alumno_id
+            """);
+        if (grupos.isEmpty()) {
+            return;
+        }
+        if (!depurar) {
+            pendientes.add("entradas abiertas sin sesión repetidas por alumno y día (usuario/fecha=ids): " + grupos);
+            return;
+        }
+        List<Long> descartadas = sobrantes(grupos);
+        actualizarPorIds(jdbcTemplate, "DELETE FROM asistencia_alumno WHERE asistencia_alumno_id", descartadas);
+        log.warn("Antes de V5: {} entradas abiertas sin sesión repetidas borradas: {}",
+                descartadas.size(), descartadas);
+    }
+
+    /**
+     * Lee filas (id, grupo) ordenadas de modo que la que se conserva de cada grupo va primero,
+     * y devuelve los ids de cada grupo en ese orden
+     */
+    private static Map<String, List<Long>> agrupar(JdbcTemplate jdbcTemplate, String sql) {
+        Map<String, List<Long>> grupos = new LinkedHashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            grupos.computeIfAbsent(rs.getString("grupo"), k -> new ArrayList<>()).add(rs.getLong("id"));
+        });
+        return grupos;
+    }
+
+    // Todos los ids menos el primero de cada grupo, que es el que se conserva
+    private static List<Long> sobrantes(Map<String, List<Long>> grupos) {
+        List<Long> sobrantes = new ArrayList<>();
+        for (List<Long> ids : grupos.values()) {
+            sobrantes.addAll(ids.subList(1, ids.size()));
+        }
+        return sobrantes;
+    }
+
+    // Completa la sentencia con "IN (...)", troceada para no superar MAX_PARAMETROS_IN
+    private static void actualizarPorIds(JdbcTemplate jdbcTemplate, String sentencia, List<Long> ids) {
+        for (int desde = 0; desde < ids.size(); desde += MAX_PARAMETROS_IN) {
+            List<Long> trozo = ids.subList(desde, Math.min(desde + MAX_PARAMETROS_IN, ids.size()));
+            String marcadores = String.join(", ", Collections.nCopies(trozo.size(), "?"));
+            jdbcTemplate.update(sentencia + " IN (" + marcadores + ")", trozo.toArray());
+        }
+    }
+}
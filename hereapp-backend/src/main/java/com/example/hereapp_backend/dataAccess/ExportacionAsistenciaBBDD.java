@@ -0,0 +1,301 @@
+package com.example.hereapp_backend.dataAccess;
+
+import com.example.hereapp_backend.config.LimitadorConexiones.ServicioSaturadoException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exportación de asistencias de una asignatura en CSV o NDJSON, opcionalmente comprimida.
+ *
+ * Las filas se leen con un cursor de solo avance y se escriben en la respuesta según llegan,
+ * sin acumular el resultado: con MySQL el tamaño de fetch Integer.MIN_VALUE hace que el
+ * driver entregue las filas de una en una en lugar de cargar todo el resultado en memoria.
+ * Cada exportación ocupa una conexión mientras dura, así que el número de exportaciones
+ * simultáneas está limitado.
+ */
+@Service
+public class ExportacionAsistenciaBBDD {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportacionAsistenciaBBDD.class);
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final String[] COLUMNAS = {"fecha", "asignatura_id", "grupo_id", "sesion_id", "usuario_id",
+            "nombre", "apellido1", "apellido2", "email", "hora_entrada", "hora_salida", "tipo_asistencia_id",
+            "tipo_asistencia"};
+
+    public enum Formato { CSV, NDJSON }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int tamanoFetch;
+    private final int maxSimultaneas;
+    private final Semaphore exportacionesSimultaneas;
+
+    public ExportacionAsistenciaBBDD(JdbcTemplate jdbcTemplate,
+                                     @Value("${hereapp.exportacion.tamano-fetch:-2147483648}") int tamanoFetch,
+                                     @Value("${hereapp.exportacion.max-simultaneas:2}") int maxSimultaneas) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tamanoFetch = tamanoFetch;
+        this.maxSimultaneas = maxSimultaneas;
+        this.exportacionesSimultaneas = new Semaphore(maxSimultaneas);
+    }
+
+    /**
+     * Reserva una exportación. Se pide antes de empezar a responder, para poder contestar
+     * 503 si ya hay demasiadas en curso; el permiso se libera al cerrar la exportación.
+     */
+    public Exportacion reservar(Integer asignaturaId, Integer grupoId, LocalDate desde, LocalDate hasta,
+                                Formato formato, boolean comprimir) {
+        if (!exportacionesSimultaneas.tryAcquire()) {
+            throw new ServicioSaturadoException("Hay demasiadas exportaciones en curso, inténtelo más tarde");
+        }
+        return new Exportacion(asignaturaId, grupoId, desde, hasta, formato, comprimir);
+    }
+
+    public class Exportacion implements AutoCloseable {
+
+        private final Integer asignaturaId;
+        private final Integer grupoId;
+        private final LocalDate desde;
+        private final LocalDate hasta;
+        private final Formato formato;
+        private final boolean comprimir;
+        private boolean cerrada = false;
+
+        private Exportacion(Integer asignaturaId, Integer grupoId, LocalDate desde, LocalDate hasta,
+                            Formato formato, boolean comprimir) {
+            this.asignaturaId = asignaturaId;
+            this.grupoId = grupoId;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.formato = formato;
+            this.comprimir = comprimir;
+        }
+
+        /**
+         * Escribe la exportación completa en la salida y devuelve las filas escritas.
+         */
+        public long escribir(OutputStream salida) throws IOException {
+            long inicio = System.nanoTime();
+            OutputStream destino = comprimir ? new GZIPOutputStream(salida, 8192) : salida;
+            Writer escritor = new BufferedWriter(new OutputStreamWriter(destino, StandardCharsets.UTF_8), 64 * 1024);
+            EscritorFilas filas = formato == Formato.CSV ? new EscritorCsv(escritor) : new EscritorNdjson(escritor);
+
+            long escritas;
+            try {
+                escritas = recorrer(filas);
+            } catch (UncheckedIOException e) {
+                // El cliente cerró la conexión: la consulta ya se canceló en recorrer
+                throw e.getCause();
+            }
+            filas.terminar();
+            escritor.flush();
+            if (destino instanceof GZIPOutputStream gzip) {
+                gzip.finish();
+            }
+            log.info("Exportación de asistencias de la asignatura {} (grupo {}): {} filas en {} ms",
+                    asignaturaId, grupoId, escritas, (System.nanoTime() - inicio) / 1_000_000);
+            return escritas;
+        }
+
+        private long recorrer(EscritorFilas filas) {
+            StringBuilder sql = new StringBuilder("""
+                SELECT aa.fecha_asistencia_alumno, aa.asignatura_id, aa.grupo_id, aa.sesion_id, aa.usuario_id,
+                       u.nombre, u.apellido1, u.apellido2, u.email,
+                       aa.hora_entrada_alumno, aa.hora_salida_alumno, aa.tipo_asistencia_id
+                FROM asistencia_alumno aa
+                JOIN usuario u ON u.usuario_id = aa.usuario_id
+                WHERE aa.asignatura_id = ?
+                """);
+            List<Object> parametros = new ArrayList<>();
+            parametros.add(asignaturaId);
+            if (grupoId != null) {
+                sql.append(" AND aa.grupo_id = ?");
+                parametros.add(grupoId);
+            }
+            if (desde != null) {
+                sql.append(" AND aa.fecha_asistencia_alumno >= ?");
+                parametros.add(desde);
+            }
+            if (hasta != null) {
+                sql.append(" AND aa.fecha_asistencia_alumno <= ?");
+                parametros.add(hasta);
+            }
+            sql.append(" ORDER BY aa.fecha_asistencia_alumno, aa.grupo_id, aa.usuario_id");
+
+            return jdbcTemplate.execute(con -> {
+                PreparedStatement ps = con.prepareStatement(sql.toString(),
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(tamanoFetch);
+                for (int i = 0; i < parametros.size(); i++) {
+                    ps.setObject(i + 1, parametros.get(i));
+                }
+                return ps;
+            }, (PreparedStatement ps) -> {
+                long escritas = 0;
+                ResultSet rs = ps.executeQuery();
+                try {
+                    while (rs.next()) {
+                        filas.escribir(rs);
+                        escritas++;
+                    }
+                } catch (IOException e) {
+                    // Cancelar antes de cerrar: cerrar un cursor de MySQL a medias obliga a leer las filas que faltan
+                    ps.cancel();
+                    throw new UncheckedIOException(e);
+                } finally {
+                    rs.close();
+                }
+                return escritas;
+            });
+        }
+
+        @Override
+        public void close() {
+            if (!cerrada) {
+                cerrada = true;
+                exportacionesSimultaneas.release();
+            }
+        }
+    }
+
+    // Exportaciones en curso (útil para métricas)
+    public int getEnCurso() {
+        return maxSimultaneas - exportacionesSimultaneas.availablePermits();
+    }
+
+    private interface EscritorFilas {
+        void escribir(ResultSet rs) throws SQLException, IOException;
+
+        default void terminar() throws IOException {
+        }
+    }
+
+    // CSV (RFC 4180) con BOM para que las hojas de cálculo detecten UTF-8
+    private static class EscritorCsv implements EscritorFilas {
+
+        private final Writer escritor;
+
+        EscritorCsv(Writer escritor) throws IOException {
+            this.escritor = escritor;
+            escritor.write('\uFEFF');
+            escritor.write(String.join(",", COLUMNAS));
+            escritor.write("\r\n");
+        }
+
+        @Override
+        public void escribir(ResultSet rs) throws SQLException, IOException {
+            Object[] valores = valores(rs);
+            for (int i = 0; i < valores.length; i++) {
+                if (i > 0) {
+                    escritor.write(',');
+                }
+                if (valores[i] != null) {
+                    escribirCampo(valores[i].toString());
+                }
+            }
+            escritor.write("\r\n");
+        }
+
+        private void escribirCampo(String valor) throws IOException {
+            boolean entreComillas = valor.indexOf(',') >= 0 || valor.indexOf('"') >= 0
+                    || valor.indexOf('\n') >= 0 || valor.indexOf('\r') >= 0;
+            if (!entreComillas) {
+                escritor.write(valor);
+                return;
+            }
+            escritor.write('"');
+            escritor.write(valor.replace("\"", "\"\""));
+            escritor.write('"');
+        }
+    }
+
+    // Un objeto JSON por línea
+    private static class EscritorNdjson implements EscritorFilas {
+
+        private final JsonGenerator json;
+
+        EscritorNdjson(Writer escritor) throws IOException {
+            this.json = JSON.createGenerator(escritor);
+            // El generador no cierra ni vacía el escritor: de eso se encarga Exportacion
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+            json.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void escribir(ResultSet rs) throws SQLException, IOException {
+            Object[] valores = valores(rs);
+            json.writeStartObject();
+            for (int i = 0; i < valores.length; i++) {
+                Object valor = valores[i];
+                if (valor == null) {
+                    json.writeNullField(COLUMNAS[i]);
+                } else if (valor instanceof Integer entero) {
+                    json.writeNumberField(COLUMNAS[i], entero);
+                } else {
+                    json.writeStringField(COLUMNAS[i], valor.toString());
+                }
+            }
+            json.writeEndObject();
+            json.writeRaw('\n');
+        }
+
+        @Override
+        public void terminar() throws IOException {
+            json.flush();
+        }
+    }
+
+    // Valores de la fila en el orden de COLUMNAS
+    private static Object[] valores(ResultSet rs) throws SQLException {
+        Integer tipo = rs.getObject("tipo_asistencia_id", Integer.class);
+        return new Object[]{
+                rs.getObject("fecha_asistencia_alumno", LocalDate.class),
+                rs.getObject("asignatura_id", Integer.class),
+                rs.getObject("grupo_id", Integer.class),
+                rs.getObject("sesion_id", Integer.class),
+                rs.getObject("usuario_id", Integer.class),
+                rs.getString("nombre"),
+                rs.getString("apellido1"),
+                rs.getString("apellido2"),
+                rs.getString("email"),
+                rs.getString("hora_entrada_alumno"),
+                rs.getString("hora_salida_alumno"),
+                tipo,
+                describirTipo(tipo)
+        };
+    }
+
+    // Mismos valores que el resumen de asistencia
+    private static String describirTipo(Integer tipo) {
+        if (tipo == null) {
+            return null;
+        }
+        return switch (tipo) {
+            case 1 -> "asiste";
+            case 2 -> "no_asiste";
+            case 3 -> "media";
+            default -> "pendiente";
+        };
+    }
+}
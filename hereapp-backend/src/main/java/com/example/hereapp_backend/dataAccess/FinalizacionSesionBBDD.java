@@ -0,0 +1,274 @@
+package com.example.hereapp_backend.dataAccess;
+
+import com.example.hereapp_backend.config.RelojAplicacion;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Cola persistente de finalizaciones de sesión.
+ *
+ * Al cerrar una sesión se guarda un trabajo en la tabla finalizacion_sesion con la
+ * hora a la que debe ejecutarse. Un sondeo periódico reclama por lotes los trabajos
+ * vencidos y los ejecuta con paralelismo acotado. Como la cola vive en la base de
+ * datos, un reinicio no pierde finalizaciones: al arrancar se recuperan los trabajos
+ * atrasados y los que quedaron a medias. La tabla se crea con la migración V1 de Flyway.
+ */
+@Service
+public class FinalizacionSesionBBDD {
+
+    private static final Logger log = LoggerFactory.getLogger(FinalizacionSesionBBDD.class);
+
+    private static final String PENDIENTE = "PENDIENTE";
+    private static final String FALLIDA = "FALLIDA";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AsistenciaAlumnoBBDD asistenciaAlumnoBBDD;
+    private final SesionBBDD sesionBBDD;
+    private final ResumenAsistenciaBBDD resumenAsistenciaBBDD;
+    private final TransactionTemplate transactionTemplate;
+    private final RelojAplicacion reloj;
+
+    private final Duration retrasoFinalizacion;
+    private final Duration tiempoMaximoReclamo;
+    private final int tamanoLote;
+    private final int maxIntentos;
+    private final ExecutorService ejecutor;
+
+    // Métricas de la cola, actualizadas en cada sondeo
+    private volatile long profundidadCola = 0;
+    private volatile long retrasoSegundos = 0;
+
+    public FinalizacionSesionBBDD(JdbcTemplate jdbcTemplate,
+                                  AsistenciaAlumnoBBDD asistenciaAlumnoBBDD,
+                                  SesionBBDD sesionBBDD,
+                                  ResumenAsistenciaBBDD resumenAsistenciaBBDD,
+                                  TransactionTemplate transactionTemplate,
+                                  RelojAplicacion reloj,
+                                  @Value("${hereapp.finalizacion.retraso-minutos:10}") long retrasoMinutos,
+                                  @Value("${hereapp.finalizacion.reclamo-maximo-minutos:5}") long reclamoMaximoMinutos,
+                                  @Value("${hereapp.finalizacion.tamano-lote:20}") int tamanoLote,
+                                  @Value("${hereapp.finalizacion.paralelismo:4}") int paralelismo,
+                                  @Value("${hereapp.finalizacion.max-intentos:5}") int maxIntentos,
+                                  @Value("${spring.threads.virtual.enabled:false}") boolean hilosVirtuales) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.asistenciaAlumnoBBDD = asistenciaAlumnoBBDD;
+        this.sesionBBDD = sesionBBDD;
+        this.resumenAsistenciaBBDD = resumenAsistenciaBBDD;
+        this.transactionTemplate = transactionTemplate;
+        this.reloj = reloj;
+        this.retrasoFinalizacion = Duration.ofMinutes(retrasoMinutos);
+        this.tiempoMaximoReclamo = Duration.ofMinutes(reclamoMaximoMinutos);
+        this.tamanoLote = tamanoLote;
+        this.maxIntentos = maxIntentos;
+        // El paralelismo sigue acotado; con hilos virtuales cada trabajo bloqueado en JDBC no ocupa un hilo de plataforma
+        this.ejecutor = hilosVirtuales
+                ? Executors.newFixedThreadPool(paralelismo, Thread.ofVirtual().name("finalizacion-", 0).factory())
+                : Executors.newFixedThreadPool(paralelismo);
+    }
+
+    @PreDestroy
+    public void detener() {
+        ejecutor.shutdown();
+    }
+
+    /**
+     * Encola la finalización de una sesión. Si ya estaba encolada no se duplica.
+     */
+    public void programarFinalizacion(Integer sesionId, Integer asignaturaId,
+                                      Integer grupoId, LocalDate fechaCreacion) {
+        jdbcTemplate.update("""
+            INSERT INTO finalizacion_sesion
+            (sesion_id, asignatura_id, grupo_id, fecha_creacion, ejecutar_en, estado)
+            VALUES (?, ?, ?, ?, ?, 'PENDIENTE')
+            ON DUPLICATE KEY UPDATE sesion_id = sesion_id
+            """, sesionId, asignaturaId, grupoId, fechaCreacion, reloj.ahora().plus(retrasoFinalizacion));
+    }
+
+    /**
+     * Sondeo de la cola: se ejecuta al arrancar (recuperando lo atrasado) y después
+     * de forma periódica. Los lotes se reclaman con un UPDATE atómico, por lo que
+     * varias instancias pueden compartir la misma cola sin ejecutar dos veces un trabajo.
+     */
+    @Scheduled(fixedDelayString = "${hereapp.finalizacion.intervalo-ms:15000}")
+    public void procesarPendientes() {
+        try {
+            liberarReclamosCaducados();
+
+            List<TrabajoFinalizacion> lote;
+            do {
+                lote = reclamarLote();
+                ejecutarLote(lote);
+            } while (lote.size() == tamanoLote);
+
+            actualizarMetricas();
+        } catch (Exception e) {
+            log.error("Error procesando la cola de finalizaciones", e);
+        }
+    }
+
+    /**
+     * Ejecuta la cadena de finalización de una sesión en una única transacción.
+     * Todos los pasos son idempotentes, así que un reintento no duplica registros
+     * ni vuelve a sumar la sesión al resumen de asistencia.
+     */
+    public void finalizarAsistenciasSesion(Integer sesionId, Integer asignaturaId,
+                                           Integer grupoId, LocalDate fechaCreacion) {
+        transactionTemplate.executeWithoutResult(status -> {
+            // Actualizar registros con sesión
+            asistenciaAlumnoBBDD.actualizarRegistrosConSesion(sesionId, asignaturaId, grupoId, fechaCreacion);
+
+            // Clasificar asistencias completadas
+            LocalTime horaSalidaProfesor = sesionBBDD.obtenerHoraSalidaProfesor(sesionId);
+            asistenciaAlumnoBBDD.clasificarAsistenciasCompletadas(sesionId, asignaturaId, grupoId,
+                    fechaCreacion, horaSalidaProfesor);
+
+            // Marcar solo entrada como asistencia media
+            asistenciaAlumnoBBDD.marcarSoloEntradaComoMedia(sesionId, asignaturaId, grupoId, fechaCreacion);
+
+            // Insertar registros de no asistencia
+            asistenciaAlumnoBBDD.insertarNoAsistencias(sesionId, asignaturaId, grupoId, fechaCreacion);
+
+            // Sumar la sesión ya clasificada al resumen de cada alumno
+            resumenAsistenciaBBDD.sumarSesion(sesionId, asignaturaId, grupoId);
+        });
+    }
+
+    // Métricas de la cola
+    public long getProfundidadCola() {
+        return profundidadCola;
+    }
+
+    public long getRetrasoSegundos() {
+        return retrasoSegundos;
+    }
+
+    private void liberarReclamosCaducados() {
+        // Trabajos reclamados por una instancia que se cayó a mitad de ejecución
+        jdbcTemplate.update("""
+            UPDATE finalizacion_sesion
+            SET estado = 'PENDIENTE', reclamado_por = NULL
+            WHERE estado = 'EN_CURSO'
+              AND reclamado_en < ?
+            """, reloj.ahora().minus(tiempoMaximoReclamo));
+    }
+
+    private List<TrabajoFinalizacion> reclamarLote() {
+        // Identificador único del reclamo: distingue este lote del de otras instancias
+        String reclamo = UUID.randomUUID().toString();
+        LocalDateTime ahora = reloj.ahora();
+
+        int reclamados = jdbcTemplate.update("""
+            UPDATE finalizacion_sesion
+            SET estado = 'EN_CURSO', reclamado_por = ?, reclamado_en = ?, intentos = intentos + 1
+            WHERE estado = 'PENDIENTE'
+              AND ejecutar_en <= ?
+            ORDER BY ejecutar_en
+            LIMIT ?
+            """, reclamo, ahora, ahora, tamanoLote);
+
+        if (reclamados == 0) {
+            return List.of();
+        }
+
+        return jdbcTemplate.query("""
+            SELECT sesion_id, asignatura_id, grupo_id, fecha_creacion, intentos
+            FROM finalizacion_sesion
+            WHERE reclamado_por = ?
+              AND estado = 'EN_CURSO'
+            """, (rs, rowNum) -> new TrabajoFinalizacion(
+                rs.getInt("sesion_id"),
+                rs.getInt("asignatura_id"),
+                rs.getInt("grupo_id"),
+                rs.getObject("fecha_creacion", LocalDate.class),
+                rs.getInt("intentos"),
+                reclamo), reclamo);
+    }
+
+    private void ejecutarLote(List<TrabajoFinalizacion> lote) throws InterruptedException {
+        if (lote.isEmpty()) {
+            return;
+        }
+        List<Callable<Void>> tareas = new ArrayList<>(lote.size());
+        for (TrabajoFinalizacion trabajo : lote) {
+            tareas.add(() -> {
+                ejecutarTrabajo(trabajo);
+                return null;
+            });
+        }
+        // Espera a que termine el lote completo antes de reclamar el siguiente
+        ejecutor.invokeAll(tareas);
+    }
+
+    private void ejecutarTrabajo(TrabajoFinalizacion trabajo) {
+        try {
+            finalizarAsistenciasSesion(trabajo.sesionId(), trabajo.asignaturaId(),
+                    trabajo.grupoId(), trabajo.fechaCreacion());
+
+            // Solo si el trabajo sigue reclamado por este lote: si el reclamo caducó y lo tomó
+            // otra instancia, es ella quien lo da por terminado
+            int completados = jdbcTemplate.update("""
+                UPDATE finalizacion_sesion
+                SET estado = 'COMPLETADA', completado_en = ?, ultimo_error = NULL
+                WHERE sesion_id = ?
+                  AND reclamado_por = ?
+                """, reloj.ahora(), trabajo.sesionId(), trabajo.reclamo());
+            if (completados == 0) {
+                log.warn("Finalización de la sesión {} terminada con el reclamo ya caducado; no se marca completada",
+                        trabajo.sesionId());
+            }
+        } catch (Exception e) {
+            log.warn("Error finalizando asistencias de sesión {} (intento {}): {}",
+                    trabajo.sesionId(), trabajo.intentos(), e.getMessage());
+
+            // Reintento con espera exponencial hasta agotar los intentos
+            boolean agotado = trabajo.intentos() >= maxIntentos;
+            long esperaMinutos = 1L << Math.min(trabajo.intentos(), 6);
+            String error = String.valueOf(e.getMessage());
+
+            jdbcTemplate.update("""
+                UPDATE finalizacion_sesion
+                SET estado = ?, ejecutar_en = ?, reclamado_por = NULL, ultimo_error = ?
+                WHERE sesion_id = ?
+                  AND reclamado_por = ?
+                """, agotado ? FALLIDA : PENDIENTE,
+                    reloj.ahora().plusMinutes(esperaMinutos),
+                    error.length() > 500 ? error.substring(0, 500) : error,
+                    trabajo.sesionId(), trabajo.reclamo());
+        }
+    }
+
+    private void actualizarMetricas() {
+        jdbcTemplate.query("""
+            SELECT COUNT(*) AS pendientes, MIN(ejecutar_en) AS mas_antiguo
+            FROM finalizacion_sesion
+            WHERE estado IN ('PENDIENTE', 'EN_CURSO')
+            """, rs -> {
+            profundidadCola = rs.getLong("pendientes");
+            LocalDateTime masAntiguo = rs.getObject("mas_antiguo", LocalDateTime.class);
+            retrasoSegundos = masAntiguo == null
+                    ? 0
+                    : Math.max(0, Duration.between(masAntiguo, reloj.ahora()).getSeconds());
+        });
+    }
+
+    // Trabajo de finalización reclamado por esta instancia, con el identificador del reclamo
+    private record TrabajoFinalizacion(int sesionId, int asignaturaId, int grupoId,
+                                       LocalDate fechaCreacion, int intentos, String reclamo) {
+    }
+}
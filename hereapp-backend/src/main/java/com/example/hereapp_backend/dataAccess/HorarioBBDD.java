@@ -1,10 +1,21 @@
 package com.example.hereapp_backend.dataAccess;
 
+import com.example.hereapp_backend.config.RelojAplicacion;
+import com.example.hereapp_backend.models.ClaseHorario;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import java.text.Normalizer;
 import java.time.LocalDate;
 import java.time.DayOfWeek;
+import java.time.LocalTime;
 import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -12,41 +23,194 @@ import java.util.Map;
 @Service
 public class HorarioBBDD {
 
+    private static final Logger log = LoggerFactory.getLogger(HorarioBBDD.class);
+
+    // Margen de ±20 minutos alrededor de la hora de inicio
+    static final int MARGEN_MINUTOS = 20;
+    private static final int MARGEN_SEGUNDOS = MARGEN_MINUTOS * 60;
+
     private final JdbcTemplate jdbcTemplate;
+    private final RelojAplicacion reloj;
 
-    public HorarioBBDD(JdbcTemplate jdbcTemplate) {
+    // Índice (profesor_id, dia_semana) -> clases del día, reemplazado completo en cada recarga
+    private volatile Map<ClaveHorario, FranjasDia> indice = Map.of();
+    private volatile boolean indiceCargado = false;
+    private volatile long checksumHorario;
+
+    public HorarioBBDD(JdbcTemplate jdbcTemplate, RelojAplicacion reloj) {
         this.jdbcTemplate = jdbcTemplate;
+        this.reloj = reloj;
     }
 
     /**
      * Busca el horario actual del profesor en el día especificado
-     * con un margen de ±20 minutos desde la hora actual
+     * con un margen de ±20 minutos desde la hora indicada.
+     * Usa el índice en memoria (búsqueda binaria sobre las horas de inicio);
+     * solo consulta la tabla si el índice todavía no se ha podido cargar.
+     */
+    public ClaseHorario buscarHorarioActual(Integer profesorId, String diaSemana, LocalTime hora) {
+        if (!indiceCargado) {
+            return buscarHorarioActualEnTabla(profesorId, diaSemana, hora);
+        }
+
+        FranjasDia franjas = indice.get(new ClaveHorario(profesorId, normalizarDia(diaSemana)));
+        int ahora = hora.toSecondOfDay();
+        int i = franjas != null ? franjas.primeraDesde(ahora - MARGEN_SEGUNDOS) : -1;
+
+        if (i < 0 || franjas.inicio[i] > ahora + MARGEN_SEGUNDOS) {
+            log.debug("No se encontraron horarios para profesor {} en día {}", profesorId, diaSemana);
+            return null;
+        }
+
+        return franjas.clase(i, profesorId);
+    }
+
+    /**
+     * Clases de todos los profesores en el día indicado, según el índice en memoria.
+     * Devuelve una lista vacía si el índice todavía no se ha cargado.
      */
-    public Map<String, Object> buscarHorarioActual(Integer profesorId, String diaSemana) {
+    public List<ClaseHorario> obtenerClasesDelDia(String diaSemana) {
+        String dia = normalizarDia(diaSemana);
+        List<ClaseHorario> clases = new ArrayList<>();
+        indice.forEach((clave, franjas) -> {
+            if (!clave.diaSemana().equals(dia)) {
+                return;
+            }
+            for (int i = 0; i < franjas.inicio.length; i++) {
+                clases.add(franjas.clase(i, clave.profesorId()));
+            }
+        });
+        return clases;
+    }
+
+    private ClaseHorario buscarHorarioActualEnTabla(Integer profesorId, String diaSemana, LocalTime hora) {
         String sql = """
-            SELECT horario_id, asignatura_id, grupo_id, hora_inicio, hora_fin
+            SELECT horario_id, profesor_id, asignatura_id, grupo_id, hora_inicio, hora_fin
             FROM horario
             WHERE profesor_id = ?
               AND dia_semana = ?
-              AND TIME(CONVERT_TZ(NOW(), 'UTC', 'Europe/Madrid')) 
-                  BETWEEN SUBTIME(hora_inicio, '00:20:00') 
+              AND ? BETWEEN SUBTIME(hora_inicio, '00:20:00') 
                   AND ADDTIME(hora_inicio, '00:20:00')
             LIMIT 1
             """;
 
-        List<Map<String, Object>> horarios = jdbcTemplate.queryForList(sql, profesorId, diaSemana);
+        List<ClaseHorario> horarios = jdbcTemplate.query(sql, ClaseHorario.MAPPER, profesorId, diaSemana, hora);
+        return horarios.isEmpty() ? null : horarios.get(0);
+    }
 
-        if (horarios.isEmpty()) {
-            System.out.println("No se encontraron horarios para profesor " + profesorId +
-                    " en día " + diaSemana);
+    // ===== ÍNDICE EN MEMORIA DEL HORARIO =====
 
-            // Debug: mostrar todos los horarios del profesor
-            mostrarHorariosProfesor(profesorId);
+    @PostConstruct
+    public void precargarIndice() {
+        try {
+            comprobarCambiosHorario();
+        } catch (Exception e) {
+            log.warn("No se pudo precargar el índice de horarios: {}", e.getMessage());
+        }
+    }
 
-            return null;
+    /**
+     * Recarga el índice solo si la tabla horario ha cambiado desde la última carga
+     */
+    @Scheduled(initialDelayString = "${hereapp.horario.comprobacion-ms:60000}",
+            fixedDelayString = "${hereapp.horario.comprobacion-ms:60000}")
+    public void comprobarCambiosHorario() {
+        Long checksum = jdbcTemplate.query("CHECKSUM TABLE horario",
+                rs -> rs.next() ? rs.getLong("Checksum") : null);
+        if (!indiceCargado || checksum == null || checksum != checksumHorario) {
+            recargarIndice();
+            checksumHorario = checksum != null ? checksum : 0L;
+        }
+    }
+
+    /**
+     * Carga todo el horario y construye, por (profesor, día), arrays ordenados por hora de inicio
+     */
+    public void recargarIndice() {
+        String sql = """
+            SELECT horario_id, profesor_id, dia_semana, asignatura_id, grupo_id, hora_inicio, hora_fin
+            FROM horario
+            ORDER BY profesor_id, dia_semana, hora_inicio
+            """;
+
+        Map<ClaveHorario, List<int[]>> agrupados = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            ClaveHorario clave = new ClaveHorario(rs.getInt("profesor_id"), normalizarDia(rs.getString("dia_semana")));
+            agrupados.computeIfAbsent(clave, k -> new ArrayList<>()).add(new int[]{
+                    rs.getObject("hora_inicio", LocalTime.class).toSecondOfDay(),
+                    rs.getObject("hora_fin", LocalTime.class).toSecondOfDay(),
+                    rs.getInt("horario_id"),
+                    rs.getInt("asignatura_id"),
+                    rs.getInt("grupo_id")});
+        });
+
+        Map<ClaveHorario, FranjasDia> nuevoIndice = new HashMap<>(agrupados.size() * 2);
+        agrupados.forEach((clave, filas) -> nuevoIndice.put(clave, FranjasDia.de(filas)));
+
+        indice = nuevoIndice;
+        indiceCargado = true;
+    }
+
+    // Compara días sin distinguir mayúsculas ni tildes, como la intercalación de MySQL
+    private static String normalizarDia(String dia) {
+        String sinTildes = Normalizer.normalize(dia.trim(), Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return sinTildes.toLowerCase(Locale.ROOT);
+    }
+
+    private record ClaveHorario(int profesorId, String diaSemana) {
+    }
+
+    /**
+     * Clases de un profesor en un día, en arrays paralelos ordenados por hora de inicio (segundos del día)
+     */
+    private static final class FranjasDia {
+        private final int[] inicio;
+        private final int[] fin;
+        private final int[] horarioId;
+        private final int[] asignaturaId;
+        private final int[] grupoId;
+
+        private FranjasDia(int n) {
+            inicio = new int[n];
+            fin = new int[n];
+            horarioId = new int[n];
+            asignaturaId = new int[n];
+            grupoId = new int[n];
+        }
+
+        private static FranjasDia de(List<int[]> filas) {
+            filas.sort(Comparator.comparingInt(fila -> fila[0]));
+            FranjasDia franjas = new FranjasDia(filas.size());
+            for (int i = 0; i < filas.size(); i++) {
+                int[] fila = filas.get(i);
+                franjas.inicio[i] = fila[0];
+                franjas.fin[i] = fila[1];
+                franjas.horarioId[i] = fila[2];
+                franjas.asignaturaId[i] = fila[3];
+                franjas.grupoId[i] = fila[4];
+            }
+            return franjas;
+        }
+
+        private ClaseHorario clase(int i, int profesorId) {
+            return new ClaseHorario(horarioId[i], profesorId, asignaturaId[i], grupoId[i],
+                    LocalTime.ofSecondOfDay(inicio[i]), LocalTime.ofSecondOfDay(fin[i]));
         }
 
-        return horarios.get(0);
+        // Índice de la primera clase que empieza a partir de 'desde', o -1 si no hay ninguna
+        private int primeraDesde(int desde) {
+            int bajo = 0;
+            int alto = inicio.length;
+            while (bajo < alto) {
+                int medio = (bajo + alto) >>> 1;
+                if (inicio[medio] < desde) {
+                    bajo = medio + 1;
+                } else {
+                    alto = medio;
+                }
+            }
+            return bajo < inicio.length ? bajo : -1;
+        }
     }
 
     /**
@@ -103,7 +267,7 @@ public class HorarioBBDD {
                     horaInicio, horaFin);
             return count != null && count > 0;
         } catch (Exception e) {
-            System.err.println("Error verificando horario: " + e.getMessage());
+            log.warn("Error verificando horario del profesor {}", profesorId, e);
             return false;
         }
     }
@@ -112,16 +276,14 @@ public class HorarioBBDD {
      * Obtiene el día de la semana actual en español
      */
     public String obtenerDiaSemanaActual() {
-        DayOfWeek dayOfWeek = LocalDate.now().getDayOfWeek();
-        return dayOfWeek.getDisplayName(TextStyle.FULL, new Locale("es", "ES"));
+        return obtenerDiaSemana(reloj.hoy());
     }
 
     /**
-     * Método privado para debug: muestra todos los horarios de un profesor
+     * Obtiene el día de la semana de una fecha en español
      */
-    private void mostrarHorariosProfesor(Integer profesorId) {
-        String debugSql = "SELECT * FROM horario WHERE profesor_id = ?";
-        List<Map<String, Object>> todosHorarios = jdbcTemplate.queryForList(debugSql, profesorId);
-        System.out.println("Horarios del profesor " + profesorId + ": " + todosHorarios);
+    public String obtenerDiaSemana(LocalDate fecha) {
+        DayOfWeek dayOfWeek = fecha.getDayOfWeek();
+        return dayOfWeek.getDisplayName(TextStyle.FULL, new Locale("es", "ES"));
     }
 }
\ No newline at end of file
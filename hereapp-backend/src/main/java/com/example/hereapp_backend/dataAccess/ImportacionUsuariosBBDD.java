@@ -0,0 +1,384 @@
+package com.example.hereapp_backend.dataAccess;
+
+import com.example.hereapp_backend.config.LimitadorConexiones.ServicioSaturadoException;
+import com.example.hereapp_backend.models.ResultadoImportacionUsuarios;
+import com.example.hereapp_backend.models.Rol;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Importación masiva de usuarios desde un CSV, por ejemplo al dar de alta una promoción.
+ *
+ * El fichero se lee por bloques sin cargarlo entero. En cada bloque se descartan los emails
+ * que ya existen, se calculan los hashes BCrypt de las contraseñas provisionales en paralelo
+ * y se insertan usuario y usuario_roles en lotes JDBC dentro de una transacción. Un bloque se
+ * guarda entero o no se guarda, así que si la importación se corta basta con volver a enviar
+ * el mismo fichero: los usuarios ya creados se cuentan como existentes y no se vuelven a
+ * calcular sus hashes.
+ */
+@Service
+public class ImportacionUsuariosBBDD {
+
+    private static final Logger log = LoggerFactory.getLogger(ImportacionUsuariosBBDD.class);
+
+    private static final int MAX_PARAMETROS_IN = 1000;
+    private static final int MAX_ERRORES_DETALLE = 100;
+    // Longitudes de las columnas de usuario
+    private static final int MAX_LONGITUD_EMAIL = 150;
+    private static final int MAX_LONGITUD_NOMBRE = 100;
+    // BCrypt solo tiene en cuenta los primeros 72 bytes
+    private static final int MAX_BYTES_CONTRASENA = 72;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final UsuarioBBDD usuarioBBDD;
+    private final PasswordEncoder passwordEncoder;
+    private final ForkJoinPool hilos;
+    private final int tamanoBloque;
+
+    private final AtomicReference<Progreso> enCurso = new AtomicReference<>();
+    private volatile ResultadoImportacionUsuarios ultima;
+    private final LongAdder usuariosCreados = new LongAdder();
+
+    public ImportacionUsuariosBBDD(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                   UsuarioBBDD usuarioBBDD, PasswordEncoder passwordEncoder,
+                                   @Value("${hereapp.importacion.hilos:0}") int hilos,
+                                   @Value("${hereapp.importacion.tamano-bloque:500}") int tamanoBloque) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.usuarioBBDD = usuarioBBDD;
+        this.passwordEncoder = passwordEncoder;
+        // Por defecto todos los núcleos; los inicios de sesión tienen sus propios hilos (EjecutorContrasenas)
+        int paralelismo = hilos > 0 ? hilos : Runtime.getRuntime().availableProcessors();
+        this.hilos = new ForkJoinPool(paralelismo, pool -> {
+            ForkJoinWorkerThread hilo = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            hilo.setName("importacion-" + hilo.getPoolIndex());
+            return hilo;
+        }, null, false);
+        // Un bloque cabe en una sola consulta IN
+        this.tamanoBloque = Math.max(1, Math.min(tamanoBloque, MAX_PARAMETROS_IN));
+    }
+
+    /**
+     * Importa el CSV (con cabecera) y devuelve el resultado. Solo hay una importación a la vez:
+     * si ya hay otra en curso se lanza ServicioSaturadoException.
+     */
+    public ResultadoImportacionUsuarios importar(InputStream csv, String emailUsuario) {
+        if (!usuarioBBDD.esUsuarioAdmin(emailUsuario)) {
+            throw new RuntimeException("No tiene permisos para importar usuarios. Solo los administradores pueden realizar esta acción.");
+        }
+        Progreso progreso = new Progreso();
+        if (!enCurso.compareAndSet(null, progreso)) {
+            throw new ServicioSaturadoException("Ya hay una importación de usuarios en curso");
+        }
+
+        try {
+            BufferedReader lector = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8), 64 * 1024);
+            String cabecera = lector.readLine();
+            if (cabecera == null || cabecera.isBlank()) {
+                throw new IllegalArgumentException("El CSV está vacío");
+            }
+            if (cabecera.startsWith("\uFEFF")) {
+                cabecera = cabecera.substring(1);
+            }
+            char separador = cabecera.indexOf(';') >= 0 ? ';' : ',';
+            Columnas columnas = Columnas.desdeCabecera(dividir(cabecera, separador));
+
+            List<FilaUsuario> bloque = new ArrayList<>(tamanoBloque);
+            int numeroLinea = 1;
+            String linea;
+            while ((linea = lector.readLine()) != null) {
+                numeroLinea++;
+                if (linea.isBlank()) {
+                    continue;
+                }
+                progreso.lineas.incrementAndGet();
+                FilaUsuario fila = leerFila(numeroLinea, dividir(linea, separador), columnas, progreso);
+                if (fila != null) {
+                    bloque.add(fila);
+                }
+                if (bloque.size() == tamanoBloque) {
+                    procesarBloque(bloque, progreso);
+                    bloque = new ArrayList<>(tamanoBloque);
+                }
+            }
+            procesarBloque(bloque, progreso);
+
+            ResultadoImportacionUsuarios resultado = progreso.terminar(null);
+            log.info("Importación de usuarios por {}: {} creados, {} ya existían y {} rechazados de {} líneas en {} s ({} usuarios/s)",
+                    emailUsuario, resultado.creados(), resultado.existentes(), resultado.rechazadas(),
+                    resultado.lineas(), resultado.segundos(), resultado.usuariosPorSegundo());
+            return resultado;
+        } catch (IOException e) {
+            progreso.terminar("Lectura del CSV interrumpida: " + e.getMessage());
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            // Los bloques ya guardados se quedan; al reenviar el fichero se continúa desde ahí
+            progreso.terminar(e.getMessage());
+            log.warn("Importación de usuarios interrumpida tras {} usuarios creados: {}", progreso.creados.get(), e.getMessage());
+            throw e;
+        } finally {
+            ultima = progreso.resultado();
+            enCurso.set(null);
+        }
+    }
+
+    /**
+     * Progreso de la importación en curso o, si no hay ninguna, resultado de la última
+     * (null si no ha habido ninguna desde el arranque)
+     */
+    public ResultadoImportacionUsuarios obtenerEstado() {
+        Progreso progreso = enCurso.get();
+        return progreso != null ? progreso.resultado() : ultima;
+    }
+
+    // Usuarios creados desde el arranque (útil para métricas)
+    public long getUsuariosCreados() {
+        return usuariosCreados.sum();
+    }
+
+    private void procesarBloque(List<FilaUsuario> bloque, Progreso progreso) {
+        if (bloque.isEmpty()) {
+            return;
+        }
+
+        // Descartar los que ya existen antes de gastar BCrypt en ellos: así se reanuda una importación cortada.
+        // Un email repetido dentro del bloque cuenta también como existente
+        List<String> emails = new ArrayList<>(bloque.size());
+        for (FilaUsuario fila : bloque) {
+            emails.add(fila.email());
+        }
+        Set<String> existentes = new HashSet<>(obtenerUsuarioIds(emails).keySet());
+        List<FilaUsuario> nuevas = new ArrayList<>(bloque.size());
+        for (FilaUsuario fila : bloque) {
+            if (existentes.add(fila.email())) {
+                nuevas.add(fila);
+            } else {
+                progreso.existentes.incrementAndGet();
+            }
+        }
+        if (nuevas.isEmpty()) {
+            return;
+        }
+
+        // Hashes en paralelo: las filas se reparten entre los hilos del pool por robo de trabajo
+        List<String> hashes = hilos.submit(() -> nuevas.parallelStream()
+                .map(fila -> passwordEncoder.encode(fila.contrasena()))
+                .toList()).join();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Object[]> usuarios = new ArrayList<>(nuevas.size());
+            for (int i = 0; i < nuevas.size(); i++) {
+                FilaUsuario fila = nuevas.get(i);
+                usuarios.add(new Object[]{fila.nombre(), fila.apellido1(), fila.apellido2(), fila.email(), hashes.get(i)});
+            }
+            jdbcTemplate.batchUpdate("""
+                    INSERT INTO usuario (nombre, apellido1, apellido2, email, contrasena_provisional)
+                    VALUES (?, ?, ?, ?, ?)
+                    """, usuarios);
+
+            Map<String, Integer> usuarioIds = obtenerUsuarioIds(
+                    nuevas.stream().map(FilaUsuario::email).toList());
+            List<Object[]> roles = new ArrayList<>();
+            for (FilaUsuario fila : nuevas) {
+                Integer usuarioId = usuarioIds.get(fila.email());
+                for (Rol rol : fila.roles()) {
+                    roles.add(new Object[]{usuarioId, rol.name()});
+                }
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO usuario_roles (usuario_id, rol_nombre) VALUES (?, ?)", roles);
+        });
+
+        // Un email que se borró y se vuelve a dar de alta puede seguir en caché con el id y los roles de antes
+        for (FilaUsuario fila : nuevas) {
+            usuarioBBDD.invalidarUsuario(fila.email());
+        }
+        progreso.creados.addAndGet(nuevas.size());
+        usuariosCreados.add(nuevas.size());
+        ResultadoImportacionUsuarios parcial = progreso.resultado();
+        log.info("Importación de usuarios: {} líneas leídas, {} creados, {} ya existían, {} rechazados ({} usuarios/s)",
+                parcial.lineas(), parcial.creados(), parcial.existentes(), parcial.rechazadas(),
+                parcial.usuariosPorSegundo());
+    }
+
+    // email -> usuario_id de los emails (ya normalizados) que existen
+    private Map<String, Integer> obtenerUsuarioIds(List<String> emails) {
+        Map<String, Integer> usuarioIds = new HashMap<>();
+        for (int desde = 0; desde < emails.size(); desde += MAX_PARAMETROS_IN) {
+            List<String> trozo = emails.subList(desde, Math.min(desde + MAX_PARAMETROS_IN, emails.size()));
+            String marcadores = String.join(", ", Collections.nCopies(trozo.size(), "?"));
+            jdbcTemplate.query("SELECT usuario_id, email FROM usuario WHERE email IN (" + marcadores + ")", rs -> {
+                usuarioIds.put(rs.getString("email").trim().toLowerCase(Locale.ROOT), rs.getInt("usuario_id"));
+            }, trozo.toArray());
+        }
+        return usuarioIds;
+    }
+
+    // Valida una línea; si no es válida la cuenta como rechazada y devuelve null
+    private static FilaUsuario leerFila(int numeroLinea, List<String> campos, Columnas columnas, Progreso progreso) {
+        String email = columnas.valor(campos, columnas.email).toLowerCase(Locale.ROOT);
+        String nombre = columnas.valor(campos, columnas.nombre);
+        String apellido1 = columnas.valor(campos, columnas.apellido1);
+        String apellido2 = columnas.valor(campos, columnas.apellido2);
+        String contrasena = columnas.valor(campos, columnas.contrasena);
+
+        if (email.isEmpty() || email.length() > MAX_LONGITUD_EMAIL || email.indexOf('@') <= 0 || email.contains(" ")) {
+            progreso.rechazar(numeroLinea, "email no válido '" + email + "'");
+            return null;
+        }
+        if (nombre.isEmpty()) {
+            progreso.rechazar(numeroLinea, "falta el nombre");
+            return null;
+        }
+        if (nombre.length() > MAX_LONGITUD_NOMBRE || apellido1.length() > MAX_LONGITUD_NOMBRE
+                || apellido2.length() > MAX_LONGITUD_NOMBRE) {
+            progreso.rechazar(numeroLinea, "nombre o apellidos de más de " + MAX_LONGITUD_NOMBRE + " caracteres");
+            return null;
+        }
+        if (contrasena.isEmpty() || contrasena.getBytes(StandardCharsets.UTF_8).length > MAX_BYTES_CONTRASENA) {
+            progreso.rechazar(numeroLinea, "la contraseña provisional debe tener entre 1 y " + MAX_BYTES_CONTRASENA + " bytes");
+            return null;
+        }
+
+        // Sin roles, alumno; varios separados por | o espacios
+        Set<Rol> roles = EnumSet.noneOf(Rol.class);
+        for (String rol : columnas.valor(campos, columnas.roles).split("[|\\s]+")) {
+            if (rol.isEmpty()) {
+                continue;
+            }
+            try {
+                roles.add(Rol.valueOf(rol.toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                progreso.rechazar(numeroLinea, "rol desconocido '" + rol + "'");
+                return null;
+            }
+        }
+        if (roles.isEmpty()) {
+            roles.add(Rol.ALUMNO);
+        }
+
+        return new FilaUsuario(email, nombre, apellido1.isEmpty() ? null : apellido1,
+                apellido2.isEmpty() ? null : apellido2, roles, contrasena);
+    }
+
+    // Campos de una línea CSV (RFC 4180, sin saltos de línea dentro de un campo)
+    static List<String> dividir(String linea, char separador) {
+        List<String> campos = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean entreComillas = false;
+        for (int i = 0; i < linea.length(); i++) {
+            char c = linea.charAt(i);
+            if (entreComillas) {
+                if (c != '"') {
+                    campo.append(c);
+                } else if (i + 1 < linea.length() && linea.charAt(i + 1) == '"') {
+                    campo.append('"');
+                    i++;
+                } else {
+                    entreComillas = false;
+                }
+            } else if (c == '"') {
+                entreComillas = true;
+            } else if (c == separador) {
+                campos.add(campo.toString().trim());
+                campo.setLength(0);
+            } else {
+                campo.append(c);
+            }
+        }
+        campos.add(campo.toString().trim());
+        return campos;
+    }
+
+    @PreDestroy
+    public void detener() {
+        hilos.shutdownNow();
+    }
+
+    private record FilaUsuario(String email, String nombre, String apellido1, String apellido2,
+                               Set<Rol> roles, String contrasena) {
+    }
+
+    // Posición de cada columna en la cabecera (-1 si no está)
+    private record Columnas(int email, int nombre, int apellido1, int apellido2, int roles, int contrasena) {
+
+        static Columnas desdeCabecera(List<String> cabecera) {
+            List<String> nombres = cabecera.stream().map(c -> c.toLowerCase(Locale.ROOT)).toList();
+            int contrasena = nombres.indexOf("contrasena");
+            if (contrasena < 0) {
+                contrasena = nombres.indexOf("contraseña");
+            }
+            Columnas columnas = new Columnas(nombres.indexOf("email"), nombres.indexOf("nombre"),
+                    nombres.indexOf("apellido1"), nombres.indexOf("apellido2"), nombres.indexOf("roles"), contrasena);
+            if (columnas.email < 0 || columnas.nombre < 0 || columnas.contrasena < 0) {
+                throw new IllegalArgumentException("La cabecera del CSV debe incluir las columnas email, nombre y contrasena");
+            }
+            return columnas;
+        }
+
+        String valor(List<String> campos, int columna) {
+            return columna >= 0 && columna < campos.size() ? campos.get(columna) : "";
+        }
+    }
+
+    // Contadores de una importación; los lee el endpoint de estado mientras avanza
+    private static final class Progreso {
+        private final long inicio = System.nanoTime();
+        private final AtomicLong lineas = new AtomicLong();
+        private final AtomicLong creados = new AtomicLong();
+        private final AtomicLong existentes = new AtomicLong();
+        private final AtomicLong rechazadas = new AtomicLong();
+        private final ConcurrentLinkedQueue<String> errores = new ConcurrentLinkedQueue<>();
+        private volatile long fin;
+        private volatile String fallo;
+
+        private void rechazar(int numeroLinea, String motivo) {
+            if (rechazadas.incrementAndGet() <= MAX_ERRORES_DETALLE) {
+                errores.add("Línea " + numeroLinea + ": " + motivo);
+            }
+        }
+
+        private ResultadoImportacionUsuarios terminar(String fallo) {
+            this.fallo = fallo;
+            this.fin = System.nanoTime();
+            return resultado();
+        }
+
+        private ResultadoImportacionUsuarios resultado() {
+            long hasta = fin != 0 ? fin : System.nanoTime();
+            double segundos = (hasta - inicio) / 1e9;
+            long creadosHastaAhora = creados.get();
+            double usuariosPorSegundo = segundos > 0 ? creadosHastaAhora / segundos : 0;
+            return new ResultadoImportacionUsuarios(fin == 0, lineas.get(), creadosHastaAhora, existentes.get(),
+                    rechazadas.get(), Math.round(segundos * 10) / 10.0, Math.round(usuariosPorSegundo * 10) / 10.0,
+                    fallo, List.copyOf(errores));
+        }
+    }
+}
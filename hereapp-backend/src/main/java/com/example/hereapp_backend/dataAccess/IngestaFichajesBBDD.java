@@ -0,0 +1,226 @@
+package com.example.hereapp_backend.dataAccess;
+
+import com.example.hereapp_backend.config.LimitadorConexiones.ServicioSaturadoException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cola de ingesta de pases NFC con confirmación agrupada (group commit).
+ *
+ * Los pases se reparten en carriles según el email del usuario, así que los pases
+ * de una misma persona se procesan siempre en el mismo carril y en orden de llegada.
+ * Cada carril toma micro-lotes (hasta tamano-lote pases o ventana-ms milisegundos) y
+ * los procesa dentro de una única transacción. Cada pase va en una transacción anidada
+ * (PROPAGATION_NESTED, un savepoint): si falla, solo se deshacen sus escrituras y el resto
+ * del lote se confirma. Las transacciones internas de SesionBBDD y AsistenciaAlumnoBBDD
+ * también son anidadas, así que un error que resuelven ellas mismas (otra instancia abrió
+ * la sesión a la vez) tampoco marca el lote para deshacer.
+ * Cada llamante recibe el mismo mensaje que devolvería el procesamiento directo.
+ *
+ * Al detenerse deja de aceptar pases y responde con ServicioSaturadoException a los que
+ * seguían en cola, para que ninguna petición se quede esperando un futuro que nadie completa.
+ */
+@Service
+public class IngestaFichajesBBDD {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestaFichajesBBDD.class);
+
+    // Lo que se espera a que cada carril termine el lote en curso al detenerse
+    private static final Duration ESPERA_PARADA = Duration.ofSeconds(5);
+    private static final String MENSAJE_PARADA = "El servicio se está deteniendo, inténtelo de nuevo en unos segundos";
+
+    private final AsistenciaBBDD asistenciaBBDD;
+    private final TransactionTemplate transactionTemplate;
+    // Transacción anidada de cada pase dentro de la del lote
+    private final TransactionTemplate paseTemplate;
+
+    private final boolean habilitada;
+    private final int tamanoLote;
+    private final long ventanaMs;
+    private final boolean hilosVirtuales;
+    private final List<BlockingQueue<Fichaje>> carriles = new ArrayList<>();
+    private final List<Thread> hilos = new ArrayList<>();
+    private volatile boolean detenida = false;
+
+    public IngestaFichajesBBDD(AsistenciaBBDD asistenciaBBDD,
+                               TransactionTemplate transactionTemplate,
+                               @Value("${hereapp.ingesta.habilitada:false}") boolean habilitada,
+                               @Value("${hereapp.ingesta.carriles:4}") int numCarriles,
+                               @Value("${hereapp.ingesta.capacidad:2000}") int capacidad,
+                               @Value("${hereapp.ingesta.tamano-lote:200}") int tamanoLote,
+                               @Value("${hereapp.ingesta.ventana-ms:20}") long ventanaMs,
+                               @Value("${spring.threads.virtual.enabled:false}") boolean hilosVirtuales) {
+        this.asistenciaBBDD = asistenciaBBDD;
+        this.transactionTemplate = transactionTemplate;
+        this.paseTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.paseTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        this.habilitada = habilitada;
+        this.tamanoLote = tamanoLote;
+        this.ventanaMs = ventanaMs;
+        this.hilosVirtuales = hilosVirtuales;
+        for (int i = 0; i < numCarriles; i++) {
+            carriles.add(new ArrayBlockingQueue<>(Math.max(1, capacidad / numCarriles)));
+        }
+    }
+
+    @PostConstruct
+    public void arrancar() {
+        if (!habilitada) {
+            return;
+        }
+        for (int i = 0; i < carriles.size(); i++) {
+            BlockingQueue<Fichaje> carril = carriles.get(i);
+            Runnable bucle = () -> procesarCarril(carril);
+            String nombre = "ingesta-fichajes-" + i;
+            Thread hilo = hilosVirtuales
+                    ? Thread.ofVirtual().name(nombre).start(bucle)
+                    : Thread.ofPlatform().name(nombre).daemon(true).start(bucle);
+            hilos.add(hilo);
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        detenida = true;
+        hilos.forEach(Thread::interrupt);
+        for (Thread hilo : hilos) {
+            try {
+                if (!hilo.join(ESPERA_PARADA)) {
+                    log.warn("El carril {} no terminó su lote en {} s", hilo.getName(), ESPERA_PARADA.toSeconds());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        List<Fichaje> pendientes = new ArrayList<>();
+        carriles.forEach(carril -> carril.drainTo(pendientes));
+        if (!pendientes.isEmpty()) {
+            log.warn("Ingesta detenida con {} fichajes en cola; se rechazan", pendientes.size());
+            rechazarPorParada(pendientes);
+        }
+    }
+
+    public boolean isHabilitada() {
+        return habilitada;
+    }
+
+    /**
+     * Encola un pase. El futuro se completa con el mensaje del procesamiento o con
+     * la misma excepción que lanzaría AsistenciaBBDD.procesarAsistenciaNFC.
+     */
+    public CompletableFuture<String> encolar(String uidMifare, String emailUsuario) {
+        Fichaje fichaje = new Fichaje(uidMifare, emailUsuario, new CompletableFuture<>());
+        int indice = Math.floorMod(emailUsuario.toLowerCase(Locale.ROOT).hashCode(), carriles.size());
+        BlockingQueue<Fichaje> carril = carriles.get(indice);
+
+        if (detenida) {
+            throw new ServicioSaturadoException(MENSAJE_PARADA);
+        }
+        if (!carril.offer(fichaje)) {
+            throw new ServicioSaturadoException("Servicio saturado, inténtelo de nuevo en unos segundos");
+        }
+        // Encolado justo mientras se detenía: si nadie lo ha sacado ya, se retira aquí
+        if (detenida && carril.remove(fichaje)) {
+            throw new ServicioSaturadoException(MENSAJE_PARADA);
+        }
+        return fichaje.resultado();
+    }
+
+    // Pases en cola en todos los carriles (útil para métricas)
+    public int getEnCola() {
+        return carriles.stream().mapToInt(BlockingQueue::size).sum();
+    }
+
+    private void procesarCarril(BlockingQueue<Fichaje> carril) {
+        List<Fichaje> lote = new ArrayList<>(tamanoLote);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                // Espera al primer pase y agrupa los que lleguen dentro de la ventana
+                lote.add(carril.take());
+                long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ventanaMs);
+                while (lote.size() < tamanoLote) {
+                    long restante = limite - System.nanoTime();
+                    Fichaje siguiente = restante > 0 ? carril.poll(restante, TimeUnit.NANOSECONDS) : carril.poll();
+                    if (siguiente == null) {
+                        break;
+                    }
+                    lote.add(siguiente);
+                }
+                procesarLote(lote);
+            } catch (InterruptedException e) {
+                // Parada mientras se agrupaba el lote: lo reunido hasta ahora no se ha procesado
+                Thread.currentThread().interrupt();
+                rechazarPorParada(lote);
+            } catch (Exception e) {
+                log.error("Error en el carril de ingesta de fichajes", e);
+            } finally {
+                lote.clear();
+            }
+        }
+    }
+
+    private void procesarLote(List<Fichaje> lote) {
+        List<Object> resultados = new ArrayList<>(lote.size());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (Fichaje fichaje : lote) {
+                    try {
+                        // Si el pase falla, la transacción anidada vuelve a su savepoint y el lote sigue
+                        resultados.add(paseTemplate.execute(pase ->
+                                asistenciaBBDD.procesarAsistenciaNFC(fichaje.uidMifare(), fichaje.emailUsuario())));
+                    } catch (RuntimeException e) {
+                        resultados.add(e);
+                    }
+                }
+            });
+        } catch (Exception e) {
+            // Si la confirmación del lote falla se procesa cada pase por separado, fuera del lote
+            log.warn("Error confirmando lote de {} fichajes, se reprocesan uno a uno: {}", lote.size(), e.getMessage());
+            lote.forEach(this::procesarIndividual);
+            return;
+        }
+
+        // Solo tras confirmar el lote se responde a cada pase
+        for (int i = 0; i < lote.size(); i++) {
+            Object resultado = resultados.get(i);
+            if (resultado instanceof RuntimeException error) {
+                lote.get(i).resultado().completeExceptionally(error);
+            } else {
+                lote.get(i).resultado().complete((String) resultado);
+            }
+        }
+    }
+
+    private void procesarIndividual(Fichaje fichaje) {
+        try {
+            fichaje.resultado().complete(asistenciaBBDD.procesarAsistenciaNFC(fichaje.uidMifare(), fichaje.emailUsuario()));
+        } catch (RuntimeException e) {
+            fichaje.resultado().completeExceptionally(e);
+        }
+    }
+
+    private static void rechazarPorParada(List<Fichaje> fichajes) {
+        for (Fichaje fichaje : fichajes) {
+            fichaje.resultado().completeExceptionally(new ServicioSaturadoException(MENSAJE_PARADA));
+        }
+    }
+
+    // Pase pendiente de procesar y el futuro por el que espera su petición
+    private record Fichaje(String uidMifare, String emailUsuario, CompletableFuture<String> resultado) {
+    }
+}
@@ -1,62 +1,128 @@
 package com.example.hereapp_backend.dataAccess;
 
-
+import com.example.hereapp_backend.config.EjecutorContrasenas;
 import com.example.hereapp_backend.models.Rol;
-import com.example.hereapp_backend.models.Usuario;
-import com.example.hereapp_backend.repository.UsuarioRepository;
-import jakarta.annotation.PostConstruct;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.StringJoiner;
 
 @Service
 public class LogInBBDD {
 
-    @Autowired
-    private UsuarioRepository usuarioRepository;
-
-    private final PasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    private static final Logger log = LoggerFactory.getLogger(LogInBBDD.class);
 
+    private final JdbcTemplate jdbcTemplate;
+    private final PasswordEncoder passwordEncoder;
+    private final EjecutorContrasenas ejecutorContrasenas;
 
+    public LogInBBDD(JdbcTemplate jdbcTemplate, PasswordEncoder passwordEncoder,
+                     EjecutorContrasenas ejecutorContrasenas) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.passwordEncoder = passwordEncoder;
+        this.ejecutorContrasenas = ejecutorContrasenas;
+    }
 
     public String validarTipoUsuario(String email, String contrasena) {
-        email = email.trim().toLowerCase();
-        Usuario usuario = usuarioRepository.findByEmailIgnoreCase(email);
-        if (usuario == null) {
+        if (email == null || contrasena == null) {
             return null;
         }
-        // Validar la contraseña principal (asumiendo que está encriptada con BCrypt)
-        if (passwordEncoder.matches(contrasena, usuario.getContrasena())) {
-            // Si hay una contraseña provisional, la removemos (ya se usó)
-            if (usuario.getContrasenaProvisional() != null) {
-                usuario.setContrasenaProvisional(null);
-                usuarioRepository.save(usuario);
-            }
-            // Construir una cadena que contenga los roles del usuario
-            StringBuilder rolesBuilder = new StringBuilder();
-            if (usuario.getRoles().contains(Rol.ADMIN)) {
-                rolesBuilder.append("ADMIN,");
-            }
-            if (usuario.getRoles().contains(Rol.PROFESOR)) {
-                rolesBuilder.append("PROFESOR,");
-            }
-            if (usuario.getRoles().contains(Rol.ALUMNO)) {
-                rolesBuilder.append("ALUMNO,");
+        Credenciales credenciales = cargarCredenciales(email.trim().toLowerCase(Locale.ROOT));
+        if (credenciales == null) {
+            return null;
+        }
+        // BCrypt se ejecuta en los hilos dedicados, nunca en los de Tomcat
+        return ejecutorContrasenas.ejecutar(() -> verificar(credenciales, contrasena));
+    }
+
+    /**
+     * Solo las columnas que necesita el inicio de sesión: los hashes y los roles, en una
+     * consulta, sin cargar la entidad Usuario.
+     */
+    private Credenciales cargarCredenciales(String email) {
+        String sql = """
+            SELECT u.usuario_id, u.contrasena, u.contrasena_provisional, ur.rol_nombre
+            FROM usuario u
+            LEFT JOIN usuario_roles ur ON ur.usuario_id = u.usuario_id
+            WHERE u.email = ?
+            """;
+        Credenciales[] credenciales = {null};
+        jdbcTemplate.query(sql, rs -> {
+            if (credenciales[0] == null) {
+                credenciales[0] = new Credenciales(rs.getInt("usuario_id"), rs.getString("contrasena"),
+                        rs.getString("contrasena_provisional"), EnumSet.noneOf(Rol.class));
             }
-            if (rolesBuilder.length() > 0) {
-                // Eliminar la última coma
-                rolesBuilder.setLength(rolesBuilder.length() - 1);
-                return rolesBuilder.toString();
+            String rolNombre = rs.getString("rol_nombre");
+            if (rolNombre != null) {
+                try {
+                    credenciales[0].roles().add(Rol.valueOf(rolNombre.trim().toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    // Rol desconocido: se ignora, igual que en UsuarioBBDD
+                }
             }
-            return "NONE";
+        }, email);
+        return credenciales[0];
+    }
+
+    private String verificar(Credenciales credenciales, String contrasena) {
+        // Validar la contraseña principal (encriptada con BCrypt)
+        if (credenciales.contrasena() != null && passwordEncoder.matches(contrasena, credenciales.contrasena())) {
+            actualizarTrasInicioSesion(credenciales, contrasena);
+            return describirRoles(credenciales.roles());
         }
         // Validar la contraseña provisional, si existe
-        if (usuario.getContrasenaProvisional() != null &&
-                passwordEncoder.matches(contrasena, usuario.getContrasenaProvisional())) {
+        if (credenciales.contrasenaProvisional() != null &&
+                passwordEncoder.matches(contrasena, credenciales.contrasenaProvisional())) {
             return "PROVISIONAL";
         }
         return null;
     }
 
+    /**
+     * Tras un inicio de sesión correcto con la contraseña principal: se borra la provisional
+     * (ya no hace falta) y, si el hash se generó con un coste menor que el configurado, se
+     * rehace con el coste actual. La contraseña en claro solo está disponible en este momento.
+     */
+    private void actualizarTrasInicioSesion(Credenciales credenciales, String contrasena) {
+        boolean rehacerHash = passwordEncoder.upgradeEncoding(credenciales.contrasena());
+        if (!rehacerHash && credenciales.contrasenaProvisional() == null) {
+            return;
+        }
+        String hash = rehacerHash ? passwordEncoder.encode(contrasena) : credenciales.contrasena();
+        try {
+            // Condicionado al hash leído para no pisar un cambio de contraseña simultáneo
+            jdbcTemplate.update("""
+                UPDATE usuario
+                SET contrasena = ?, contrasena_provisional = NULL
+                WHERE usuario_id = ? AND contrasena = ?
+                """, hash, credenciales.usuarioId(), credenciales.contrasena());
+        } catch (Exception e) {
+            // El inicio de sesión ya es válido; se reintentará en el siguiente
+            log.warn("No se pudo actualizar la contraseña del usuario {} tras iniciar sesión: {}",
+                    credenciales.usuarioId(), e.getMessage());
+        }
+    }
+
+    // Roles separados por comas en el orden ADMIN, PROFESOR, ALUMNO, o NONE si no tiene
+    private static String describirRoles(Set<Rol> roles) {
+        StringJoiner descripcion = new StringJoiner(",");
+        if (roles.contains(Rol.ADMIN)) {
+            descripcion.add("ADMIN");
+        }
+        if (roles.contains(Rol.PROFESOR)) {
+            descripcion.add("PROFESOR");
+        }
+        if (roles.contains(Rol.ALUMNO)) {
+            descripcion.add("ALUMNO");
+        }
+        return descripcion.length() > 0 ? descripcion.toString() : "NONE";
+    }
+
+    private record Credenciales(int usuarioId, String contrasena, String contrasenaProvisional, Set<Rol> roles) {
+    }
 }
@@ -1,5 +1,7 @@
 package com.example.hereapp_backend.dataAccess;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import java.util.List;
@@ -8,6 +10,8 @@ import java.util.Map;
 @Service
 public class MatriculaBBDD {
 
+    private static final Logger log = LoggerFactory.getLogger(MatriculaBBDD.class);
+
     private final JdbcTemplate jdbcTemplate;
 
     public MatriculaBBDD(JdbcTemplate jdbcTemplate) {
@@ -38,7 +42,7 @@ public class MatriculaBBDD {
                     usuarioId, asignaturaId, grupoId);
             return count != null && count > 0;
         } catch (Exception e) {
-            System.err.println("Error verificando matrícula: " + e.getMessage());
+            log.warn("Error verificando matrícula de {} en asignatura {} grupo {}", usuarioId, asignaturaId, grupoId, e);
             return false;
         }
     }
@@ -72,7 +76,7 @@ public class MatriculaBBDD {
                     asignaturaId, grupoId);
             return count != null ? count : 0;
         } catch (Exception e) {
-            System.err.println("Error contando alumnos matriculados: " + e.getMessage());
+            log.warn("Error contando alumnos matriculados en asignatura {} grupo {}", asignaturaId, grupoId, e);
             return 0;
         }
     }
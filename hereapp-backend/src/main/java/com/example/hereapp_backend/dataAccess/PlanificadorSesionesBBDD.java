@@ -0,0 +1,132 @@
+package com.example.hereapp_backend.dataAccess;
+
+import com.example.hereapp_backend.config.RelojAplicacion;
+import com.example.hereapp_backend.models.ClaseHorario;
+import com.example.hereapp_backend.models.SesionDelDia;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+/**
+ * Planificador del día: prepara las sesiones unos minutos antes de que empiece cada clase.
+ *
+ * A partir del horario en memoria, crea para cada clase próxima una sesión preabierta
+ * (sin hora de entrada del profesor) y deja preparados los registros de asistencia de
+ * los matriculados, con su tarjeta, en la misma transacción. Así el primer pase del
+ * profesor solo tiene que marcar la sesión como iniciada y completar los registros que
+ * falten, si falta alguno. Las sesiones preabiertas que nadie inicia dentro del margen
+ * de la clase se descartan.
+ */
+@Service
+public class PlanificadorSesionesBBDD {
+
+    private static final Logger log = LoggerFactory.getLogger(PlanificadorSesionesBBDD.class);
+
+    private final HorarioBBDD horarioBBDD;
+    private final SesionBBDD sesionBBDD;
+    private final RelojAplicacion reloj;
+
+    private final boolean habilitado;
+    private final Duration antelacion;
+    private final Duration margenClase = Duration.ofMinutes(HorarioBBDD.MARGEN_MINUTOS);
+
+    public PlanificadorSesionesBBDD(HorarioBBDD horarioBBDD,
+                                    SesionBBDD sesionBBDD,
+                                    RelojAplicacion reloj,
+                                    @Value("${hereapp.planificador.habilitado:false}") boolean habilitado,
+                                    @Value("${hereapp.planificador.antelacion-minutos:5}") long antelacionMinutos) {
+        this.horarioBBDD = horarioBBDD;
+        this.sesionBBDD = sesionBBDD;
+        this.reloj = reloj;
+        this.habilitado = habilitado;
+        this.antelacion = Duration.ofMinutes(antelacionMinutos);
+    }
+
+    @Scheduled(fixedDelayString = "${hereapp.planificador.intervalo-ms:60000}")
+    public void planificar() {
+        if (!habilitado) {
+            return;
+        }
+        try {
+            LocalDateTime momento = reloj.ahora();
+            LocalDate hoy = momento.toLocalDate();
+            LocalTime ahora = momento.toLocalTime();
+            List<ClaseHorario> clases = horarioBBDD.obtenerClasesDelDia(horarioBBDD.obtenerDiaSemana(hoy));
+            List<SesionDelDia> sesiones = sesionBBDD.obtenerSesionesDelDia(hoy);
+
+            descartarCaducadas(clases, sesiones, ahora);
+
+            for (ClaseHorario clase : clases) {
+                Duration hastaInicio = Duration.between(ahora, clase.getHoraInicio());
+                if (hastaInicio.isNegative() || hastaInicio.compareTo(antelacion) > 0) {
+                    continue;
+                }
+                if (!yaPlanificada(clase, sesiones)) {
+                    preparar(clase, hoy);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error planificando sesiones", e);
+        }
+    }
+
+    private void preparar(ClaseHorario clase, LocalDate hoy) {
+        // Sesión y registros en una transacción; vincularMatriculados ya deja su línea con los recuentos
+        Integer sesionId = sesionBBDD.preabrirSesion(clase.getProfesorId(), clase.getAsignaturaId(),
+                clase.getGrupoId(), hoy);
+        log.atInfo()
+                .addKeyValue("sesionId", sesionId)
+                .addKeyValue("profesorId", clase.getProfesorId())
+                .log("Sesión {} preparada para las {}", sesionId, clase.getHoraInicio());
+    }
+
+    /**
+     * Una clase ya está cubierta si hay una sesión de ese profesor, asignatura y grupo
+     * preabierta o iniciada dentro del margen de la clase.
+     */
+    private boolean yaPlanificada(ClaseHorario clase, List<SesionDelDia> sesiones) {
+        LocalTime desde = clase.getHoraInicio().minus(margenClase);
+        for (SesionDelDia sesion : sesiones) {
+            if (!esDeLaClase(sesion, clase)) {
+                continue;
+            }
+            LocalTime entrada = sesion.horaEntradaProfesor();
+            if (entrada == null || !entrada.isBefore(desde)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Descarta las sesiones preabiertas cuya clase ya ha pasado el margen sin que el profesor la inicie
+     */
+    private void descartarCaducadas(List<ClaseHorario> clases, List<SesionDelDia> sesiones, LocalTime ahora) {
+        for (SesionDelDia sesion : sesiones) {
+            if (!sesion.esPreabierta()) {
+                continue;
+            }
+            boolean vigente = clases.stream().anyMatch(clase -> esDeLaClase(sesion, clase)
+                    && !ahora.isAfter(clase.getHoraInicio().plus(margenClase))
+                    && !ahora.isBefore(clase.getHoraInicio().minus(antelacion).minusMinutes(1)));
+            if (!vigente) {
+                int sesionId = sesion.sesionId();
+                sesionBBDD.descartarSesionPreabierta(sesionId);
+                log.info("Sesión preabierta {} descartada: el profesor no la inició", sesionId);
+            }
+        }
+    }
+
+    private boolean esDeLaClase(SesionDelDia sesion, ClaseHorario clase) {
+        return sesion.profesorId() == clase.getProfesorId()
+                && sesion.asignaturaId() == clase.getAsignaturaId()
+                && sesion.grupoId() == clase.getGrupoId();
+    }
+}
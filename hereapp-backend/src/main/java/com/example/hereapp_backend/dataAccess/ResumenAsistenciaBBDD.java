@@ -0,0 +1,160 @@
+package com.example.hereapp_backend.dataAccess;
+
+import com.example.hereapp_backend.config.RelojAplicacion;
+import com.example.hereapp_backend.models.ResumenAsistencia;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.util.List;
+
+/**
+ * Resumen de asistencia por alumno, asignatura y grupo (tabla resumen_asistencia, migración V4).
+ *
+ * FinalizacionSesionBBDD suma cada sesión al resumen en la misma transacción en la que la
+ * clasifica, así que leer un porcentaje es leer una fila. La tabla resumen_asistencia_sesion
+ * guarda las sesiones ya sumadas para que volver a finalizar una no la cuente dos veces.
+ * Los cambios posteriores a la finalización no se reflejan hasta la reconstrucción, que
+ * recalcula todo desde asistencia_alumno cada noche.
+ */
+@Service
+public class ResumenAsistenciaBBDD {
+
+    private static final Logger log = LoggerFactory.getLogger(ResumenAsistenciaBBDD.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final RelojAplicacion reloj;
+    private final boolean reconstruirAlArrancar;
+
+    public ResumenAsistenciaBBDD(JdbcTemplate jdbcTemplate,
+                                 TransactionTemplate transactionTemplate,
+                                 RelojAplicacion reloj,
+                                 @Value("${hereapp.resumen.reconstruir-al-arrancar:true}") boolean reconstruirAlArrancar) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.reloj = reloj;
+        this.reconstruirAlArrancar = reconstruirAlArrancar;
+    }
+
+    /**
+     * Suma los registros de una sesión recién finalizada al resumen de cada alumno.
+     * Debe llamarse dentro de la transacción de la finalización: si esta falla, la marca
+     * de la sesión tampoco se guarda y el reintento vuelve a sumarla.
+     */
+    public void sumarSesion(Integer sesionId, Integer asignaturaId, Integer grupoId) {
+        int nueva = jdbcTemplate.update(
+                "INSERT IGNORE INTO resumen_asistencia_sesion (sesion_id) VALUES (?)", sesionId);
+        if (nueva == 0) {
+            return;
+        }
+        // Un registro por alumno y sesión (uk_asistencia_usuario_sesion), sin necesidad de agrupar.
+        // tipo_asistencia_id: 1 asiste, 3 media, 2 no asiste y cualquier otro (5, entrada sin salida) pendiente
+        jdbcTemplate.update("""
+            INSERT INTO resumen_asistencia
+            (usuario_id, asignatura_id, grupo_id, asiste, media, no_asiste, pendiente)
+            SELECT aa.usuario_id, ?, ?,
+                   CASE WHEN aa.tipo_asistencia_id = 1 THEN 1 ELSE 0 END,
+                   CASE WHEN aa.tipo_asistencia_id = 3 THEN 1 ELSE 0 END,
+                   CASE WHEN aa.tipo_asistencia_id = 2 THEN 1 ELSE 0 END,
+                   CASE WHEN aa.tipo_asistencia_id IN (1, 2, 3) THEN 0 ELSE 1 END
+            FROM asistencia_alumno aa
+            WHERE aa.sesion_id = ?
+            ON DUPLICATE KEY UPDATE
+                asiste = asiste + VALUES(asiste),
+                media = media + VALUES(media),
+                no_asiste = no_asiste + VALUES(no_asiste),
+                pendiente = pendiente + VALUES(pendiente)
+            """, asignaturaId, grupoId, sesionId);
+    }
+
+    /**
+     * Recalcula el resumen desde cero en una transacción. Cuenta las sesiones cerradas con la
+     * finalización completada y las anteriores a hoy que nunca pasaron por la cola; las que
+     * siguen en cola se sumarán al finalizarse.
+     */
+    @Scheduled(cron = "${hereapp.resumen.reconstruccion-cron:0 30 3 * * *}")
+    public void reconstruir() {
+        long inicio = System.nanoTime();
+        int[] filas = {0};
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM resumen_asistencia_sesion");
+            jdbcTemplate.update("""
+                INSERT INTO resumen_asistencia_sesion (sesion_id)
+                SELECT s.sesion_id
+                FROM sesion s
+                LEFT JOIN finalizacion_sesion f ON f.sesion_id = s.sesion_id
+                WHERE s.hora_salida_profesor IS NOT NULL
+                  AND (f.estado = 'COMPLETADA' OR (f.sesion_id IS NULL AND s.fecha_creacion < ?))
+                """, reloj.hoy());
+
+            jdbcTemplate.update("DELETE FROM resumen_asistencia");
+            filas[0] = jdbcTemplate.update("""
+                INSERT INTO resumen_asistencia
+                (usuario_id, asignatura_id, grupo_id, asiste, media, no_asiste, pendiente)
+                SELECT aa.usuario_id, s.asignatura_id, s.grupo_id,
+                       SUM(CASE WHEN aa.tipo_asistencia_id = 1 THEN 1 ELSE 0 END),
+                       SUM(CASE WHEN aa.tipo_asistencia_id = 3 THEN 1 ELSE 0 END),
+                       SUM(CASE WHEN aa.tipo_asistencia_id = 2 THEN 1 ELSE 0 END),
+                       SUM(CASE WHEN aa.tipo_asistencia_id IN (1, 2, 3) THEN 0 ELSE 1 END)
+                FROM resumen_asistencia_sesion r
+                JOIN sesion s ON s.sesion_id = r.sesion_id
+                JOIN asistencia_alumno aa ON aa.sesion_id = r.sesion_id
+                GROUP BY aa.usuario_id, s.asignatura_id, s.grupo_id
+                """);
+        });
+        log.info("Resumen de asistencia reconstruido: {} filas en {} ms",
+                filas[0], (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconstruirSiVacio() {
+        if (!reconstruirAlArrancar) {
+            return;
+        }
+        try {
+            // Primera vez tras la migración: sin sesiones sumadas todavía
+            Integer sumadas = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM (SELECT sesion_id FROM resumen_asistencia_sesion LIMIT 1) s", Integer.class);
+            if (sumadas != null && sumadas == 0) {
+                reconstruir();
+            }
+        } catch (Exception e) {
+            log.warn("No se pudo reconstruir el resumen de asistencia al arrancar: {}", e.getMessage());
+        }
+    }
+
+    public ResumenAsistencia obtenerResumen(Integer usuarioId, Integer asignaturaId, Integer grupoId) {
+        List<ResumenAsistencia> resumen = jdbcTemplate.query("""
+            SELECT usuario_id, asignatura_id, grupo_id, asiste, media, no_asiste, pendiente
+            FROM resumen_asistencia
+            WHERE usuario_id = ? AND asignatura_id = ? AND grupo_id = ?
+            """, ResumenAsistencia.MAPPER, usuarioId, asignaturaId, grupoId);
+        return resumen.isEmpty() ? null : resumen.get(0);
+    }
+
+    // Todas las asignaturas de un alumno (prefijo de la clave primaria)
+    public List<ResumenAsistencia> obtenerResumenAlumno(Integer usuarioId) {
+        return jdbcTemplate.query("""
+            SELECT usuario_id, asignatura_id, grupo_id, asiste, media, no_asiste, pendiente
+            FROM resumen_asistencia
+            WHERE usuario_id = ?
+            ORDER BY asignatura_id, grupo_id
+            """, ResumenAsistencia.MAPPER, usuarioId);
+    }
+
+    // Todos los alumnos de un grupo (idx_resumen_asignatura_grupo)
+    public List<ResumenAsistencia> obtenerResumenGrupo(Integer asignaturaId, Integer grupoId) {
+        return jdbcTemplate.query("""
+            SELECT usuario_id, asignatura_id, grupo_id, asiste, media, no_asiste, pendiente
+            FROM resumen_asistencia
+            WHERE asignatura_id = ? AND grupo_id = ?
+            ORDER BY usuario_id
+            """, ResumenAsistencia.MAPPER, asignaturaId, grupoId);
+    }
+}
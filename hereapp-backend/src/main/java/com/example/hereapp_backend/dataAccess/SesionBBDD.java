@@ -1,99 +1,225 @@
 package com.example.hereapp_backend.dataAccess;
 
+import com.example.hereapp_backend.models.ClaseHorario;
+import com.example.hereapp_backend.models.SesionAbierta;
+import com.example.hereapp_backend.models.SesionDelDia;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.sql.PreparedStatement;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.List;
-import java.util.Map;
 
 @Service
 public class SesionBBDD {
 
+    // Sentencias del camino crítico, compartidas con ComprobacionIndicesBBDD para el EXPLAIN al arrancar
+    // (las públicas también con MapeoFilasBenchmark)
+    public static final String SQL_SESION_ABIERTA_PROFESOR = """
+        SELECT sesion_id, asignatura_id, grupo_id, fecha_creacion, hora_entrada_profesor
+        FROM sesion
+        WHERE profesor_id = ?
+          AND hora_entrada_profesor IS NOT NULL
+          AND hora_salida_profesor IS NULL
+        ORDER BY sesion_id DESC
+        LIMIT 1
+        """;
+    public static final String SQL_HORA_SALIDA_PROFESOR = "SELECT hora_salida_profesor FROM sesion WHERE sesion_id = ?";
+
     private final JdbcTemplate jdbcTemplate;
     private final AsistenciaAlumnoBBDD asistenciaAlumnoBBDD;
     private final HorarioBBDD horarioBBDD;
+    private final TransactionTemplate transactionTemplate;
 
     public SesionBBDD(JdbcTemplate jdbcTemplate, AsistenciaAlumnoBBDD asistenciaAlumnoBBDD,
-                      HorarioBBDD horarioBBDD) {
+                      HorarioBBDD horarioBBDD, TransactionTemplate transactionTemplate) {
         this.jdbcTemplate = jdbcTemplate;
         this.asistenciaAlumnoBBDD = asistenciaAlumnoBBDD;
         this.horarioBBDD = horarioBBDD;
+        // Anidada: dentro del lote de IngestaFichajesBBDD un fallo solo deshace esta parte
+        this.transactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
     }
 
-    public Map<String, Object> obtenerSesionAbiertaProfesor(Integer profesorId) {
-        String sql = """
-            SELECT sesion_id, asignatura_id, grupo_id, fecha_creacion
-            FROM sesion
-            WHERE profesor_id = ?
-              AND hora_salida_profesor IS NULL
-            ORDER BY sesion_id DESC
-            LIMIT 1
-            """;
-
-        List<Map<String, Object>> sesiones = jdbcTemplate.queryForList(sql, profesorId);
+    public SesionAbierta obtenerSesionAbiertaProfesor(Integer profesorId) {
+        List<SesionAbierta> sesiones = jdbcTemplate.query(SQL_SESION_ABIERTA_PROFESOR, SesionAbierta.MAPPER, profesorId);
         return sesiones.isEmpty() ? null : sesiones.get(0);
     }
 
-    public int calcularMinutosSesion(Integer sesionId) {
-        String sql = """
-            SELECT TIMESTAMPDIFF(MINUTE, 
-                CONCAT(fecha_creacion, ' ', hora_entrada_profesor), 
-                CONVERT_TZ(NOW(), 'UTC', 'Europe/Madrid')) AS diffMin 
-            FROM sesion 
-            WHERE sesion_id = ?
-            """;
-        Integer diffMin = jdbcTemplate.queryForObject(sql, Integer.class, sesionId);
-        return diffMin != null ? diffMin : 0;
-    }
-
-    public void cerrarSesion(Integer sesionId) {
+    public void cerrarSesion(Integer sesionId, LocalTime hora) {
         jdbcTemplate.update("""
             UPDATE sesion
-            SET hora_salida_profesor = TIME(CONVERT_TZ(NOW(), 'UTC', 'Europe/Madrid'))
+            SET hora_salida_profesor = ?
             WHERE sesion_id = ?
-            """, sesionId);
+            """, hora, sesionId);
     }
 
-    public String crearNuevaSesion(Integer profesorId, Integer tarjetaId) {
-        String diaSemana = horarioBBDD.obtenerDiaSemanaActual();
-        LocalTime horaActual = LocalTime.now();
+    /**
+     * Abre la sesión del profesor para la clase que tiene ahora y devuelve la sesión abierta,
+     * o null si no hay clase programada.
+     *
+     * Todo ocurre en una transacción: activar la sesión preabierta por el planificador o, si
+     * no la hay, insertar la sesión (con su id por claves generadas), y después vincular a los
+     * matriculados. En una sesión preabierta los registros ya están y vincularMatriculados solo
+     * crea los que falten (una matrícula posterior a la preparación, por ejemplo). Si falla la
+     * lista de clase no queda una sesión abierta sin registros. Si otra instancia abrió la
+     * sesión a la vez, el índice único de sesión abierta por profesor rechaza la segunda y se
+     * devuelve la que ya existe.
+     */
+    public SesionAbierta crearNuevaSesion(Integer profesorId, Integer tarjetaId, LocalDateTime ahora) {
+        LocalDate fecha = ahora.toLocalDate();
+        LocalTime hora = ahora.toLocalTime();
+        String diaSemana = horarioBBDD.obtenerDiaSemana(fecha);
 
         // Buscar asignatura en horario ±20 minutos usando HorarioBBDD
-        Map<String, Object> horario = horarioBBDD.buscarHorarioActual(profesorId, diaSemana);
+        ClaseHorario horario = horarioBBDD.buscarHorarioActual(profesorId, diaSemana, hora);
 
         if (horario == null) {
-            return "No hay clase programada para este horario";
+            return null;
         }
 
-        Integer asignaturaId = (Integer) horario.get("asignatura_id");
-        Integer grupoId = (Integer) horario.get("grupo_id");
+        Integer asignaturaId = horario.getAsignaturaId();
+        Integer grupoId = horario.getGrupoId();
+
+        try {
+            return transactionTemplate.execute(status -> {
+                Integer sesionId = activarSesionPreabierta(profesorId, tarjetaId, asignaturaId, grupoId, ahora);
+                if (sesionId == null) {
+                    sesionId = insertarSesion(profesorId, tarjetaId, asignaturaId, grupoId, ahora);
+                }
+                asistenciaAlumnoBBDD.vincularMatriculados(sesionId, asignaturaId, grupoId, fecha);
+                return new SesionAbierta(sesionId, asignaturaId, grupoId, fecha, hora);
+            });
+        } catch (DuplicateKeyException e) {
+            return obtenerSesionAbiertaProfesor(profesorId);
+        }
+    }
 
-        // Crear sesión
-        String sql = """
-            INSERT INTO sesion
-            (fecha_creacion, usuario_id, profesor_id, hora_entrada_profesor, asignatura_id, grupo_id, tarjeta_id)
-            VALUES (DATE(CONVERT_TZ(NOW(), 'UTC', 'Europe/Madrid')), ?, ?, TIME(CONVERT_TZ(NOW(), 'UTC', 'Europe/Madrid')), ?, ?, ?)
-            """;
+    /**
+     * Marca como iniciada la sesión preabierta de hoy para esa asignatura y grupo, si existe,
+     * y devuelve su id.
+     */
+    private Integer activarSesionPreabierta(Integer profesorId, Integer tarjetaId,
+                                            Integer asignaturaId, Integer grupoId, LocalDateTime ahora) {
+        List<Integer> preabiertas = jdbcTemplate.queryForList("""
+            SELECT sesion_id
+            FROM sesion
+            WHERE profesor_id = ?
+              AND fecha_creacion = ?
+              AND asignatura_id = ?
+              AND grupo_id = ?
+              AND hora_entrada_profesor IS NULL
+            ORDER BY sesion_id DESC
+            LIMIT 1
+            """, Integer.class, profesorId, ahora.toLocalDate(), asignaturaId, grupoId);
+        if (preabiertas.isEmpty()) {
+            return null;
+        }
 
-        jdbcTemplate.update(sql, profesorId, profesorId, asignaturaId, grupoId, tarjetaId);
+        // La condición sobre hora_entrada_profesor cubre un descarte simultáneo del planificador
+        int activadas = jdbcTemplate.update("""
+            UPDATE sesion
+            SET hora_entrada_profesor = ?,
+                tarjeta_id = ?
+            WHERE sesion_id = ?
+              AND hora_entrada_profesor IS NULL
+            """, ahora.toLocalTime(), tarjetaId, preabiertas.get(0));
+        return activadas > 0 ? preabiertas.get(0) : null;
+    }
 
-        // Obtener el ID de la sesión creada
-        Integer nuevaSesionId = jdbcTemplate.queryForObject("SELECT LAST_INSERT_ID()", Integer.class);
+    private int insertarSesion(Integer profesorId, Integer tarjetaId, Integer asignaturaId,
+                               Integer grupoId, LocalDateTime ahora) {
+        KeyHolder claves = new GeneratedKeyHolder();
+        // Solo se pide sesion_id: H2 devolvería también la columna generada profesor_sesion_abierta
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                INSERT INTO sesion
+                (fecha_creacion, usuario_id, profesor_id, hora_entrada_profesor, asignatura_id, grupo_id, tarjeta_id)
+                VALUES (?, ?, ?, ?, ?, ?, ?)
+                """, new String[]{"sesion_id"});
+            ps.setObject(1, ahora.toLocalDate());
+            ps.setInt(2, profesorId);
+            ps.setInt(3, profesorId);
+            ps.setObject(4, ahora.toLocalTime());
+            ps.setInt(5, asignaturaId);
+            ps.setInt(6, grupoId);
+            ps.setObject(7, tarjetaId);
+            return ps;
+        }, claves);
+        return claves.getKey().intValue();
+    }
 
-        // Crear registros de asistencia para alumnos matriculados
-        asistenciaAlumnoBBDD.crearRegistrosAlumnosMatriculados(nuevaSesionId, asignaturaId, grupoId);
+    /**
+     * Crea una sesión preabierta (sin hora de entrada del profesor) para una clase que está
+     * a punto de empezar, con los registros de sus matriculados, y devuelve su id. No cuenta
+     * como sesión abierta hasta que el profesor pasa la tarjeta. Sesión y registros van en
+     * una transacción: si falla la lista de clase no queda una sesión preabierta vacía.
+     */
+    public Integer preabrirSesion(Integer profesorId, Integer asignaturaId, Integer grupoId, LocalDate fecha) {
+        return transactionTemplate.execute(status -> {
+            Integer sesionId = insertarSesionPreabierta(profesorId, asignaturaId, grupoId, fecha);
+            asistenciaAlumnoBBDD.vincularMatriculados(sesionId, asignaturaId, grupoId, fecha);
+            return sesionId;
+        });
+    }
 
-        return "Nueva sesión creada";
+    private int insertarSesionPreabierta(Integer profesorId, Integer asignaturaId, Integer grupoId, LocalDate fecha) {
+        KeyHolder claves = new GeneratedKeyHolder();
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                INSERT INTO sesion
+                (fecha_creacion, usuario_id, profesor_id, hora_entrada_profesor, asignatura_id, grupo_id, tarjeta_id)
+                VALUES (?, ?, ?, NULL, ?, ?, NULL)
+                """, new String[]{"sesion_id"});
+            ps.setObject(1, fecha);
+            ps.setInt(2, profesorId);
+            ps.setInt(3, profesorId);
+            ps.setInt(4, asignaturaId);
+            ps.setInt(5, grupoId);
+            return ps;
+        }, claves);
+        return claves.getKey().intValue();
     }
 
-    public Object obtenerHoraSalidaProfesor(Integer sesionId) {
-        String sql = "SELECT hora_salida_profesor FROM sesion WHERE sesion_id = ?";
-        List<Map<String, Object>> sesiones = jdbcTemplate.queryForList(sql, sesionId);
+    /**
+     * Sesiones de la fecha indicada: preabiertas, abiertas y cerradas
+     */
+    public List<SesionDelDia> obtenerSesionesDelDia(LocalDate fecha) {
+        return jdbcTemplate.query("""
+            SELECT sesion_id, profesor_id, asignatura_id, grupo_id, hora_entrada_profesor, hora_salida_profesor
+            FROM sesion
+            WHERE fecha_creacion = ?
+            """, SesionDelDia.MAPPER, fecha);
+    }
 
-        if (!sesiones.isEmpty()) {
-            return sesiones.get(0).get("hora_salida_profesor");
-        }
-        return null;
+    /**
+     * Elimina una sesión preabierta que el profesor no llegó a iniciar. Los alumnos que
+     * ya habían pasado la tarjeta conservan su registro, desvinculado de la sesión.
+     */
+    public void descartarSesionPreabierta(Integer sesionId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            int borradas = jdbcTemplate.update("""
+                DELETE FROM sesion
+                WHERE sesion_id = ?
+                  AND hora_entrada_profesor IS NULL
+                """, sesionId);
+            if (borradas == 0) {
+                // El profesor la activó entre la comprobación y el borrado
+                return;
+            }
+            asistenciaAlumnoBBDD.desvincularDeSesion(sesionId);
+        });
+    }
+
+    public LocalTime obtenerHoraSalidaProfesor(Integer sesionId) {
+        List<LocalTime> sesiones = jdbcTemplate.query(SQL_HORA_SALIDA_PROFESOR,
+                (rs, rowNum) -> rs.getObject("hora_salida_profesor", LocalTime.class), sesionId);
+        return sesiones.isEmpty() ? null : sesiones.get(0);
     }
 }
\ No newline at end of file
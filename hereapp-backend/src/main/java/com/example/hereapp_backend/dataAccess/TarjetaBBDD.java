@@ -1,53 +1,210 @@
 package com.example.hereapp_backend.dataAccess;
 
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 public class TarjetaBBDD {
 
+    private static final Logger log = LoggerFactory.getLogger(TarjetaBBDD.class);
+
+    private static final int MAX_PARAMETROS_IN = 1000;
+    // Filas por lote JDBC; con rewriteBatchedStatements cada lote viaja como un INSERT multi-fila
+    private static final int TAMANO_LOTE_INSERT = 1000;
+    // Fallo de caché en un pase, compartida con ComprobacionIndicesBBDD para el EXPLAIN al arrancar
+    static final String SQL_TARJETA_POR_UID = "SELECT tarjeta_id FROM tarjetas_mifare WHERE uid_mifare = ?";
+
     private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxEntradas;
+
+    // Caché de tarjetas: uid_mifare -> tarjeta_id. Un UID ausente solo cuesta una consulta a la tabla
+    private volatile Map<String, Integer> tarjetasPorUid = new ConcurrentHashMap<>();
 
-    public TarjetaBBDD(JdbcTemplate jdbcTemplate) {
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+
+    public TarjetaBBDD(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                       @Value("${hereapp.cache.tarjetas.max-entradas:50000}") int maxEntradas) {
         this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.maxEntradas = maxEntradas;
     }
 
-    public boolean existeTarjetaMifare(String uidMifare) {
+    @PostConstruct
+    public void precargarCache() {
         try {
-            String sql = "SELECT COUNT(*) FROM tarjetas_mifare WHERE uid_mifare = ?";
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, uidMifare);
-            return count > 0;
+            recargarCache();
         } catch (Exception e) {
-            return false;
+            log.warn("No se pudo precargar la caché de tarjetas: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Recarga periódica de la caché para recoger tarjetas dadas de alta
+     * fuera de esta instancia
+     */
+    @Scheduled(initialDelayString = "${hereapp.cache.tarjetas.refresco-ms:300000}",
+            fixedDelayString = "${hereapp.cache.tarjetas.refresco-ms:300000}")
+    public void recargarCache() {
+        Map<String, Integer> nuevas = new ConcurrentHashMap<>();
+        jdbcTemplate.query("SELECT tarjeta_id, uid_mifare FROM tarjetas_mifare", rs -> {
+            if (nuevas.size() < maxEntradas) {
+                nuevas.put(rs.getString("uid_mifare"), rs.getInt("tarjeta_id"));
+            }
+        });
+        // Un alta hecha mientras se leía la tabla puede quedar fuera: su primer pase la busca en la tabla
+        tarjetasPorUid = nuevas;
+    }
+
+    /**
+     * Devuelve el id de la tarjeta si ya está en caché, sin consultar la base de datos
+     */
+    public Integer buscarTarjetaEnCache(String uidMifare) {
+        Integer tarjetaId = tarjetasPorUid.get(uidMifare);
+        if (tarjetaId != null) {
+            aciertos.increment();
+        } else {
+            fallos.increment();
         }
+        return tarjetaId;
+    }
+
+    /**
+     * Guarda en caché una tarjeta obtenida por otra consulta
+     */
+    public void recordarTarjeta(String uidMifare, Integer tarjetaId) {
+        if (tarjetaId != null && tarjetasPorUid.size() < maxEntradas) {
+            tarjetasPorUid.put(uidMifare, tarjetaId);
+        }
+    }
+
+    public boolean existeTarjetaMifare(String uidMifare) {
+        return obtenerTarjetaId(uidMifare) != null;
     }
 
     public Integer obtenerTarjetaId(String uidMifare) {
+        Integer tarjetaId = buscarTarjetaEnCache(uidMifare);
+        if (tarjetaId != null) {
+            return tarjetaId;
+        }
         try {
-            String sql = "SELECT tarjeta_id FROM tarjetas_mifare WHERE uid_mifare = ?";
-            return jdbcTemplate.queryForObject(sql, Integer.class, uidMifare);
+            tarjetaId = jdbcTemplate.queryForObject(SQL_TARJETA_POR_UID, Integer.class, uidMifare);
+            recordarTarjeta(uidMifare, tarjetaId);
+            return tarjetaId;
         } catch (Exception e) {
             return null;
         }
     }
 
-    // Método para obtener la tarjeta asociada a un usuario
-    public Integer obtenerTarjetaDeUsuario(Integer usuarioId) {
-        try {
-            // Opción 1: Si hay una tabla que relaciona usuarios con tarjetas
-            String sql = """
-                SELECT t.tarjeta_id 
-                FROM tarjetas_mifare t
-                WHERE t.usuario_id = ?
-                ORDER BY t.tarjeta_id DESC
-                LIMIT 1
-                """;
-
-            return jdbcTemplate.queryForObject(sql, Integer.class, usuarioId);
-        } catch (Exception e) {
-            // Si no se encuentra tarjeta, retornar null
-            System.out.println("No se encontró tarjeta para usuario " + usuarioId);
-            return null;
+    /**
+     * Da de alta una tarjeta y la deja en caché de forma síncrona, de modo que el
+     * siguiente pase ya la encuentra sin volver a la tabla
+     */
+    public Integer registrarTarjeta(String uidMifare) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "INSERT INTO tarjetas_mifare (uid_mifare) VALUES (?)", Statement.RETURN_GENERATED_KEYS);
+            ps.setString(1, uidMifare);
+            return ps;
+        }, keyHolder);
+
+        Number clave = keyHolder.getKey();
+        Integer tarjetaId = clave != null ? clave.intValue() : null;
+        recordarTarjeta(uidMifare, tarjetaId);
+        return tarjetaId;
+    }
+
+    /**
+     * UIDs del conjunto que ya están dados de alta, con una consulta IN por cada
+     * MAX_PARAMETROS_IN UIDs en lugar de una por tarjeta
+     */
+    public Set<String> filtrarRegistradas(Collection<String> uids) {
+        Set<String> registradas = new HashSet<>();
+        consultarPorUid("uid_mifare", uids, rs -> {
+            registradas.add(rs.getString("uid_mifare"));
+        });
+        return registradas;
+    }
+
+    /**
+     * Alta masiva en una transacción: lotes JDBC de TAMANO_LOTE_INSERT filas y una consulta
+     * IN por trozo para recuperar los ids. Devuelve uid -> tarjeta_id y deja las tarjetas en
+     * caché. Si otra petición da de alta uno de los UID a la vez, la restricción única hace
+     * que falle el alta completa (DuplicateKeyException) y no queda ninguna a medias.
+     */
+    public Map<String, Integer> registrarTarjetas(List<NuevaTarjeta> nuevas) {
+        Map<String, Integer> tarjetaIds = new HashMap<>();
+        if (nuevas.isEmpty()) {
+            return tarjetaIds;
         }
+        List<String> uids = new ArrayList<>(nuevas.size());
+        for (NuevaTarjeta nueva : nuevas) {
+            uids.add(nueva.uidMifare());
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate("INSERT INTO tarjetas_mifare (uid_mifare, usuario_id) VALUES (?, ?)",
+                    nuevas, TAMANO_LOTE_INSERT, (ps, nueva) -> {
+                        ps.setString(1, nueva.uidMifare());
+                        ps.setObject(2, nueva.usuarioId(), Types.INTEGER);
+                    });
+            consultarPorUid("tarjeta_id, uid_mifare", uids, rs -> {
+                tarjetaIds.put(rs.getString("uid_mifare"), rs.getInt("tarjeta_id"));
+            });
+        });
+
+        tarjetaIds.forEach(this::recordarTarjeta);
+        return tarjetaIds;
+    }
+
+    private void consultarPorUid(String columnas, Collection<String> uids, RowCallbackHandler filas) {
+        List<String> lista = new ArrayList<>(uids);
+        for (int desde = 0; desde < lista.size(); desde += MAX_PARAMETROS_IN) {
+            List<String> trozo = lista.subList(desde, Math.min(desde + MAX_PARAMETROS_IN, lista.size()));
+            String marcadores = String.join(", ", Collections.nCopies(trozo.size(), "?"));
+            jdbcTemplate.query("SELECT " + columnas + " FROM tarjetas_mifare WHERE uid_mifare IN (" + marcadores + ")",
+                    filas, trozo.toArray());
+        }
+    }
+
+    // Tarjeta de un alta masiva, con el usuario al que se vincula (puede ser null)
+    public record NuevaTarjeta(String uidMifare, Integer usuarioId) {
+    }
+
+    // Estadísticas de la caché
+    public long getAciertos() {
+        return aciertos.sum();
+    }
+
+    public long getFallos() {
+        return fallos.sum();
+    }
+
+    public int getTamanoCache() {
+        return tarjetasPorUid.size();
     }
-}
\ No newline at end of file
+}
@@ -1,23 +1,69 @@
 package com.example.hereapp_backend.dataAccess;
 
+import com.example.hereapp_backend.dataAccess.TarjetaBBDD.NuevaTarjeta;
+import com.example.hereapp_backend.models.ContextoFichaje;
+import com.example.hereapp_backend.models.MifareRegistroLote;
+import com.example.hereapp_backend.models.ResultadoLoteMifare;
+import com.example.hereapp_backend.models.ResultadoLoteMifare.Estado;
+import com.example.hereapp_backend.models.ResultadoLoteMifare.ResultadoTarjeta;
+import com.example.hereapp_backend.models.Rol;
 import com.example.hereapp_backend.models.Usuario;
 import com.example.hereapp_backend.models.UsuarioDTO;
 import com.example.hereapp_backend.repository.UsuarioRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 public class UsuarioBBDD {
 
+    private static final Logger log = LoggerFactory.getLogger(UsuarioBBDD.class);
+
+    private static final int MAX_PARAMETROS_IN = 1000;
+    // Longitud de tarjetas_mifare.uid_mifare
+    private static final int MAX_LONGITUD_UID = 50;
+
     private final UsuarioRepository repo;
     private final JdbcTemplate jdbcTemplate;
+    private final TarjetaBBDD tarjetaBBDD;
+
+    // Caché de identidades: email -> (usuario_id, roles) y usuario_id -> misma entrada
+    private final Map<String, IdentidadUsuario> identidadesPorEmail = new ConcurrentHashMap<>();
+    private final Map<Integer, IdentidadUsuario> identidadesPorId = new ConcurrentHashMap<>();
+    // Entradas en orden de alta. Todas viven ttlMs, así que es también el orden en que caducan:
+    // la cabeza es la primera que se purga y la que se desaloja si la caché está llena
+    private final ConcurrentLinkedQueue<IdentidadUsuario> ordenDeAlta = new ConcurrentLinkedQueue<>();
+    private final int maxEntradas;
+    private final long ttlMs;
+
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
 
-    public UsuarioBBDD(UsuarioRepository repo, JdbcTemplate jdbcTemplate) {
+    public UsuarioBBDD(UsuarioRepository repo, JdbcTemplate jdbcTemplate, TarjetaBBDD tarjetaBBDD,
+                       @Value("${hereapp.cache.usuarios.max-entradas:60000}") int maxEntradas,
+                       @Value("${hereapp.cache.usuarios.ttl-ms:600000}") long ttlMs) {
         this.repo = repo;
         this.jdbcTemplate = jdbcTemplate;
+        this.tarjetaBBDD = tarjetaBBDD;
+        this.maxEntradas = maxEntradas;
+        this.ttlMs = ttlMs;
     }
 
     public UsuarioDTO getByEmail(String email) {
@@ -38,13 +84,12 @@ public class UsuarioBBDD {
             }
 
             // Verificar si la tarjeta ya existe
-            if (existeTarjetaMifare(uidMifare)) {
+            if (tarjetaBBDD.existeTarjetaMifare(uidMifare)) {
                 throw new RuntimeException("La tarjeta ya está registrada en el sistema");
             }
 
-            // Insertar directamente en la tabla tarjetas_mifare
-            String sql = "INSERT INTO tarjetas_mifare (uid_mifare) VALUES (?)";
-            jdbcTemplate.update(sql, uidMifare);
+            // Insertar en la tabla tarjetas_mifare (actualiza también la caché de tarjetas)
+            tarjetaBBDD.registrarTarjeta(uidMifare);
         } catch (RuntimeException e) {
             // Re-lanzar excepciones de negocio (como tarjeta ya registrada)
             throw e;
@@ -53,23 +98,161 @@ public class UsuarioBBDD {
         }
     }
 
-    private boolean existeTarjetaMifare(String uidMifare) {
-        try {
-            String sql = "SELECT COUNT(*) FROM tarjetas_mifare WHERE uid_mifare = ?";
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, uidMifare);
-            return count != null && count > 0;
-        } catch (Exception e) {
-            // Si hay error en la consulta, asumimos que no existe para no bloquear el registro
-            return false;
+    /**
+     * Alta masiva de tarjetas. Los permisos se comprueban una vez para todo el lote; los UID
+     * ya registrados y los titulares se resuelven con consultas IN sobre el conjunto, y las
+     * altas van en lotes JDBC (TarjetaBBDD.registrarTarjetas). Devuelve el estado de cada UID
+     * en el orden recibido.
+     */
+    public ResultadoLoteMifare registrarMifaresLote(List<MifareRegistroLote.Tarjeta> tarjetas, String emailUsuario) {
+        if (!esUsuarioAdmin(emailUsuario)) {
+            throw new RuntimeException("No tiene permisos para registrar tarjetas. Solo los administradores pueden realizar esta acción.");
+        }
+        long inicio = System.nanoTime();
+        ResultadoTarjeta[] resultados = new ResultadoTarjeta[tarjetas.size()];
+
+        // Validar y quitar repetidos dentro del propio lote: uid -> posición de la primera aparición
+        Map<String, Integer> candidatas = new LinkedHashMap<>();
+        for (int i = 0; i < tarjetas.size(); i++) {
+            MifareRegistroLote.Tarjeta tarjeta = tarjetas.get(i);
+            String uid = tarjeta.getUidMifare() != null ? tarjeta.getUidMifare().trim() : "";
+            String emailTitular = tarjeta.getEmailTitular() != null && !tarjeta.getEmailTitular().isBlank()
+                    ? tarjeta.getEmailTitular().trim() : null;
+            if (uid.isEmpty() || uid.length() > MAX_LONGITUD_UID) {
+                resultados[i] = new ResultadoTarjeta(uid, Estado.UID_NO_VALIDO, null, emailTitular);
+            } else if (candidatas.putIfAbsent(uid, i) != null) {
+                resultados[i] = new ResultadoTarjeta(uid, Estado.DUPLICADA_EN_LOTE, null, emailTitular);
+            } else {
+                resultados[i] = new ResultadoTarjeta(uid, null, null, emailTitular);
+            }
+        }
+
+        // Descartar las ya registradas
+        Set<String> registradas = tarjetaBBDD.filtrarRegistradas(candidatas.keySet());
+        List<Integer> posiciones = new ArrayList<>(candidatas.size());
+        List<String> emailsTitulares = new ArrayList<>();
+        for (int posicion : candidatas.values()) {
+            ResultadoTarjeta resultado = resultados[posicion];
+            if (registradas.contains(resultado.uidMifare())) {
+                resultados[posicion] = new ResultadoTarjeta(resultado.uidMifare(), Estado.YA_REGISTRADA, null,
+                        resultado.emailTitular());
+            } else {
+                posiciones.add(posicion);
+                if (resultado.emailTitular() != null) {
+                    emailsTitulares.add(resultado.emailTitular());
+                }
+            }
+        }
+
+        // Resolver los titulares y dar de alta el resto
+        Map<String, Integer> titulares = obtenerUsuarioIds(emailsTitulares);
+        List<NuevaTarjeta> nuevas = new ArrayList<>(posiciones.size());
+        for (int posicion : posiciones) {
+            ResultadoTarjeta resultado = resultados[posicion];
+            Integer usuarioId = null;
+            if (resultado.emailTitular() != null) {
+                usuarioId = titulares.get(normalizarEmail(resultado.emailTitular()));
+                if (usuarioId == null) {
+                    resultados[posicion] = new ResultadoTarjeta(resultado.uidMifare(), Estado.TITULAR_NO_ENCONTRADO,
+                            null, resultado.emailTitular());
+                    continue;
+                }
+            }
+            nuevas.add(new NuevaTarjeta(resultado.uidMifare(), usuarioId));
+        }
+        Map<String, Integer> tarjetaIds = tarjetaBBDD.registrarTarjetas(nuevas);
+
+        int registradasAhora = 0;
+        for (int i = 0; i < resultados.length; i++) {
+            ResultadoTarjeta resultado = resultados[i];
+            if (resultado.estado() == null) {
+                resultados[i] = new ResultadoTarjeta(resultado.uidMifare(), Estado.REGISTRADA,
+                        tarjetaIds.get(resultado.uidMifare()), resultado.emailTitular());
+                registradasAhora++;
+            }
+        }
+
+        log.info("Alta masiva de tarjetas por {}: {} registradas de {} en {} ms", emailUsuario,
+                registradasAhora, tarjetas.size(), (System.nanoTime() - inicio) / 1_000_000);
+        return new ResultadoLoteMifare(registradasAhora, tarjetas.size() - registradasAhora, List.of(resultados));
+    }
+
+    /**
+     * email normalizado -> usuario_id de los emails que existen, con una consulta IN por cada
+     * MAX_PARAMETROS_IN emails
+     */
+    private Map<String, Integer> obtenerUsuarioIds(Collection<String> emails) {
+        Map<String, Integer> usuarioIds = new HashMap<>();
+        List<String> normalizados = emails.stream().map(UsuarioBBDD::normalizarEmail).distinct().toList();
+        for (int desde = 0; desde < normalizados.size(); desde += MAX_PARAMETROS_IN) {
+            List<String> trozo = normalizados.subList(desde, Math.min(desde + MAX_PARAMETROS_IN, normalizados.size()));
+            String marcadores = String.join(", ", Collections.nCopies(trozo.size(), "?"));
+            jdbcTemplate.query("SELECT usuario_id, email FROM usuario WHERE email IN (" + marcadores + ")", rs -> {
+                usuarioIds.put(normalizarEmail(rs.getString("email")), rs.getInt("usuario_id"));
+            }, trozo.toArray());
         }
+        return usuarioIds;
+    }
+
+    /**
+     * Resuelve la tarjeta, el usuario y todos sus roles para un pase NFC.
+     * Si ambos están en caché no se consulta la base de datos; si no, basta
+     * una sola consulta. Los LEFT JOIN garantizan al menos una fila, de modo que
+     * se puede distinguir "tarjeta no registrada" de "usuario no encontrado".
+     */
+    public ContextoFichaje resolverContextoFichaje(String uidMifare, String email) {
+        Integer tarjetaEnCache = tarjetaBBDD.buscarTarjetaEnCache(uidMifare);
+        IdentidadUsuario identidad = buscarIdentidadEnCache(email);
+
+        if (tarjetaEnCache != null && identidad != null) {
+            return new ContextoFichaje(tarjetaEnCache, identidad.usuarioId, identidad.getRoles());
+        }
+
+        if (tarjetaEnCache != null) {
+            // Tarjeta conocida: solo hace falta resolver el usuario y sus roles
+            identidad = cargarIdentidad(email);
+            return identidad != null
+                    ? new ContextoFichaje(tarjetaEnCache, identidad.usuarioId, identidad.getRoles())
+                    : new ContextoFichaje(tarjetaEnCache, null, EnumSet.noneOf(Rol.class));
+        }
+
+        String sql = """
+            SELECT t.tarjeta_id, u.usuario_id, ur.rol_nombre
+            FROM (SELECT 1) AS p
+            LEFT JOIN tarjetas_mifare t ON t.uid_mifare = ?
+            LEFT JOIN usuario u ON u.email = ?
+            LEFT JOIN usuario_roles ur ON ur.usuario_id = u.usuario_id
+            """;
+
+        Integer[] ids = new Integer[2];
+        byte[] roles = {0};
+
+        jdbcTemplate.query(sql, rs -> {
+            if (ids[0] == null) {
+                ids[0] = rs.getObject("tarjeta_id", Integer.class);
+            }
+            if (ids[1] == null) {
+                ids[1] = rs.getObject("usuario_id", Integer.class);
+            }
+            roles[0] |= IdentidadUsuario.mascara(rs.getString("rol_nombre"));
+        }, uidMifare, email);
+
+        tarjetaBBDD.recordarTarjeta(uidMifare, ids[0]);
+        if (identidad == null && ids[1] != null) {
+            identidad = recordarIdentidad(email, ids[1], roles[0]);
+        }
+
+        return identidad != null
+                ? new ContextoFichaje(ids[0], identidad.usuarioId, identidad.getRoles())
+                : new ContextoFichaje(ids[0], null, EnumSet.noneOf(Rol.class));
     }
 
     // ===== MÉTODOS INTEGRADOS DE UsuarioService =====
 
     public Integer obtenerUsuarioId(String email) {
         try {
-            String sql = "SELECT usuario_id FROM usuario WHERE email = ?";
-            return jdbcTemplate.queryForObject(sql, Integer.class, email);
+            IdentidadUsuario identidad = obtenerIdentidad(email);
+            return identidad != null ? identidad.usuarioId : null;
         } catch (Exception e) {
             return null;
         }
@@ -77,79 +260,237 @@ public class UsuarioBBDD {
 
     public boolean tieneRol(Integer userId, String rolNombre) {
         try {
-            String sql = """
-                SELECT COUNT(*) 
-                FROM usuario_roles ur 
-                WHERE ur.usuario_id = ? AND ur.rol_nombre = ?
-                """;
-
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, userId, rolNombre);
-            return count > 0;
+            IdentidadUsuario identidad = obtenerIdentidad(userId);
+            return identidad != null && identidad.tieneRol(IdentidadUsuario.mascara(rolNombre));
         } catch (Exception e) {
-            System.err.println("Error verificando rol " + rolNombre + " para usuario " + userId + ": " + e.getMessage());
+            log.warn("Error verificando rol {} para usuario {}", rolNombre, userId, e);
             return false;
         }
     }
 
     public boolean esUsuarioAdmin(String emailUsuario) {
         try {
-            Integer userId = obtenerUsuarioId(emailUsuario);
-            if (userId == null) {
-                return false;
-            }
-
-            return tieneRol(userId, "ADMIN");
+            IdentidadUsuario identidad = obtenerIdentidad(emailUsuario);
+            return identidad != null && identidad.tieneRol(IdentidadUsuario.mascara(Rol.ADMIN));
         } catch (Exception e) {
-            System.err.println("Error verificando si usuario es admin: " + e.getMessage());
+            log.warn("Error verificando si el usuario {} es admin", emailUsuario, e);
             return false;
         }
     }
 
     public String determinarRolUsuario(Integer userId) {
         try {
-            String sql = """
-                SELECT ur.rol_nombre
-                FROM usuario_roles ur 
-                WHERE ur.usuario_id = ?
-                """;
-
-            List<Map<String, Object>> rolesResult = jdbcTemplate.queryForList(sql, userId);
-
-            boolean esProfesor = false;
-            boolean esAlumno = false;
-            boolean esAdmin = false;
-
-            for (Map<String, Object> row : rolesResult) {
-                String rolNombre = (String) row.get("rol_nombre");
-                if (rolNombre != null) {
-                    switch (rolNombre.toUpperCase()) {
-                        case "PROFESOR":
-                            esProfesor = true;
-                            break;
-                        case "ALUMNO":
-                            esAlumno = true;
-                            break;
-                        case "ADMIN":
-                            esAdmin = true;
-                            break;
-                    }
-                }
+            IdentidadUsuario identidad = obtenerIdentidad(userId);
+            if (identidad == null) {
+                return "otro";
             }
 
             // Devolver el rol prioritario para procesamiento de asistencia
-            if (esProfesor) {
+            if (identidad.tieneRol(IdentidadUsuario.mascara(Rol.PROFESOR))) {
                 return "profesor";
-            } else if (esAlumno) {
+            } else if (identidad.tieneRol(IdentidadUsuario.mascara(Rol.ALUMNO))) {
                 return "alumno";
-            } else if (esAdmin) {
+            } else if (identidad.tieneRol(IdentidadUsuario.mascara(Rol.ADMIN))) {
                 return "admin";
             }
 
             return "otro";
 
         } catch (Exception e) {
-            System.err.println("Error determinando rol del usuario " + userId + ": " + e.getMessage());
+            log.warn("Error determinando rol del usuario {}", userId, e);
             return "otro";
         }
     }
-}
\ No newline at end of file
+
+    // ===== CACHÉ DE IDENTIDADES =====
+
+    public int getTamanoCacheUsuarios() {
+        return identidadesPorEmail.size();
+    }
+
+    public double getRatioAciertosUsuarios() {
+        long total = aciertos.sum() + fallos.sum();
+        return total == 0 ? 0.0 : (double) aciertos.sum() / total;
+    }
+
+    /**
+     * Quita de la caché la identidad de un usuario, para que el siguiente pase lea de la base
+     * de datos su id y sus roles actuales
+     */
+    public void invalidarUsuario(String email) {
+        IdentidadUsuario identidad = identidadesPorEmail.remove(normalizarEmail(email));
+        if (identidad != null) {
+            identidadesPorId.remove(identidad.usuarioId, identidad);
+            ordenDeAlta.remove(identidad);
+        }
+    }
+
+    // Vacía la caché entera, por ejemplo tras cambiar roles directamente en la base de datos
+    public void invalidarCacheUsuarios() {
+        identidadesPorEmail.clear();
+        identidadesPorId.clear();
+        ordenDeAlta.clear();
+    }
+
+    private IdentidadUsuario obtenerIdentidad(String email) {
+        IdentidadUsuario identidad = buscarIdentidadEnCache(email);
+        return identidad != null ? identidad : cargarIdentidad(email);
+    }
+
+    private IdentidadUsuario cargarIdentidad(String email) {
+        String sql = """
+            SELECT u.usuario_id, ur.rol_nombre
+            FROM usuario u
+            LEFT JOIN usuario_roles ur ON ur.usuario_id = u.usuario_id
+            WHERE u.email = ?
+            """;
+        Integer[] usuarioId = {null};
+        byte[] roles = {0};
+        jdbcTemplate.query(sql, rs -> {
+            usuarioId[0] = rs.getInt("usuario_id");
+            roles[0] |= IdentidadUsuario.mascara(rs.getString("rol_nombre"));
+        }, email);
+
+        return usuarioId[0] != null ? recordarIdentidad(email, usuarioId[0], roles[0]) : null;
+    }
+
+    private IdentidadUsuario obtenerIdentidad(Integer usuarioId) {
+        IdentidadUsuario identidad = identidadesPorId.get(usuarioId);
+        if (identidad != null && !identidad.caducada()) {
+            aciertos.increment();
+            return identidad;
+        }
+        fallos.increment();
+
+        String sql = """
+            SELECT u.email, ur.rol_nombre
+            FROM usuario u
+            LEFT JOIN usuario_roles ur ON ur.usuario_id = u.usuario_id
+            WHERE u.usuario_id = ?
+            """;
+        String[] email = {null};
+        byte[] roles = {0};
+        jdbcTemplate.query(sql, rs -> {
+            email[0] = rs.getString("email");
+            roles[0] |= IdentidadUsuario.mascara(rs.getString("rol_nombre"));
+        }, usuarioId);
+
+        return email[0] != null ? recordarIdentidad(email[0], usuarioId, roles[0]) : null;
+    }
+
+    private IdentidadUsuario buscarIdentidadEnCache(String email) {
+        IdentidadUsuario identidad = identidadesPorEmail.get(normalizarEmail(email));
+        if (identidad != null && !identidad.caducada()) {
+            aciertos.increment();
+            return identidad;
+        }
+        fallos.increment();
+        return null;
+    }
+
+    private IdentidadUsuario recordarIdentidad(String email, int usuarioId, byte roles) {
+        String clave = normalizarEmail(email);
+        IdentidadUsuario identidad = new IdentidadUsuario(clave, usuarioId, roles, System.currentTimeMillis() + ttlMs);
+        // Llena: se hace sitio quitando la entrada que antes iba a caducar
+        while (identidadesPorEmail.size() >= maxEntradas) {
+            if (!desalojarMasAntigua()) {
+                break;
+            }
+        }
+        identidadesPorEmail.put(clave, identidad);
+        identidadesPorId.put(usuarioId, identidad);
+        ordenDeAlta.add(identidad);
+        return identidad;
+    }
+
+    /**
+     * Quita las entradas caducadas fuera del camino de los pases. Solo recorre la cabeza de
+     * la cola, que es donde están las caducadas.
+     */
+    @Scheduled(fixedDelayString = "${hereapp.cache.usuarios.purga-ms:60000}")
+    public void purgarCaducadas() {
+        int purgadas = 0;
+        IdentidadUsuario cabeza;
+        while ((cabeza = ordenDeAlta.peek()) != null && cabeza.caducada()) {
+            if (ordenDeAlta.remove(cabeza)) {
+                olvidar(cabeza);
+                purgadas++;
+            }
+        }
+        if (purgadas > 0) {
+            log.debug("Caché de usuarios: {} entradas caducadas purgadas, {} en caché", purgadas,
+                    identidadesPorEmail.size());
+        }
+    }
+
+    // false si no queda nada que desalojar
+    private boolean desalojarMasAntigua() {
+        IdentidadUsuario masAntigua = ordenDeAlta.poll();
+        if (masAntigua == null) {
+            return false;
+        }
+        olvidar(masAntigua);
+        return true;
+    }
+
+    // Solo quita la entrada si no la ha sustituido ya una más reciente del mismo usuario
+    private void olvidar(IdentidadUsuario identidad) {
+        identidadesPorEmail.remove(identidad.email, identidad);
+        identidadesPorId.remove(identidad.usuarioId, identidad);
+    }
+
+    private static String normalizarEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Entrada compacta de la caché: email normalizado (la misma cadena que la clave), id,
+     * roles como máscara de bits y caducidad
+     */
+    private static final class IdentidadUsuario {
+        private final String email;
+        private final int usuarioId;
+        private final byte roles;
+        private final long caducaEn;
+
+        private IdentidadUsuario(String email, int usuarioId, byte roles, long caducaEn) {
+            this.email = email;
+            this.usuarioId = usuarioId;
+            this.roles = roles;
+            this.caducaEn = caducaEn;
+        }
+
+        private boolean caducada() {
+            return System.currentTimeMillis() > caducaEn;
+        }
+
+        private boolean tieneRol(byte mascara) {
+            return mascara != 0 && (roles & mascara) == mascara;
+        }
+
+        private Set<Rol> getRoles() {
+            Set<Rol> resultado = EnumSet.noneOf(Rol.class);
+            for (Rol rol : Rol.values()) {
+                if (tieneRol(mascara(rol))) {
+                    resultado.add(rol);
+                }
+            }
+            return resultado;
+        }
+
+        private static byte mascara(Rol rol) {
+            return (byte) (1 << rol.ordinal());
+        }
+
+        private static byte mascara(String rolNombre) {
+            if (rolNombre == null) {
+                return 0;
+            }
+            try {
+                return mascara(Rol.valueOf(rolNombre.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.hereapp_backend.models;
+
+import org.springframework.jdbc.core.RowMapper;
+import java.time.Duration;
+import java.time.LocalTime;
+
+/**
+ * Registro de asistencia de hoy de un alumno que todavía no tiene hora de salida.
+ * horaEntrada es null si el registro lo preparó la sesión y el alumno aún no ha pasado la tarjeta.
+ */
+public record AsistenciaAbierta(long asistenciaAlumnoId, Integer sesionId, LocalTime horaEntrada,
+                                Integer tipoAsistenciaId) {
+
+    public static final RowMapper<AsistenciaAbierta> MAPPER = (rs, rowNum) -> new AsistenciaAbierta(
+            rs.getLong("asistencia_alumno_id"),
+            rs.getObject("sesion_id", Integer.class),
+            rs.getObject("hora_entrada_alumno", LocalTime.class),
+            rs.getObject("tipo_asistencia_id", Integer.class));
+
+    // Minutos completos desde la entrada; el registro es de hoy, así que basta con las horas
+    public long minutosDesdeEntrada(LocalTime ahora) {
+        return horaEntrada == null ? 0 : Duration.between(horaEntrada, ahora).toMinutes();
+    }
+}
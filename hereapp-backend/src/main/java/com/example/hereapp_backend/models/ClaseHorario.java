@@ -0,0 +1,60 @@
+package com.example.hereapp_backend.models;
+
+import org.springframework.jdbc.core.RowMapper;
+import java.time.LocalTime;
+
+/**
+ * Una clase del horario semanal: qué profesor la imparte, a qué asignatura y grupo, y a qué hora
+ */
+public class ClaseHorario {
+
+    public static final RowMapper<ClaseHorario> MAPPER = (rs, rowNum) -> new ClaseHorario(
+            rs.getInt("horario_id"),
+            rs.getInt("profesor_id"),
+            rs.getInt("asignatura_id"),
+            rs.getInt("grupo_id"),
+            rs.getObject("hora_inicio", LocalTime.class),
+            rs.getObject("hora_fin", LocalTime.class));
+
+    private final int horarioId;
+    private final int profesorId;
+    private final int asignaturaId;
+    private final int grupoId;
+    private final LocalTime horaInicio;
+    private final LocalTime horaFin;
+
+    public ClaseHorario(int horarioId, int profesorId, int asignaturaId, int grupoId,
+                        LocalTime horaInicio, LocalTime horaFin) {
+        this.horarioId = horarioId;
+        this.profesorId = profesorId;
+        this.asignaturaId = asignaturaId;
+        this.grupoId = grupoId;
+        this.horaInicio = horaInicio;
+        this.horaFin = horaFin;
+    }
+
+    // Getters
+    public int getHorarioId() {
+        return horarioId;
+    }
+
+    public int getProfesorId() {
+        return profesorId;
+    }
+
+    public int getAsignaturaId() {
+        return asignaturaId;
+    }
+
+    public int getGrupoId() {
+        return grupoId;
+    }
+
+    public LocalTime getHoraInicio() {
+        return horaInicio;
+    }
+
+    public LocalTime getHoraFin() {
+        return horaFin;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.hereapp_backend.models;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Datos necesarios para procesar un pase de tarjeta: la tarjeta leída,
+ * el usuario que la presenta y el conjunto completo de sus roles.
+ */
+public class ContextoFichaje {
+    private final Integer tarjetaId;
+    private final Integer usuarioId;
+    private final Set<Rol> roles;
+
+    public ContextoFichaje(Integer tarjetaId, Integer usuarioId, Set<Rol> roles) {
+        this.tarjetaId = tarjetaId;
+        this.usuarioId = usuarioId;
+        this.roles = roles.isEmpty()
+                ? Collections.unmodifiableSet(EnumSet.noneOf(Rol.class))
+                : Collections.unmodifiableSet(EnumSet.copyOf(roles));
+    }
+
+    // Getters
+    public Integer getTarjetaId() {
+        return tarjetaId;
+    }
+
+    public Integer getUsuarioId() {
+        return usuarioId;
+    }
+
+    public Set<Rol> getRoles() {
+        return roles;
+    }
+
+    public boolean tieneRol(Rol rol) {
+        return roles.contains(rol);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.hereapp_backend.models;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Alta masiva de tarjetas: email del administrador y lista de UID, cada uno con el email
+ * del usuario al que se vincula la tarjeta (opcional)
+ */
+public class MifareRegistroLote {
+    private String emailUsuario;
+    private List<Tarjeta> tarjetas = new ArrayList<>();
+
+    // Constructor por defecto
+    public MifareRegistroLote() {}
+
+    public MifareRegistroLote(String emailUsuario, List<Tarjeta> tarjetas) {
+        this.emailUsuario = emailUsuario;
+        this.tarjetas = tarjetas;
+    }
+
+    /**
+     * Lee un CSV con una tarjeta por línea: uid[,email del titular]. Admite coma o punto y coma
+     * como separador y una primera línea de cabecera que empiece por "uid".
+     */
+    public static List<Tarjeta> tarjetasDesdeCsv(String csv) {
+        List<Tarjeta> tarjetas = new ArrayList<>();
+        if (csv == null) {
+            return tarjetas;
+        }
+        boolean primeraLinea = true;
+        for (String linea : csv.split("\r?\n")) {
+            // BOM de las hojas de cálculo al guardar en UTF-8
+            linea = linea.replace("\uFEFF", "").trim();
+            if (linea.isEmpty()) {
+                continue;
+            }
+            String[] campos = linea.split("[,;]", -1);
+            if (primeraLinea) {
+                primeraLinea = false;
+                if (campos[0].trim().toLowerCase(Locale.ROOT).startsWith("uid")) {
+                    continue;
+                }
+            }
+            String emailTitular = campos.length > 1 && !campos[1].isBlank() ? campos[1].trim() : null;
+            tarjetas.add(new Tarjeta(campos[0].trim(), emailTitular));
+        }
+        return tarjetas;
+    }
+
+    // Getters y setters
+    public String getEmailUsuario() {
+        return emailUsuario;
+    }
+
+    public void setEmailUsuario(String emailUsuario) {
+        this.emailUsuario = emailUsuario;
+    }
+
+    public List<Tarjeta> getTarjetas() {
+        return tarjetas;
+    }
+
+    public void setTarjetas(List<Tarjeta> tarjetas) {
+        this.tarjetas = tarjetas;
+    }
+
+    public static class Tarjeta {
+        private String uidMifare;
+        private String emailTitular;
+
+        public Tarjeta() {}
+
+        public Tarjeta(String uidMifare, String emailTitular) {
+            this.uidMifare = uidMifare;
+            this.emailTitular = emailTitular;
+        }
+
+        public String getUidMifare() {
+            return uidMifare;
+        }
+
+        public void setUidMifare(String uidMifare) {
+            this.uidMifare = uidMifare;
+        }
+
+        public String getEmailTitular() {
+            return emailTitular;
+        }
+
+        public void setEmailTitular(String emailTitular) {
+            this.emailTitular = emailTitular;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.hereapp_backend.models;
+
+import java.util.List;
+
+/**
+ * Progreso de una importación de usuarios: la que está en curso o la última terminada.
+ * Los errores se limitan a los primeros, el resto solo se cuenta en rechazadas.
+ */
+public record ResultadoImportacionUsuarios(
+        boolean enCurso,
+        long lineas,
+        long creados,
+        long existentes,
+        long rechazadas,
+        double segundos,
+        double usuariosPorSegundo,
+        String fallo,
+        List<String> errores
+) {
+}
@@ -0,0 +1,20 @@
+package com.example.hereapp_backend.models;
+
+import java.util.List;
+
+/**
+ * Resultado de un alta masiva de tarjetas, con el estado de cada UID en el orden recibido
+ */
+public record ResultadoLoteMifare(int registradas, int rechazadas, List<ResultadoTarjeta> tarjetas) {
+
+    public enum Estado {
+        REGISTRADA,
+        YA_REGISTRADA,
+        DUPLICADA_EN_LOTE,
+        UID_NO_VALIDO,
+        TITULAR_NO_ENCONTRADO
+    }
+
+    public record ResultadoTarjeta(String uidMifare, Estado estado, Integer tarjetaId, String emailTitular) {
+    }
+}
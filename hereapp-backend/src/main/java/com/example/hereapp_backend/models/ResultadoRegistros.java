@@ -0,0 +1,28 @@
+package com.example.hereapp_backend.models;
+
+/**
+ * Número de registros de asistencia creados y actualizados por una operación masiva
+ */
+public class ResultadoRegistros {
+    private final int creados;
+    private final int actualizados;
+
+    public ResultadoRegistros(int creados, int actualizados) {
+        this.creados = creados;
+        this.actualizados = actualizados;
+    }
+
+    // Getters
+    public int getCreados() {
+        return creados;
+    }
+
+    public int getActualizados() {
+        return actualizados;
+    }
+
+    @Override
+    public String toString() {
+        return creados + " creados, " + actualizados + " actualizados";
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.hereapp_backend.models;
+
+import org.springframework.jdbc.core.RowMapper;
+
+/**
+ * Recuento de asistencias de un alumno en una asignatura y grupo, sobre las sesiones ya
+ * finalizadas. Pendiente son los registros que la finalización dejó sin clasificar
+ * (entrada en la sesión y sin salida).
+ */
+public record ResumenAsistencia(int usuarioId, int asignaturaId, int grupoId,
+                                int asiste, int media, int noAsiste, int pendiente) {
+
+    public static final RowMapper<ResumenAsistencia> MAPPER = (rs, rowNum) -> new ResumenAsistencia(
+            rs.getInt("usuario_id"),
+            rs.getInt("asignatura_id"),
+            rs.getInt("grupo_id"),
+            rs.getInt("asiste"),
+            rs.getInt("media"),
+            rs.getInt("no_asiste"),
+            rs.getInt("pendiente"));
+
+    // Sesiones clasificadas: asiste, media o no asiste
+    public int getClasificadas() {
+        return asiste + media + noAsiste;
+    }
+
+    // Porcentaje de sesiones con asistencia completa; 0 si todavía no hay ninguna clasificada
+    public double getPorcentajeAsistencia() {
+        return porcentaje(asiste);
+    }
+
+    // Porcentaje de sesiones en las que estuvo presente, completa o media
+    public double getPorcentajePresencia() {
+        return porcentaje(asiste + media);
+    }
+
+    private double porcentaje(int cuenta) {
+        int clasificadas = getClasificadas();
+        return clasificadas == 0 ? 0 : Math.round(cuenta * 1000.0 / clasificadas) / 10.0;
+    }
+}
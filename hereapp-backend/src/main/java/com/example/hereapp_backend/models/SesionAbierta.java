@@ -0,0 +1,26 @@
+package com.example.hereapp_backend.models;
+
+import org.springframework.jdbc.core.RowMapper;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * Sesión iniciada por un profesor y todavía sin hora de salida
+ */
+public record SesionAbierta(int sesionId, int asignaturaId, int grupoId, LocalDate fechaCreacion,
+                            LocalTime horaEntradaProfesor) {
+
+    public static final RowMapper<SesionAbierta> MAPPER = (rs, rowNum) -> new SesionAbierta(
+            rs.getInt("sesion_id"),
+            rs.getInt("asignatura_id"),
+            rs.getInt("grupo_id"),
+            rs.getObject("fecha_creacion", LocalDate.class),
+            rs.getObject("hora_entrada_profesor", LocalTime.class));
+
+    // Minutos completos transcurridos desde que el profesor inició la sesión
+    public long minutosDesdeInicio(LocalDateTime ahora) {
+        return Duration.between(fechaCreacion.atTime(horaEntradaProfesor), ahora).toMinutes();
+    }
+}
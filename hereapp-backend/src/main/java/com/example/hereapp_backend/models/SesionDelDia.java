@@ -0,0 +1,23 @@
+package com.example.hereapp_backend.models;
+
+import org.springframework.jdbc.core.RowMapper;
+import java.time.LocalTime;
+
+/**
+ * Sesión de un día cualquiera: preabierta (sin entrada), abierta (sin salida) o cerrada
+ */
+public record SesionDelDia(int sesionId, int profesorId, int asignaturaId, int grupoId,
+                           LocalTime horaEntradaProfesor, LocalTime horaSalidaProfesor) {
+
+    public static final RowMapper<SesionDelDia> MAPPER = (rs, rowNum) -> new SesionDelDia(
+            rs.getInt("sesion_id"),
+            rs.getInt("profesor_id"),
+            rs.getInt("asignatura_id"),
+            rs.getInt("grupo_id"),
+            rs.getObject("hora_entrada_profesor", LocalTime.class),
+            rs.getObject("hora_salida_profesor", LocalTime.class));
+
+    public boolean esPreabierta() {
+        return horaEntradaProfesor == null;
+    }
+}
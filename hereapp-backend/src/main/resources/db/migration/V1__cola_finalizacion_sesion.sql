@@ -0,0 +1,15 @@
+-- Cola persistente de finalizaciones de sesion (antes se creaba al arrancar FinalizacionSesionBBDD)
+CREATE TABLE IF NOT EXISTS finalizacion_sesion (
+    sesion_id INT NOT NULL PRIMARY KEY,
+    asignatura_id INT NOT NULL,
+    grupo_id INT NOT NULL,
+    fecha_creacion DATE NOT NULL,
+    ejecutar_en DATETIME NOT NULL,
+    estado VARCHAR(12) NOT NULL DEFAULT 'PENDIENTE',
+    intentos INT NOT NULL DEFAULT 0,
+    reclamado_por VARCHAR(64) NULL,
+    reclamado_en DATETIME NULL,
+    completado_en DATETIME NULL,
+    ultimo_error VARCHAR(500) NULL,
+    INDEX idx_finalizacion_estado_ejecutar (estado, ejecutar_en)
+);
@@ -0,0 +1,36 @@
+-- Indices compuestos que asumen las consultas de dataAccess
+
+-- AsistenciaAlumnoBBDD.obtenerAsistenciaAbierta y crearRegistrosAlumnosMatriculados:
+-- usuario + fecha de hoy + sin salida, ordenado por id (el id va implicito en el indice)
+CREATE INDEX idx_asistencia_usuario_fecha_salida
+    ON asistencia_alumno (usuario_id, fecha_asistencia_alumno, hora_salida_alumno);
+
+-- Pasos de finalizacion y marcarAsistenciasInmediatas: fecha + asignatura + grupo
+CREATE INDEX idx_asistencia_fecha_asignatura_grupo
+    ON asistencia_alumno (fecha_asistencia_alumno, asignatura_id, grupo_id);
+
+-- desvincularDeSesion y resumenes por sesion
+CREATE INDEX idx_asistencia_sesion
+    ON asistencia_alumno (sesion_id);
+
+-- SesionBBDD.obtenerSesionAbiertaProfesor: sesiones del profesor sin salida e iniciadas
+CREATE INDEX idx_sesion_profesor_salida_entrada
+    ON sesion (profesor_id, hora_salida_profesor, hora_entrada_profesor);
+
+-- Activacion de sesiones preabiertas y planificador: profesor + fecha, y todas las del dia
+CREATE INDEX idx_sesion_profesor_fecha
+    ON sesion (profesor_id, fecha_creacion);
+CREATE INDEX idx_sesion_fecha
+    ON sesion (fecha_creacion);
+
+-- HorarioBBDD (consulta de respaldo cuando el indice en memoria no esta cargado)
+CREATE INDEX idx_horario_profesor_dia_inicio
+    ON horario (profesor_id, dia_semana, hora_inicio);
+
+-- MatriculaBBDD y anti-join de insertarNoAsistencias: lista de un grupo, ya ordenada por alumno
+CREATE INDEX idx_matricula_asignatura_grupo_usuario
+    ON matricula (asignatura_id, grupo_id, usuario_id);
+
+-- Tarjeta mas reciente de un usuario (MAX(tarjeta_id) ... WHERE usuario_id = ?)
+CREATE INDEX idx_tarjetas_usuario_tarjeta
+    ON tarjetas_mifare (usuario_id, tarjeta_id);
@@ -0,0 +1,19 @@
+-- Restricciones de unicidad que el codigo da por supuestas.
+-- Si hay datos duplicados de antes, DepuracionMigracionesBBDD hace fallar esta migracion con la
+-- lista de duplicados: se depuran a mano o con hereapp.migraciones.depurar-duplicados=true.
+
+-- Cada UID MIFARE identifica una sola tarjeta (busquedas por uid_mifare)
+CREATE UNIQUE INDEX uk_tarjetas_uid_mifare
+    ON tarjetas_mifare (uid_mifare);
+
+-- Un alumno tiene como mucho un registro por sesion (los registros sin sesion, NULL, no cuentan)
+CREATE UNIQUE INDEX uk_asistencia_usuario_sesion
+    ON asistencia_alumno (usuario_id, sesion_id);
+
+-- Un profesor tiene como mucho una sesion abierta: iniciada y sin salida.
+-- Las sesiones preabiertas (sin entrada) y las cerradas dejan la columna a NULL.
+ALTER TABLE sesion
+    ADD COLUMN profesor_sesion_abierta INT
+        AS (IF(hora_entrada_profesor IS NOT NULL AND hora_salida_profesor IS NULL, profesor_id, NULL)) STORED;
+CREATE UNIQUE INDEX uk_sesion_abierta_profesor
+    ON sesion (profesor_sesion_abierta);
@@ -0,0 +1,19 @@
+-- Resumen de asistencia por alumno, asignatura y grupo, mantenido por FinalizacionSesionBBDD
+-- (ResumenAsistenciaBBDD). Las consultas de porcentajes leen una fila en lugar de agregar
+-- asistencia_alumno de todo el curso.
+CREATE TABLE IF NOT EXISTS resumen_asistencia (
+    usuario_id INT NOT NULL,
+    asignatura_id INT NOT NULL,
+    grupo_id INT NOT NULL,
+    asiste INT NOT NULL DEFAULT 0,
+    media INT NOT NULL DEFAULT 0,
+    no_asiste INT NOT NULL DEFAULT 0,
+    pendiente INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (usuario_id, asignatura_id, grupo_id),
+    INDEX idx_resumen_asignatura_grupo (asignatura_id, grupo_id, usuario_id)
+);
+
+-- Sesiones ya sumadas al resumen: evita contar dos veces una sesion si se vuelve a finalizar
+CREATE TABLE IF NOT EXISTS resumen_asistencia_sesion (
+    sesion_id INT NOT NULL PRIMARY KEY
+);
@@ -0,0 +1,11 @@
+-- Un alumno tiene como mucho una entrada abierta sin sesion por dia.
+-- crearNuevaEntrada inserta con sesion_id NULL, y uk_asistencia_usuario_sesion (V3) no la cubre
+-- porque MySQL admite NULL repetidos en un indice unico. BloqueosPorUsuario evita el duplicado
+-- dentro de una instancia; entre instancias lo rechaza este indice.
+-- La columna es virtual (el valor por defecto de MySQL) para no reconstruir asistencia_alumno:
+-- solo se guarda en el indice. Las filas con sesion, con salida o sin entrada la dejan a NULL.
+ALTER TABLE asistencia_alumno
+    ADD COLUMN usuario_entrada_abierta INT
+        AS (IF(sesion_id IS NULL AND hora_entrada_alumno IS NOT NULL AND hora_salida_alumno IS NULL, usuario_id, NULL));
+CREATE UNIQUE INDEX uk_asistencia_entrada_abierta
+    ON asistencia_alumno (usuario_entrada_abierta, fecha_asistencia_alumno);
@@ -0,0 +1,7 @@
+-- Las sesiones preabiertas por el planificador (PlanificadorSesionesBBDD) se crean antes de que
+-- el profesor pase la tarjeta: sin hora de entrada ni tarjeta hasta que llega.
+-- MODIFY repite el tipo de la columna; solo cambia que admite NULL.
+ALTER TABLE sesion
+    MODIFY hora_entrada_profesor TIME NULL;
+ALTER TABLE sesion
+    MODIFY tarjeta_id INT NULL;
@@ -0,0 +1,98 @@
+package com.example.hereapp_backend.dataAccess;
+
+import com.example.hereapp_backend.models.AsistenciaAbierta;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Registros de asistencia sobre H2 en modo MySQL: qué registro abierto recibe el pase
+ * cuando la lista de la clase siguiente ya está preparada (también tras una salida
+ * olvidada), y una sola entrada abierta sin sesión por alumno y día.
+ */
+class AsistenciaAlumnoBBDDTest {
+
+	private static final int ALUMNO_ID = 100;
+	private static final LocalDate HOY = LocalDate.of(2025, 3, 10);
+
+	private JdbcTemplate jdbcTemplate;
+	private AsistenciaAlumnoBBDD asistenciaAlumnoBBDD;
+
+	@BeforeEach
+	void preparar() {
+		SingleConnectionDataSource dataSource = BaseDatosPrueba.crear();
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		asistenciaAlumnoBBDD = new AsistenciaAlumnoBBDD(jdbcTemplate,
+				new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+	}
+
+	@Test
+	void elPaseDeSalidaNoLoCapturaElRegistroDeLaClaseSiguiente() {
+		// En clase desde las 09:00; el planificador ya preparó el registro de la clase de las 10:00
+		jdbcTemplate.update("""
+				INSERT INTO asistencia_alumno (usuario_id, asignatura_id, grupo_id, sesion_id, fecha_asistencia_alumno, hora_entrada_alumno, tipo_asistencia_id)
+				VALUES (?, 1, 1, 1, ?, '09:00', 5)
+				""", ALUMNO_ID, HOY);
+		jdbcTemplate.update("""
+				INSERT INTO asistencia_alumno (usuario_id, asignatura_id, grupo_id, sesion_id, fecha_asistencia_alumno, tipo_asistencia_id)
+				VALUES (?, 2, 1, 2, ?, 2)
+				""", ALUMNO_ID, HOY);
+
+		AsistenciaAbierta salida = asistenciaAlumnoBBDD.obtenerAsistenciaAbierta(ALUMNO_ID, HOY);
+		assertEquals(1, salida.sesionId());
+		assertEquals(LocalTime.of(9, 0), salida.horaEntrada());
+
+		// Con la salida registrada, el siguiente pase es la entrada a la clase de las 10:00
+		asistenciaAlumnoBBDD.registrarSalida(salida.asistenciaAlumnoId(), LocalTime.of(9, 58));
+		AsistenciaAbierta entrada = asistenciaAlumnoBBDD.obtenerAsistenciaAbierta(ALUMNO_ID, HOY);
+		assertEquals(2, entrada.sesionId());
+		assertNull(entrada.horaEntrada());
+	}
+
+	@Test
+	void unaSalidaOlvidadaEnUnaSesionFinalizadaNoCapturaElPaseDeLaClaseSiguiente() {
+		// Entró a las 08:00 y no pasó la tarjeta al salir; su sesión ya está finalizada
+		jdbcTemplate.update("""
+				INSERT INTO asistencia_alumno (usuario_id, asignatura_id, grupo_id, sesion_id, fecha_asistencia_alumno, hora_entrada_alumno, tipo_asistencia_id)
+				VALUES (?, 1, 1, 1, ?, '08:00', 5)
+				""", ALUMNO_ID, HOY);
+		jdbcTemplate.update("""
+				INSERT INTO finalizacion_sesion (sesion_id, asignatura_id, grupo_id, fecha_creacion, ejecutar_en, estado)
+				VALUES (1, 1, 1, ?, ?, 'COMPLETADA')
+				""", HOY, LocalDateTime.of(HOY, LocalTime.of(9, 10)));
+		jdbcTemplate.update("""
+				INSERT INTO asistencia_alumno (usuario_id, asignatura_id, grupo_id, sesion_id, fecha_asistencia_alumno, tipo_asistencia_id)
+				VALUES (?, 2, 1, 2, ?, 2)
+				""", ALUMNO_ID, HOY);
+
+		AsistenciaAbierta entrada = asistenciaAlumnoBBDD.obtenerAsistenciaAbierta(ALUMNO_ID, HOY);
+		assertEquals(2, entrada.sesionId());
+		assertNull(entrada.horaEntrada());
+	}
+
+	@Test
+	void soloHayUnaEntradaAbiertaSinSesionPorDia() {
+		LocalDateTime ahora = LocalDateTime.of(HOY, LocalTime.of(9, 0));
+		assertTrue(asistenciaAlumnoBBDD.crearNuevaEntrada(ALUMNO_ID, 1, ahora));
+		// La misma entrada desde otra instancia
+		assertFalse(asistenciaAlumnoBBDD.crearNuevaEntrada(ALUMNO_ID, 1, ahora));
+		assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM asistencia_alumno", Integer.class));
+
+		// Cerrada la primera, el alumno puede volver a entrar
+		AsistenciaAbierta abierta = asistenciaAlumnoBBDD.obtenerAsistenciaAbierta(ALUMNO_ID, HOY);
+		asistenciaAlumnoBBDD.registrarSalida(abierta.asistenciaAlumnoId(), LocalTime.of(10, 0));
+		assertTrue(asistenciaAlumnoBBDD.crearNuevaEntrada(ALUMNO_ID, 1, ahora.plusHours(2)));
+	}
+}
@@ -0,0 +1,137 @@
+package com.example.hereapp_backend.dataAccess;
+
+import com.example.hereapp_backend.config.MetricasAsistencia;
+import com.example.hereapp_backend.config.RelojAplicacion;
+import com.example.hereapp_backend.config.TimeZoneConfig;
+import com.example.hereapp_backend.models.AsistenciaAbierta;
+import com.example.hereapp_backend.models.ContextoFichaje;
+import com.example.hereapp_backend.models.Rol;
+import com.example.hereapp_backend.models.SesionAbierta;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Pases simultáneos de la misma tarjeta: cada comprobación y cada creación tardan unos
+ * milisegundos para abrir la ventana de carrera. Sin el bloqueo por usuario varios hilos
+ * ven "no hay registro abierto" y crean duplicados.
+ */
+class AsistenciaBBDDConcurrenciaTest {
+
+	private static final int PASES = 64;
+	private static final int ALUMNO_ID = 42;
+	private static final int PROFESOR_ID = 7;
+	// Reloj fijo a las 12:00: todos los registros simulados se crean a esa hora
+	private static final ZonedDateTime AHORA = ZonedDateTime.of(2025, 3, 10, 12, 0, 0, 0, TimeZoneConfig.ZONA_MADRID);
+
+	private final List<AsistenciaAbierta> asistencias = new CopyOnWriteArrayList<>();
+	private final List<SesionAbierta> sesiones = new CopyOnWriteArrayList<>();
+
+	private UsuarioBBDD usuarioBBDD;
+	private AsistenciaBBDD asistenciaBBDD;
+
+	@BeforeEach
+	void preparar() {
+		usuarioBBDD = mock(UsuarioBBDD.class);
+		SesionBBDD sesionBBDD = mock(SesionBBDD.class);
+		AsistenciaAlumnoBBDD asistenciaAlumnoBBDD = mock(AsistenciaAlumnoBBDD.class);
+
+		// Tabla asistencia_alumno simulada
+		when(asistenciaAlumnoBBDD.obtenerAsistenciaAbierta(anyInt(), any())).thenAnswer(inv -> {
+			pausa();
+			return asistencias.isEmpty() ? null : asistencias.get(asistencias.size() - 1);
+		});
+		doAnswer(inv -> {
+			pausa();
+			asistencias.add(new AsistenciaAbierta(asistencias.size() + 1, null, LocalTime.NOON, 5));
+			return true;
+		}).when(asistenciaAlumnoBBDD).crearNuevaEntrada(anyInt(), anyInt(), any());
+
+		// Tabla sesion simulada
+		when(sesionBBDD.obtenerSesionAbiertaProfesor(anyInt())).thenAnswer(inv -> {
+			pausa();
+			return sesiones.isEmpty() ? null : sesiones.get(sesiones.size() - 1);
+		});
+		when(sesionBBDD.crearNuevaSesion(anyInt(), anyInt(), any())).thenAnswer(inv -> {
+			pausa();
+			SesionAbierta nueva = new SesionAbierta(sesiones.size() + 1, 1, 1, LocalDate.from(AHORA), LocalTime.NOON);
+			sesiones.add(nueva);
+			return nueva;
+		});
+
+		asistenciaBBDD = new AsistenciaBBDD(usuarioBBDD, sesionBBDD, asistenciaAlumnoBBDD,
+				mock(FinalizacionSesionBBDD.class), new BloqueosPorUsuario(256),
+				new RelojAplicacion(Clock.fixed(AHORA.toInstant(), TimeZoneConfig.ZONA_MADRID)),
+				new MetricasAsistencia(new SimpleMeterRegistry()));
+	}
+
+	@Test
+	void pasesSimultaneosDeUnAlumnoCreanUnaSolaEntrada() throws Exception {
+		when(usuarioBBDD.resolverContextoFichaje(any(), any()))
+				.thenReturn(new ContextoFichaje(1, ALUMNO_ID, EnumSet.of(Rol.ALUMNO)));
+
+		List<String> resultados = pasarTarjetaEnParalelo();
+
+		assertEquals(1, asistencias.size());
+		assertEquals(1, resultados.stream().filter("Nueva entrada registrada"::equals).count());
+	}
+
+	@Test
+	void pasesSimultaneosDeUnProfesorAbrenUnaSolaSesion() throws Exception {
+		when(usuarioBBDD.resolverContextoFichaje(any(), any()))
+				.thenReturn(new ContextoFichaje(2, PROFESOR_ID, EnumSet.of(Rol.PROFESOR)));
+
+		List<String> resultados = pasarTarjetaEnParalelo();
+
+		assertEquals(1, sesiones.size());
+		assertEquals(1, resultados.stream().filter("Nueva sesión creada"::equals).count());
+	}
+
+	private List<String> pasarTarjetaEnParalelo() throws Exception {
+		ExecutorService ejecutor = Executors.newFixedThreadPool(16);
+		CountDownLatch salida = new CountDownLatch(1);
+		try {
+			List<Future<String>> futuros = new ArrayList<>();
+			for (int i = 0; i < PASES; i++) {
+				futuros.add(ejecutor.submit(() -> {
+					salida.await();
+					return asistenciaBBDD.procesarAsistenciaNFC("04A1B2C3", "usuario@ufv.es");
+				}));
+			}
+			salida.countDown();
+
+			List<String> resultados = new ArrayList<>();
+			for (Future<String> futuro : futuros) {
+				resultados.add(futuro.get(30, TimeUnit.SECONDS));
+			}
+			return resultados;
+		} finally {
+			ejecutor.shutdownNow();
+		}
+	}
+
+	private static void pausa() throws InterruptedException {
+		Thread.sleep(2);
+	}
+}
@@ -0,0 +1,106 @@
+package com.example.hereapp_backend.dataAccess;
+
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Base de datos H2 en modo MySQL con el esquema real: las tablas de partida (db/esquema-base.sql)
+ * y encima las migraciones de Flyway de db/migration, en orden de versión. Así los tests pasan
+ * por los mismos índices y restricciones de unicidad que producción.
+ *
+ * H2 no entiende dos construcciones de MySQL que usan las migraciones y se traducen al leerlas:
+ * IF(...) pasa a CASEWHEN(...) y las columnas generadas pierden STORED (H2 ya las guarda).
+ */
+public final class BaseDatosPrueba {
+
+	private static final Pattern VERSION = Pattern.compile("V(\\d+)__.*\\.sql");
+	private static final AtomicInteger BASES = new AtomicInteger();
+
+	private BaseDatosPrueba() {
+	}
+
+	/**
+	 * Base nueva y vacía para un test, con una sola conexión que no se cierra.
+	 */
+	public static SingleConnectionDataSource crear() {
+		return crear(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Igual que crear() pero solo con las migraciones hasta la versión indicada, para probar
+	 * lo que pasa antes de una migración concreta.
+	 */
+	public static SingleConnectionDataSource crear(int hastaVersion) {
+		SingleConnectionDataSource dataSource = new SingleConnectionDataSource(
+				"jdbc:h2:mem:prueba" + BASES.incrementAndGet() + ";MODE=MySQL", "sa", "", true);
+		crearEsquema(dataSource, hastaVersion);
+		return dataSource;
+	}
+
+	/**
+	 * Crea el esquema sobre una base vacía.
+	 */
+	public static void crearEsquema(DataSource dataSource) {
+		crearEsquema(dataSource, Integer.MAX_VALUE);
+	}
+
+	private static void crearEsquema(DataSource dataSource, int hastaVersion) {
+		try (Connection conexion = dataSource.getConnection()) {
+			ScriptUtils.executeSqlScript(conexion, new ClassPathResource("db/esquema-base.sql"));
+		} catch (SQLException e) {
+			throw new IllegalStateException("No se pudo crear el esquema de pruebas", e);
+		}
+		migrar(dataSource, 1, hastaVersion);
+	}
+
+	/**
+	 * Aplica, en orden, las migraciones con versión entre desde y hasta (ambas incluidas).
+	 */
+	public static void migrar(DataSource dataSource, int desde, int hasta) {
+		try (Connection conexion = dataSource.getConnection()) {
+			for (Resource migracion : migraciones()) {
+				int version = version(migracion);
+				if (version < desde || version > hasta) {
+					continue;
+				}
+				String sql = migracion.getContentAsString(StandardCharsets.UTF_8)
+						.replace("IF(", "CASEWHEN(")
+						.replaceAll("\\)\\s+STORED", ")");
+				ScriptUtils.executeSqlScript(conexion, new ByteArrayResource(
+						sql.getBytes(StandardCharsets.UTF_8), migracion.getFilename()));
+			}
+		} catch (SQLException | IOException e) {
+			throw new IllegalStateException("No se pudo migrar el esquema de pruebas", e);
+		}
+	}
+
+	private static Resource[] migraciones() throws IOException {
+		Resource[] migraciones = new PathMatchingResourcePatternResolver()
+				.getResources("classpath:db/migration/V*__*.sql");
+		Arrays.sort(migraciones, Comparator.comparingInt(BaseDatosPrueba::version));
+		return migraciones;
+	}
+
+	private static int version(Resource migracion) {
+		Matcher matcher = VERSION.matcher(migracion.getFilename());
+		if (!matcher.matches()) {
+			throw new IllegalStateException("Migración sin versión: " + migracion.getFilename());
+		}
+		return Integer.parseInt(matcher.group(1));
+	}
+}
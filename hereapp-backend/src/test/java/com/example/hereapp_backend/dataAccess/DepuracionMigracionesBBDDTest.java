@@ -0,0 +1,114 @@
+package com.example.hereapp_backend.dataAccess;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Depuración previa a las migraciones sobre H2 en modo MySQL: con los duplicados que dejaba
+ * el código anterior, V3 y V5 solo se aplican después de depurar, y sin activarla la migración
+ * falla sin tocar nada.
+ */
+class DepuracionMigracionesBBDDTest {
+
+	private static final LocalDate HOY = LocalDate.of(2025, 3, 10);
+
+	private final DepuracionMigracionesBBDD depuracion = new DepuracionMigracionesBBDD(true);
+
+	@Test
+	void antesDeV3UnificaTarjetasRegistrosYSesionesRepetidos() {
+		SingleConnectionDataSource dataSource = BaseDatosPrueba.crear(2);
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.update("INSERT INTO tarjetas_mifare (tarjeta_id, uid_mifare, usuario_id) VALUES (1, 'A1', 100), (2, 'B2', 101), (3, 'A1', NULL)");
+		jdbcTemplate.update("""
+				INSERT INTO sesion (sesion_id, fecha_creacion, profesor_id, hora_entrada_profesor, asignatura_id, grupo_id, tarjeta_id)
+				VALUES (1, ?, 7, '09:00', 1, 1, 1), (2, ?, 7, '09:01', 1, 1, 3), (3, ?, 8, '09:00', 2, 1, 2)
+				""", HOY, HOY, HOY);
+		jdbcTemplate.update("""
+				INSERT INTO asistencia_alumno (asistencia_alumno_id, usuario_id, sesion_id, fecha_asistencia_alumno, hora_entrada_alumno, tipo_asistencia_id, tarjeta_id)
+				VALUES (10, 100, 2, ?, NULL, 2, 3), (11, 100, 2, ?, '09:03', 5, 1), (12, 101, 3, ?, '09:02', 5, 2)
+				""", HOY, HOY, HOY);
+
+		depuracion.depurarAntesDe("3", jdbcTemplate);
+		BaseDatosPrueba.migrar(dataSource, 3, 3);
+
+		// Del UID A1 queda la tarjeta que elige el pase, la de mayor id, con el usuario de la borrada
+		assertEquals(List.of(List.of(2, 101), List.of(3, 100)), jdbcTemplate.query(
+				"SELECT tarjeta_id, usuario_id FROM tarjetas_mifare ORDER BY tarjeta_id",
+				(rs, rowNum) -> List.of(rs.getInt(1), rs.getInt(2))));
+		assertEquals(List.of(3, 3, 2), jdbcTemplate.queryForList(
+				"SELECT tarjeta_id FROM sesion ORDER BY sesion_id", Integer.class));
+		// Del alumno 100 queda el registro con entrada, ya con la tarjeta conservada
+		assertEquals(List.of(List.of(11L, 3), List.of(12L, 2)), jdbcTemplate.query(
+				"SELECT asistencia_alumno_id, tarjeta_id FROM asistencia_alumno ORDER BY asistencia_alumno_id",
+				(rs, rowNum) -> List.of(rs.getLong(1), rs.getInt(2))));
+		// Del profesor 7 sigue abierta la más reciente
+		assertEquals(LocalTime.of(9, 0), jdbcTemplate.queryForObject(
+				"SELECT hora_salida_profesor FROM sesion WHERE sesion_id = 1", LocalTime.class));
+		assertNull(jdbcTemplate.queryForObject(
+				"SELECT hora_salida_profesor FROM sesion WHERE sesion_id = 2", LocalTime.class));
+
+		// Repetirla no cambia nada
+		depuracion.depurarAntesDe("3", jdbcTemplate);
+		assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM asistencia_alumno", Integer.class));
+	}
+
+	@Test
+	void sinActivarLaDepuracionFallaConLosDuplicadosYNoCambiaNada() {
+		SingleConnectionDataSource dataSource = BaseDatosPrueba.crear(2);
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.update("INSERT INTO tarjetas_mifare (tarjeta_id, uid_mifare, usuario_id) VALUES (1, 'A1', 100), (3, 'A1', 100)");
+		jdbcTemplate.update("""
+				INSERT INTO sesion (sesion_id, fecha_creacion, profesor_id, hora_entrada_profesor, asignatura_id, grupo_id, tarjeta_id)
+				VALUES (1, ?, 7, '09:00', 1, 1, 1), (2, ?, 7, '09:01', 1, 1, 3)
+				""", HOY, HOY);
+
+		RuntimeException error = assertThrows(RuntimeException.class,
+				() -> new DepuracionMigracionesBBDD(false).depurarAntesDe("3", jdbcTemplate));
+
+		assertTrue(error.getMessage().contains("{A1=[3, 1]}"), error.getMessage());
+		assertTrue(error.getMessage().contains("{7=[2, 1]}"), error.getMessage());
+		assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM tarjetas_mifare", Integer.class));
+		assertEquals(2, jdbcTemplate.queryForObject(
+				"SELECT COUNT(*) FROM sesion WHERE hora_salida_profesor IS NULL", Integer.class));
+	}
+
+	@Test
+	void unUidDeVariosUsuariosNoSeUnificaNunca() {
+		SingleConnectionDataSource dataSource = BaseDatosPrueba.crear(2);
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.update("INSERT INTO tarjetas_mifare (tarjeta_id, uid_mifare, usuario_id) VALUES (1, 'A1', 100), (3, 'A1', 101)");
+
+		RuntimeException error = assertThrows(RuntimeException.class,
+				() -> depuracion.depurarAntesDe("3", jdbcTemplate));
+
+		assertTrue(error.getMessage().contains("A1"), error.getMessage());
+		assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM tarjetas_mifare", Integer.class));
+	}
+
+	@Test
+	void antesDeV5DejaUnaEntradaAbiertaSinSesionPorDia() {
+		SingleConnectionDataSource dataSource = BaseDatosPrueba.crear(4);
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.update("""
+				INSERT INTO asistencia_alumno (asistencia_alumno_id, usuario_id, fecha_asistencia_alumno, hora_entrada_alumno, hora_salida_alumno, tipo_asistencia_id)
+				VALUES (1, 100, ?, '08:00', '08:50', 5), (2, 100, ?, '09:02', NULL, 5), (3, 100, ?, '09:02', NULL, 5),
+				       (4, 101, ?, '09:05', NULL, 5)
+				""", HOY, HOY, HOY, HOY);
+
+		depuracion.depurarAntesDe("5", jdbcTemplate);
+		BaseDatosPrueba.migrar(dataSource, 5, 5);
+
+		assertEquals(List.of(1L, 2L, 4L), jdbcTemplate.queryForList(
+				"SELECT asistencia_alumno_id FROM asistencia_alumno ORDER BY asistencia_alumno_id", Long.class));
+	}
+}
@@ -0,0 +1,96 @@
+package com.example.hereapp_backend.dataAccess;
+
+import com.example.hereapp_backend.config.LimitadorConexiones.ServicioSaturadoException;
+import com.example.hereapp_backend.dataAccess.ExportacionAsistenciaBBDD.Exportacion;
+import com.example.hereapp_backend.dataAccess.ExportacionAsistenciaBBDD.Formato;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Exportación sobre H2 en modo MySQL (H2 no admite el fetch de MySQL, se usa uno positivo).
+ */
+class ExportacionAsistenciaBBDDTest {
+
+	private static final LocalDate LUNES = LocalDate.of(2025, 3, 10);
+
+	private ExportacionAsistenciaBBDD exportacionAsistenciaBBDD;
+
+	@BeforeEach
+	void preparar() {
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(BaseDatosPrueba.crear());
+		jdbcTemplate.update("INSERT INTO usuario (usuario_id, nombre, apellido1, apellido2, email) VALUES (100, 'Ana', 'Pérez, de la', NULL, 'ana@ufv.es')");
+		jdbcTemplate.update("INSERT INTO usuario (usuario_id, nombre, apellido1, apellido2, email) VALUES (101, 'Luis \"Lucho\"', 'Gil', 'Sanz', 'luis@ufv.es')");
+		jdbcTemplate.update("""
+				INSERT INTO asistencia_alumno
+				(usuario_id, sesion_id, asignatura_id, grupo_id, fecha_asistencia_alumno, hora_entrada_alumno, hora_salida_alumno, tipo_asistencia_id)
+				VALUES (101, 1, 7, 1, ?, '09:02', '09:58', 1),
+				       (100, 1, 7, 1, ?, '09:20', NULL, 3),
+				       (100, 2, 7, 2, ?, NULL, NULL, 2),
+				       (100, 3, 7, 1, ?, NULL, NULL, 2),
+				       (100, 4, 8, 1, ?, '09:00', '10:00', 1)
+				""", LUNES, LUNES, LUNES, LUNES.plusDays(7), LUNES);
+
+		exportacionAsistenciaBBDD = new ExportacionAsistenciaBBDD(jdbcTemplate, 100, 1);
+	}
+
+	@Test
+	void csvComprimidoConFiltrosYCamposEscapados() throws IOException {
+		String csv = exportar(Formato.CSV, true, 1, LUNES, LUNES);
+
+		assertEquals("\uFEFF" + """
+				fecha,asignatura_id,grupo_id,sesion_id,usuario_id,nombre,apellido1,apellido2,email,hora_entrada,hora_salida,tipo_asistencia_id,tipo_asistencia\r
+				2025-03-10,7,1,1,100,Ana,"Pérez, de la",,ana@ufv.es,09:20:00,,3,media\r
+				2025-03-10,7,1,1,101,"Luis ""Lucho\""",Gil,Sanz,luis@ufv.es,09:02:00,09:58:00,1,asiste\r
+				""", csv);
+	}
+
+	@Test
+	void ndjsonUnaLineaPorFila() throws IOException {
+		String[] lineas = exportar(Formato.NDJSON, false, null, null, null).split("\n");
+
+		assertEquals(4, lineas.length);
+		assertEquals("""
+				{"fecha":"2025-03-10","asignatura_id":7,"grupo_id":1,"sesion_id":1,"usuario_id":100,"nombre":"Ana",\
+				"apellido1":"Pérez, de la","apellido2":null,"email":"ana@ufv.es","hora_entrada":"09:20:00",\
+				"hora_salida":null,"tipo_asistencia_id":3,"tipo_asistencia":"media"}""", lineas[0]);
+		assertEquals("2025-03-17", lineas[3].substring(10, 20));
+	}
+
+	@Test
+	void rechazaExportacionesPorEncimaDelLimite() throws IOException {
+		try (Exportacion enCurso = exportacionAsistenciaBBDD.reservar(7, null, null, null, Formato.CSV, false)) {
+			assertThrows(ServicioSaturadoException.class,
+					() -> exportacionAsistenciaBBDD.reservar(7, null, null, null, Formato.CSV, false));
+			assertEquals(1, exportacionAsistenciaBBDD.getEnCurso());
+		}
+		// Al cerrar se libera el permiso
+		exportar(Formato.CSV, false, null, null, null);
+		assertEquals(0, exportacionAsistenciaBBDD.getEnCurso());
+	}
+
+	private String exportar(Formato formato, boolean gzip, Integer grupoId, LocalDate desde, LocalDate hasta)
+			throws IOException {
+		ByteArrayOutputStream salida = new ByteArrayOutputStream();
+		try (Exportacion exportacion = exportacionAsistenciaBBDD.reservar(7, grupoId, desde, hasta, formato, gzip)) {
+			exportacion.escribir(salida);
+		}
+		byte[] bytes = salida.toByteArray();
+		if (gzip) {
+			try (GZIPInputStream entrada = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+				bytes = entrada.readAllBytes();
+			}
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
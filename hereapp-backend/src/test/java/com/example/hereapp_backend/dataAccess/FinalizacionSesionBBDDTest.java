@@ -0,0 +1,110 @@
+package com.example.hereapp_backend.dataAccess;
+
+import com.example.hereapp_backend.config.RelojAplicacion;
+import com.example.hereapp_backend.config.TimeZoneConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Cola de finalización sobre H2 en modo MySQL: un trabajo cuyo reclamo ha pasado a otra
+ * instancia no se marca como completado ni se devuelve a la cola desde la primera.
+ */
+class FinalizacionSesionBBDDTest {
+
+	private static final LocalDateTime AHORA = LocalDateTime.of(2025, 3, 10, 11, 0);
+	private static final LocalDate HOY = AHORA.toLocalDate();
+
+	private JdbcTemplate jdbcTemplate;
+	private AsistenciaAlumnoBBDD asistenciaAlumnoBBDD;
+	private FinalizacionSesionBBDD finalizacionSesionBBDD;
+	private boolean reclamarAntesDelReintento;
+
+	@BeforeEach
+	void preparar() {
+		SingleConnectionDataSource dataSource = BaseDatosPrueba.crear();
+		jdbcTemplate = new JdbcTemplate(dataSource) {
+			@Override
+			public int update(String sql, Object... args) {
+				if (reclamarAntesDelReintento && sql.contains("ultimo_error = ?")) {
+					reclamarDesdeOtraInstancia();
+				}
+				return super.update(sql, args);
+			}
+		};
+		jdbcTemplate.update("""
+				INSERT INTO finalizacion_sesion (sesion_id, asignatura_id, grupo_id, fecha_creacion, ejecutar_en)
+				VALUES (1, 1, 1, ?, ?)
+				""", HOY, AHORA.minusMinutes(1));
+
+		RelojAplicacion reloj = new RelojAplicacion(Clock.fixed(
+				ZonedDateTime.of(AHORA, TimeZoneConfig.ZONA_MADRID).toInstant(), TimeZoneConfig.ZONA_MADRID));
+		TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		asistenciaAlumnoBBDD = mock(AsistenciaAlumnoBBDD.class);
+		finalizacionSesionBBDD = new FinalizacionSesionBBDD(jdbcTemplate, asistenciaAlumnoBBDD,
+				mock(SesionBBDD.class), mock(ResumenAsistenciaBBDD.class), transactionTemplate, reloj,
+				10, 5, 20, 1, 5, false);
+	}
+
+	@AfterEach
+	void detener() {
+		finalizacionSesionBBDD.detener();
+	}
+
+	@Test
+	void conElReclamoEnOtraInstanciaNoSeMarcaCompletado() {
+		// Mientras se finaliza, el reclamo caduca y lo toma otra instancia
+		doAnswer(invocacion -> reclamarDesdeOtraInstancia()).when(asistenciaAlumnoBBDD)
+				.actualizarRegistrosConSesion(any(), any(), any(), any());
+
+		finalizacionSesionBBDD.procesarPendientes();
+
+		assertEquals(Map.of("estado", "EN_CURSO", "reclamado_por", "otra"), estado());
+	}
+
+	@Test
+	void conElReclamoEnOtraInstanciaUnFalloNoLoDevuelveALaCola() {
+		// La finalización falla y, antes de anotar el reintento, otra instancia toma el reclamo
+		// (fuera de la transacción deshecha)
+		doThrow(new IllegalStateException("fallo")).when(asistenciaAlumnoBBDD).actualizarRegistrosConSesion(any(), any(), any(), any());
+		reclamarAntesDelReintento = true;
+
+		finalizacionSesionBBDD.procesarPendientes();
+
+		assertEquals(Map.of("estado", "EN_CURSO", "reclamado_por", "otra"), estado());
+	}
+
+	@Test
+	void conElReclamoPropioSeMarcaCompletado() {
+		finalizacionSesionBBDD.procesarPendientes();
+
+		assertEquals("COMPLETADA", estado().get("estado"));
+	}
+
+	// Con un JdbcTemplate aparte para no pasar por la interceptación de update
+	private Object reclamarDesdeOtraInstancia() {
+		new JdbcTemplate(jdbcTemplate.getDataSource()).update(
+				"UPDATE finalizacion_sesion SET estado = 'EN_CURSO', reclamado_por = 'otra' WHERE sesion_id = 1");
+		return null;
+	}
+
+	private Map<String, Object> estado() {
+		return jdbcTemplate.queryForMap("SELECT estado, reclamado_por FROM finalizacion_sesion WHERE sesion_id = 1");
+	}
+}
@@ -0,0 +1,134 @@
+package com.example.hereapp_backend.dataAccess;
+
+import com.example.hereapp_backend.config.JdbcTemplateContado;
+import com.example.hereapp_backend.models.ResultadoImportacionUsuarios;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Importación de usuarios sobre H2 en modo MySQL, con BCrypt de coste mínimo para que sea rápida.
+ */
+class ImportacionUsuariosBBDDTest {
+
+	private static final String ADMIN = "admin@ufv.es";
+
+	private JdbcTemplate jdbcTemplate;
+	private PasswordEncoder passwordEncoder;
+	private ImportacionUsuariosBBDD importacionUsuariosBBDD;
+
+	@BeforeEach
+	void preparar() {
+		SingleConnectionDataSource dataSource = BaseDatosPrueba.crear();
+		jdbcTemplate = new JdbcTemplateContado(dataSource);
+		jdbcTemplate.update("INSERT INTO usuario (usuario_id, email) VALUES (1, ?)", ADMIN);
+		jdbcTemplate.update("INSERT INTO usuario_roles VALUES (1, 'ADMIN')");
+
+		TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		UsuarioBBDD usuarioBBDD = new UsuarioBBDD(null, jdbcTemplate, null, 60_000, 600_000);
+		passwordEncoder = new BCryptPasswordEncoder(4);
+		importacionUsuariosBBDD = new ImportacionUsuariosBBDD(jdbcTemplate, transactionTemplate, usuarioBBDD,
+				passwordEncoder, 4, 100);
+	}
+
+	@AfterEach
+	void terminar() {
+		importacionUsuariosBBDD.detener();
+	}
+
+	@Test
+	void importaPorBloquesConRolesYContrasenaCifrada() {
+		StringBuilder csv = new StringBuilder("\uFEFFnombre;apellido1;apellido2;email;roles;contrasena\r\n");
+		for (int i = 0; i < 250; i++) {
+			csv.append("Alumno;Apellido").append(i).append(";;Alumno").append(i).append("@UFV.es;;Provisional1\r\n");
+		}
+		csv.append("\"Gil, Luis\";Gil;Sanz;luis@ufv.es;PROFESOR|ALUMNO;Provisional1\r\n");
+		csv.append("Sin email;;;;;Provisional1\r\n");
+		csv.append("Rol raro;;;raro@ufv.es;BECARIO;Provisional1\r\n");
+		csv.append("Repetido;;;alumno0@ufv.es;;Provisional1\r\n");
+
+		int antes = JdbcTemplateContado.sentenciasDelHilo();
+		ResultadoImportacionUsuarios resultado = importacionUsuariosBBDD.importar(entrada(csv.toString()), ADMIN);
+		int sentencias = JdbcTemplateContado.sentenciasDelHilo() - antes;
+
+		assertFalse(resultado.enCurso());
+		assertEquals(254, resultado.lineas());
+		assertEquals(251, resultado.creados());
+		assertEquals(1, resultado.existentes());
+		assertEquals(2, resultado.rechazadas());
+		assertEquals(List.of("Línea 253: email no válido ''", "Línea 254: rol desconocido 'BECARIO'"), resultado.errores());
+		// Permisos y 4 sentencias por cada uno de los 3 bloques
+		assertEquals(13, sentencias);
+
+		assertEquals(252, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM usuario", Integer.class));
+		// Sin roles en el CSV quedan como alumnos; Luis es además profesor
+		assertEquals(251, jdbcTemplate.queryForObject(
+				"SELECT COUNT(*) FROM usuario_roles WHERE rol_nombre = 'ALUMNO'", Integer.class));
+		assertEquals(List.of("ALUMNO", "PROFESOR"), jdbcTemplate.queryForList("""
+				SELECT r.rol_nombre FROM usuario_roles r JOIN usuario u ON u.usuario_id = r.usuario_id
+				WHERE u.email = 'luis@ufv.es' AND u.nombre = 'Gil, Luis' ORDER BY r.rol_nombre
+				""", String.class));
+		String hash = jdbcTemplate.queryForObject(
+				"SELECT contrasena_provisional FROM usuario WHERE email = 'alumno7@ufv.es'", String.class);
+		assertTrue(passwordEncoder.matches("Provisional1", hash));
+		assertEquals(resultado, importacionUsuariosBBDD.obtenerEstado());
+	}
+
+	@Test
+	void alReenviarElFicheroContinuaSinRepetirUsuarios() {
+		// Primer intento cortado en el segundo bloque: el primero queda guardado y el segundo se deshace entero
+		jdbcTemplate.execute("ALTER TABLE usuario_roles ADD CONSTRAINT ck_corte CHECK (usuario_id < 120)");
+		StringBuilder csv = new StringBuilder("email,nombre,contrasena\n");
+		for (int i = 0; i < 150; i++) {
+			csv.append("alumno").append(i).append("@ufv.es,Alumno,Provisional1\n");
+		}
+		assertThrows(RuntimeException.class, () -> importacionUsuariosBBDD.importar(entrada(csv.toString()), ADMIN));
+		assertEquals(101, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM usuario", Integer.class));
+		ResultadoImportacionUsuarios cortada = importacionUsuariosBBDD.obtenerEstado();
+		assertEquals(100, cortada.creados());
+		assertNotNull(cortada.fallo());
+
+		// Se arregla la causa y se reenvía el mismo fichero: continúa desde el segundo bloque
+		jdbcTemplate.execute("ALTER TABLE usuario_roles DROP CONSTRAINT ck_corte");
+		ResultadoImportacionUsuarios resultado = importacionUsuariosBBDD.importar(entrada(csv.toString()), ADMIN);
+		assertEquals(50, resultado.creados());
+		assertEquals(100, resultado.existentes());
+
+		ResultadoImportacionUsuarios reenvio = importacionUsuariosBBDD.importar(entrada(csv.toString()), ADMIN);
+		assertEquals(0, reenvio.creados());
+		assertEquals(150, reenvio.existentes());
+		assertEquals(151, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM usuario", Integer.class));
+		assertEquals(151, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM usuario_roles", Integer.class));
+	}
+
+	@Test
+	void soloLosAdministradoresPuedenImportar() {
+		jdbcTemplate.update("INSERT INTO usuario (usuario_id, email) VALUES (2, 'alumno@ufv.es')");
+		RuntimeException ex = assertThrows(RuntimeException.class,
+				() -> importacionUsuariosBBDD.importar(entrada("email,nombre,contrasena\nx@ufv.es,X,Y\n"), "alumno@ufv.es"));
+		assertTrue(ex.getMessage().contains("No tiene permisos"));
+		assertThrows(IllegalArgumentException.class,
+				() -> importacionUsuariosBBDD.importar(entrada("email,nombre\nx@ufv.es,X\n"), ADMIN));
+	}
+
+	private static InputStream entrada(String csv) {
+		return new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,127 @@
+package com.example.hereapp_backend.dataAccess;
+
+import com.example.hereapp_backend.config.LimitadorConexiones.ServicioSaturadoException;
+import com.example.hereapp_backend.config.MetricasAsistencia;
+import com.example.hereapp_backend.config.RelojAplicacion;
+import com.example.hereapp_backend.config.TimeZoneConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Ingesta agrupada sobre H2 en modo MySQL: un pase que se resuelve dentro de una transacción
+ * interna no obliga a deshacer ni a repetir el resto del lote, y al detenerse ningún pase en
+ * cola se queda sin respuesta.
+ */
+class IngestaFichajesBBDDTest {
+
+	private static final int PROFESOR_ID = 1;
+	private static final LocalDateTime AHORA = LocalDateTime.of(2025, 3, 10, 9, 5);
+	private static final LocalDate HOY = AHORA.toLocalDate();
+
+	private JdbcTemplate jdbcTemplate;
+	private SesionBBDD sesionBBDD;
+	private IngestaFichajesBBDD ingestaFichajesBBDD;
+
+	@BeforeEach
+	void preparar() {
+		SingleConnectionDataSource dataSource = BaseDatosPrueba.crear();
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.update("INSERT INTO usuario (usuario_id, email) VALUES (1, 'profe@ufv.es'), (100, 'ana@ufv.es'), (101, 'luis@ufv.es')");
+		jdbcTemplate.update("INSERT INTO usuario_roles VALUES (1, 'PROFESOR'), (100, 'ALUMNO'), (101, 'ALUMNO')");
+		jdbcTemplate.update("INSERT INTO tarjetas_mifare (uid_mifare, usuario_id) VALUES ('P1', 1), ('A0', 100), ('A1', 101)");
+		jdbcTemplate.update("INSERT INTO horario (profesor_id, dia_semana, asignatura_id, grupo_id, hora_inicio, hora_fin) VALUES (1, 'lunes', 1, 1, '09:00', '10:00')");
+		jdbcTemplate.update("INSERT INTO matricula VALUES (100, 1, 1), (101, 1, 1)");
+
+		RelojAplicacion reloj = new RelojAplicacion(Clock.fixed(
+				ZonedDateTime.of(AHORA, TimeZoneConfig.ZONA_MADRID).toInstant(), TimeZoneConfig.ZONA_MADRID));
+		HorarioBBDD horarioBBDD = new HorarioBBDD(jdbcTemplate, reloj);
+		horarioBBDD.recargarIndice();
+		TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		TarjetaBBDD tarjetaBBDD = new TarjetaBBDD(jdbcTemplate, transactionTemplate, 50_000);
+		tarjetaBBDD.recargarCache();
+		UsuarioBBDD usuarioBBDD = new UsuarioBBDD(null, jdbcTemplate, tarjetaBBDD, 60_000, 600_000);
+		AsistenciaAlumnoBBDD asistenciaAlumnoBBDD = new AsistenciaAlumnoBBDD(jdbcTemplate, transactionTemplate);
+		sesionBBDD = spy(new SesionBBDD(jdbcTemplate, asistenciaAlumnoBBDD, horarioBBDD, transactionTemplate));
+		AsistenciaBBDD asistenciaBBDD = new AsistenciaBBDD(usuarioBBDD, sesionBBDD, asistenciaAlumnoBBDD,
+				mock(FinalizacionSesionBBDD.class), new BloqueosPorUsuario(256), reloj,
+				new MetricasAsistencia(new SimpleMeterRegistry()));
+
+		// Un carril y una ventana amplia: los pases encolados antes de arrancar forman un solo lote
+		ingestaFichajesBBDD = new IngestaFichajesBBDD(asistenciaBBDD, transactionTemplate, true, 1, 10, 3, 1000, false);
+	}
+
+	@AfterEach
+	void detener() {
+		ingestaFichajesBBDD.detener();
+	}
+
+	@Test
+	void laSesionAbiertaPorOtraInstanciaNoDeshaceElLote() throws Exception {
+		// Otra instancia abrió la sesión justo después de que este pase la buscara: el INSERT
+		// choca con el índice único de sesión abierta y crearNuevaSesion devuelve la existente
+		jdbcTemplate.update("""
+				INSERT INTO sesion (fecha_creacion, usuario_id, profesor_id, hora_entrada_profesor, asignatura_id, grupo_id)
+				VALUES (?, 1, 1, '09:00', 1, 1)
+				""", HOY);
+		doReturn(null).doCallRealMethod().when(sesionBBDD).obtenerSesionAbiertaProfesor(PROFESOR_ID);
+
+		CompletableFuture<String> ana = ingestaFichajesBBDD.encolar("A0", "ana@ufv.es");
+		CompletableFuture<String> profesor = ingestaFichajesBBDD.encolar("P1", "profe@ufv.es");
+		CompletableFuture<String> luis = ingestaFichajesBBDD.encolar("A1", "luis@ufv.es");
+		ingestaFichajesBBDD.arrancar();
+
+		assertEquals("Nueva entrada registrada", ana.get(5, TimeUnit.SECONDS));
+		assertEquals("Nueva sesión creada", profesor.get(5, TimeUnit.SECONDS));
+		assertEquals("Nueva entrada registrada", luis.get(5, TimeUnit.SECONDS));
+
+		// El lote se confirmó a la primera: sin reproceso uno a uno
+		verify(sesionBBDD, times(1)).crearNuevaSesion(anyInt(), anyInt(), any());
+		assertEquals(List.of(100, 101), jdbcTemplate.queryForList(
+				"SELECT usuario_id FROM asistencia_alumno WHERE hora_entrada_alumno IS NOT NULL ORDER BY usuario_id",
+				Integer.class));
+		assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM sesion", Integer.class));
+	}
+
+	@Test
+	void alDetenerseRechazaLosPasesQueSeguianEnCola() throws Exception {
+		// Con la ventana de 1 s el pase sigue en cola o en el lote a medio reunir al detenerse
+		ingestaFichajesBBDD.arrancar();
+		CompletableFuture<String> ana = ingestaFichajesBBDD.encolar("A0", "ana@ufv.es");
+		CompletableFuture<String> luis = ingestaFichajesBBDD.encolar("A1", "luis@ufv.es");
+
+		ingestaFichajesBBDD.detener();
+
+		for (CompletableFuture<String> pase : List.of(ana, luis)) {
+			ExecutionException error = assertThrows(ExecutionException.class, () -> pase.get(5, TimeUnit.SECONDS));
+			assertInstanceOf(ServicioSaturadoException.class, error.getCause());
+		}
+		assertThrows(ServicioSaturadoException.class, () -> ingestaFichajesBBDD.encolar("A0", "ana@ufv.es"));
+		assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM asistencia_alumno", Integer.class));
+	}
+}
@@ -0,0 +1,104 @@
+package com.example.hereapp_backend.dataAccess;
+
+import com.example.hereapp_backend.config.EjecutorContrasenas;
+import com.example.hereapp_backend.config.LimitadorConexiones.ServicioSaturadoException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Inicio de sesión sobre H2 en modo MySQL, con costes de BCrypt bajos para que sea rápido.
+ */
+class LogInBBDDTest {
+
+	private static final int COSTE_ANTIGUO = 4;
+	private static final int COSTE_ACTUAL = 5;
+
+	private JdbcTemplate jdbcTemplate;
+	private EjecutorContrasenas ejecutor;
+	private LogInBBDD logInBBDD;
+
+	@BeforeEach
+	void preparar() {
+		jdbcTemplate = new JdbcTemplate(BaseDatosPrueba.crear());
+
+		BCryptPasswordEncoder antiguo = new BCryptPasswordEncoder(COSTE_ANTIGUO);
+		jdbcTemplate.update("INSERT INTO usuario (usuario_id, email, contrasena, contrasena_provisional) VALUES (1, 'profe@ufv.es', ?, ?)",
+				antiguo.encode("secreta"), antiguo.encode("provisional"));
+		jdbcTemplate.update("INSERT INTO usuario_roles VALUES (1, 'PROFESOR'), (1, 'ADMIN')");
+
+		ejecutor = new EjecutorContrasenas(1, 1, 2000);
+		logInBBDD = new LogInBBDD(jdbcTemplate, new BCryptPasswordEncoder(COSTE_ACTUAL), ejecutor);
+	}
+
+	@AfterEach
+	void detener() {
+		ejecutor.detener();
+	}
+
+	@Test
+	void devuelveLosRolesYRehaceElHashConElCosteActual() {
+		assertEquals("ADMIN,PROFESOR", logInBBDD.validarTipoUsuario(" Profe@ufv.es ", "secreta"));
+
+		String hash = jdbcTemplate.queryForObject("SELECT contrasena FROM usuario WHERE usuario_id = 1", String.class);
+		assertTrue(hash.startsWith("$2a$0" + COSTE_ACTUAL + "$"), hash);
+		assertNull(jdbcTemplate.queryForObject("SELECT contrasena_provisional FROM usuario WHERE usuario_id = 1", String.class));
+
+		// El hash nuevo sigue validando la misma contraseña
+		assertEquals("ADMIN,PROFESOR", logInBBDD.validarTipoUsuario("profe@ufv.es", "secreta"));
+	}
+
+	@Test
+	void laContrasenaProvisionalNoModificaElUsuario() {
+		String antes = jdbcTemplate.queryForObject("SELECT contrasena FROM usuario WHERE usuario_id = 1", String.class);
+
+		assertEquals("PROVISIONAL", logInBBDD.validarTipoUsuario("profe@ufv.es", "provisional"));
+		assertNull(logInBBDD.validarTipoUsuario("profe@ufv.es", "incorrecta"));
+		assertNull(logInBBDD.validarTipoUsuario("nadie@ufv.es", "secreta"));
+
+		assertEquals(antes, jdbcTemplate.queryForObject("SELECT contrasena FROM usuario WHERE usuario_id = 1", String.class));
+	}
+
+	@Test
+	void rechazaInicioDeSesionCuandoLaColaEstaLlena() throws Exception {
+		CountDownLatch ocupado = new CountDownLatch(1);
+		CountDownLatch liberar = new CountDownLatch(1);
+
+		// Un hilo ocupado y la única plaza de la cola llena
+		Thread.ofVirtual().start(() -> ejecutor.ejecutar(() -> {
+			ocupado.countDown();
+			return esperar(liberar);
+		}));
+		assertTrue(ocupado.await(5, TimeUnit.SECONDS));
+		Thread.ofVirtual().start(() -> ejecutor.ejecutar(() -> esperar(liberar)));
+		while (ejecutor.getEnCola() == 0) {
+			Thread.onSpinWait();
+		}
+
+		try {
+			assertThrows(ServicioSaturadoException.class,
+					() -> logInBBDD.validarTipoUsuario("profe@ufv.es", "secreta"));
+		} finally {
+			liberar.countDown();
+		}
+	}
+
+	private static boolean esperar(CountDownLatch latch) {
+		try {
+			return latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package com.example.hereapp_backend.dataAccess;
+
+import com.example.hereapp_backend.models.AsistenciaAbierta;
+import com.example.hereapp_backend.models.SesionAbierta;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Las lecturas de un pase con RowMapper tipados devuelven lo mismo que con queryForList, sobre
+ * H2 en modo MySQL. La comparación de bytes asignados está en MapeoFilasBenchmark.
+ */
+class MapeoFilasTest {
+
+	// Las mismas sentencias que lanzan AsistenciaAlumnoBBDD y SesionBBDD
+	private static final String SQL_ASISTENCIA = AsistenciaAlumnoBBDD.SQL_ASISTENCIA_ABIERTA;
+	private static final String SQL_SESION = SesionBBDD.SQL_SESION_ABIERTA_PROFESOR;
+
+	private final LocalDate hoy = LocalDate.of(2025, 3, 10);
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	void preparar() {
+		jdbcTemplate = new JdbcTemplate(BaseDatosPrueba.crear());
+		jdbcTemplate.update("INSERT INTO sesion (fecha_creacion, profesor_id, hora_entrada_profesor, asignatura_id, grupo_id) VALUES (?, 7, ?, 3, 4)",
+				hoy, LocalTime.of(9, 0));
+		jdbcTemplate.update("INSERT INTO asistencia_alumno (usuario_id, sesion_id, fecha_asistencia_alumno, hora_entrada_alumno, tipo_asistencia_id) VALUES (42, 1, ?, ?, 5)",
+				hoy, LocalTime.of(9, 2));
+	}
+
+	@Test
+	void lasFilasTipadasDevuelvenLosMismosDatos() {
+		Map<String, Object> asistencia = jdbcTemplate.queryForList(SQL_ASISTENCIA, 42, hoy).get(0);
+		AsistenciaAbierta tipada = jdbcTemplate.query(SQL_ASISTENCIA, AsistenciaAbierta.MAPPER, 42, hoy).get(0);
+		assertEquals(((Number) asistencia.get("asistencia_alumno_id")).longValue(), tipada.asistenciaAlumnoId());
+		assertEquals(LocalTime.of(9, 2), tipada.horaEntrada());
+
+		SesionAbierta sesion = jdbcTemplate.query(SQL_SESION, SesionAbierta.MAPPER, 7).get(0);
+		assertEquals(new SesionAbierta(1, 3, 4, hoy, LocalTime.of(9, 0)), sesion);
+	}
+}
@@ -0,0 +1,110 @@
+package com.example.hereapp_backend.dataAccess;
+
+import com.example.hereapp_backend.config.JdbcTemplateContado;
+import com.example.hereapp_backend.models.MifareRegistroLote;
+import com.example.hereapp_backend.models.ResultadoLoteMifare;
+import com.example.hereapp_backend.models.ResultadoLoteMifare.Estado;
+import com.example.hereapp_backend.models.ResultadoLoteMifare.ResultadoTarjeta;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Alta masiva de tarjetas sobre H2 en modo MySQL: un número fijo de sentencias por lote
+ * y un estado por UID.
+ */
+class RegistroMifareLoteTest {
+
+	private static final String ADMIN = "admin@ufv.es";
+	private static final int TARJETAS = 2500;
+
+	private JdbcTemplate jdbcTemplate;
+	private TarjetaBBDD tarjetaBBDD;
+	private UsuarioBBDD usuarioBBDD;
+
+	@BeforeEach
+	void preparar() {
+		SingleConnectionDataSource dataSource = BaseDatosPrueba.crear();
+		jdbcTemplate = new JdbcTemplateContado(dataSource);
+		jdbcTemplate.update("INSERT INTO usuario (usuario_id, email) VALUES (1, ?), (2, 'alumno@ufv.es')", ADMIN);
+		jdbcTemplate.update("INSERT INTO usuario_roles VALUES (1, 'ADMIN'), (2, 'ALUMNO')");
+		jdbcTemplate.update("INSERT INTO tarjetas_mifare (uid_mifare) VALUES ('YA-EXISTE')");
+
+		TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		tarjetaBBDD = new TarjetaBBDD(jdbcTemplate, transactionTemplate, 50_000);
+		usuarioBBDD = new UsuarioBBDD(null, jdbcTemplate, tarjetaBBDD, 60_000, 600_000);
+	}
+
+	@Test
+	void registraElLoteConSentenciasIndependientesDelNumeroDeTarjetas() {
+		List<MifareRegistroLote.Tarjeta> tarjetas = new ArrayList<>();
+		for (int i = 0; i < TARJETAS; i++) {
+			tarjetas.add(new MifareRegistroLote.Tarjeta(String.format(" UID%05d ", i), null));
+		}
+		tarjetas.add(new MifareRegistroLote.Tarjeta("YA-EXISTE", null));
+		tarjetas.add(new MifareRegistroLote.Tarjeta("UID00000", null));
+		tarjetas.add(new MifareRegistroLote.Tarjeta("", null));
+		tarjetas.add(new MifareRegistroLote.Tarjeta("CON-TITULAR", "Alumno@ufv.es"));
+		tarjetas.add(new MifareRegistroLote.Tarjeta("SIN-TITULAR", "nadie@ufv.es"));
+
+		int antes = JdbcTemplateContado.sentenciasDelHilo();
+		ResultadoLoteMifare resultado = usuarioBBDD.registrarMifaresLote(tarjetas, ADMIN);
+		int sentencias = JdbcTemplateContado.sentenciasDelHilo() - antes;
+
+		assertEquals(TARJETAS + 1, resultado.registradas());
+		assertEquals(4, resultado.rechazadas());
+		List<ResultadoTarjeta> estados = resultado.tarjetas();
+		assertEquals(Estado.REGISTRADA, estados.get(0).estado());
+		assertEquals("UID00000", estados.get(0).uidMifare());
+		assertEquals(Estado.YA_REGISTRADA, estados.get(TARJETAS).estado());
+		assertEquals(Estado.DUPLICADA_EN_LOTE, estados.get(TARJETAS + 1).estado());
+		assertEquals(Estado.UID_NO_VALIDO, estados.get(TARJETAS + 2).estado());
+		assertEquals(Estado.REGISTRADA, estados.get(TARJETAS + 3).estado());
+		assertEquals(Estado.TITULAR_NO_ENCONTRADO, estados.get(TARJETAS + 4).estado());
+
+		// Permisos, 3 trozos de UID ya registrados, titulares, lote de INSERT y 3 trozos de ids
+		assertEquals(9, sentencias);
+		assertEquals(TARJETAS + 2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM tarjetas_mifare", Integer.class));
+
+		// Los ids devueltos son los guardados y ya están en caché
+		Integer tarjetaTitular = estados.get(TARJETAS + 3).tarjetaId();
+		assertNotNull(tarjetaTitular);
+		assertEquals(tarjetaTitular, jdbcTemplate.queryForObject(
+				"SELECT tarjeta_id FROM tarjetas_mifare WHERE uid_mifare = 'CON-TITULAR' AND usuario_id = 2", Integer.class));
+		assertEquals(tarjetaTitular, tarjetaBBDD.buscarTarjetaEnCache("CON-TITULAR"));
+	}
+
+	@Test
+	void soloLosAdministradoresPuedenRegistrarLotes() {
+		List<MifareRegistroLote.Tarjeta> tarjetas = List.of(new MifareRegistroLote.Tarjeta("UID1", null));
+
+		RuntimeException ex = assertThrows(RuntimeException.class,
+				() -> usuarioBBDD.registrarMifaresLote(tarjetas, "alumno@ufv.es"));
+		assertTrue(ex.getMessage().contains("No tiene permisos"));
+		assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM tarjetas_mifare", Integer.class));
+	}
+
+	@Test
+	void leeElCsvConCabeceraYTitularOpcional() {
+		List<MifareRegistroLote.Tarjeta> tarjetas = MifareRegistroLote.tarjetasDesdeCsv(
+				"\uFEFFuid_mifare;email\r\nAA01;alumno@ufv.es\r\n\r\nAA02\r\nAA03,\r\n");
+
+		assertEquals(3, tarjetas.size());
+		assertEquals("AA01", tarjetas.get(0).getUidMifare());
+		assertEquals("alumno@ufv.es", tarjetas.get(0).getEmailTitular());
+		assertNull(tarjetas.get(1).getEmailTitular());
+		assertNull(tarjetas.get(2).getEmailTitular());
+	}
+}
@@ -0,0 +1,101 @@
+package com.example.hereapp_backend.dataAccess;
+
+import com.example.hereapp_backend.config.RelojAplicacion;
+import com.example.hereapp_backend.config.TimeZoneConfig;
+import com.example.hereapp_backend.models.ResumenAsistencia;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Resumen de asistencia sobre H2 en modo MySQL: suma al finalizar, sin duplicar en los
+ * reintentos, y reconstrucción con el mismo resultado.
+ */
+class ResumenAsistenciaBBDDTest {
+
+	private static final LocalDateTime AHORA = LocalDateTime.of(2025, 3, 12, 12, 0);
+	private static final LocalDate LUNES = LocalDate.of(2025, 3, 10);
+
+	private JdbcTemplate jdbcTemplate;
+	private ResumenAsistenciaBBDD resumenAsistenciaBBDD;
+
+	@BeforeEach
+	void preparar() {
+		SingleConnectionDataSource dataSource = BaseDatosPrueba.crear();
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		// Tres sesiones del grupo 1 de la asignatura 7; el alumno 100 asiste, media y no asiste
+		sesion(1, LUNES, 1, 1, 5);
+		sesion(2, LUNES.plusDays(1), 3, 1, 5);
+		sesion(3, LUNES.plusDays(2), 2, 5, 2);
+
+		RelojAplicacion reloj = new RelojAplicacion(Clock.fixed(
+				ZonedDateTime.of(AHORA, TimeZoneConfig.ZONA_MADRID).toInstant(), TimeZoneConfig.ZONA_MADRID));
+		resumenAsistenciaBBDD = new ResumenAsistenciaBBDD(jdbcTemplate,
+				new TransactionTemplate(new DataSourceTransactionManager(dataSource)), reloj, false);
+	}
+
+	@Test
+	void sumarSesionAcumulaPorAlumnoYNoRepiteUnaSesion() {
+		resumenAsistenciaBBDD.sumarSesion(1, 7, 1);
+		resumenAsistenciaBBDD.sumarSesion(2, 7, 1);
+		resumenAsistenciaBBDD.sumarSesion(3, 7, 1);
+		// Reintento de una finalización ya sumada
+		resumenAsistenciaBBDD.sumarSesion(2, 7, 1);
+
+		ResumenAsistencia alumno = resumenAsistenciaBBDD.obtenerResumen(100, 7, 1);
+		assertEquals(new ResumenAsistencia(100, 7, 1, 1, 1, 1, 0), alumno);
+		assertEquals(33.3, alumno.getPorcentajeAsistencia());
+		assertEquals(66.7, alumno.getPorcentajePresencia());
+		assertEquals(new ResumenAsistencia(101, 7, 1, 2, 0, 0, 1), resumenAsistenciaBBDD.obtenerResumen(101, 7, 1));
+		assertEquals(3, resumenAsistenciaBBDD.obtenerResumenGrupo(7, 1).size());
+		assertNull(resumenAsistenciaBBDD.obtenerResumen(100, 8, 1));
+	}
+
+	@Test
+	void reconstruirDaLoMismoQueLasSumasYOmiteLasSesionesEnCola() {
+		jdbcTemplate.update("""
+				INSERT INTO finalizacion_sesion (sesion_id, asignatura_id, grupo_id, fecha_creacion, ejecutar_en, estado)
+				SELECT sesion_id, asignatura_id, grupo_id, fecha_creacion, fecha_creacion,
+				       CASE WHEN sesion_id = 3 THEN 'PENDIENTE' ELSE 'COMPLETADA' END
+				FROM sesion
+				""");
+		resumenAsistenciaBBDD.sumarSesion(1, 7, 1);
+		resumenAsistenciaBBDD.sumarSesion(2, 7, 1);
+		List<ResumenAsistencia> incremental = resumenAsistenciaBBDD.obtenerResumenGrupo(7, 1);
+
+		jdbcTemplate.update("UPDATE resumen_asistencia SET asiste = 99");
+		resumenAsistenciaBBDD.reconstruir();
+
+		assertEquals(incremental, resumenAsistenciaBBDD.obtenerResumenGrupo(7, 1));
+		// La sesión 3 sigue en cola: se sumará al finalizarse
+		resumenAsistenciaBBDD.sumarSesion(3, 7, 1);
+		assertEquals(new ResumenAsistencia(100, 7, 1, 1, 1, 1, 0), resumenAsistenciaBBDD.obtenerResumen(100, 7, 1));
+	}
+
+	// Sesión cerrada de la asignatura 7, grupo 1, con el tipo de asistencia de los alumnos 100, 101 y 102
+	private void sesion(int sesionId, LocalDate fecha, int alumno100, int alumno101, int alumno102) {
+		jdbcTemplate.update("""
+				INSERT INTO sesion (sesion_id, fecha_creacion, profesor_id, hora_entrada_profesor, hora_salida_profesor, asignatura_id, grupo_id)
+				VALUES (?, ?, 1, '09:00', '10:00', 7, 1)
+				""", sesionId, fecha);
+		int[] tipos = {alumno100, alumno101, alumno102};
+		for (int i = 0; i < tipos.length; i++) {
+			jdbcTemplate.update("""
+					INSERT INTO asistencia_alumno (usuario_id, sesion_id, asignatura_id, grupo_id, fecha_asistencia_alumno, tipo_asistencia_id)
+					VALUES (?, ?, 7, 1, ?, ?)
+					""", 100 + i, sesionId, fecha, tipos[i]);
+		}
+	}
+}
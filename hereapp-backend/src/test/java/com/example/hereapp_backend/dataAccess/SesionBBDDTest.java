@@ -0,0 +1,126 @@
+package com.example.hereapp_backend.dataAccess;
+
+import com.example.hereapp_backend.config.JdbcTemplateContado;
+import com.example.hereapp_backend.config.RelojAplicacion;
+import com.example.hereapp_backend.config.TimeZoneConfig;
+import com.example.hereapp_backend.models.SesionAbierta;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Apertura de sesión sobre H2 en modo MySQL: sentencias enviadas por pase del profesor,
+ * lista de clase creada una sola vez y sesión abierta por otra instancia a la vez.
+ */
+class SesionBBDDTest {
+
+	private static final int PROFESOR_ID = 1;
+	private static final int ALUMNOS = 30;
+	private static final LocalDateTime AHORA = LocalDateTime.of(2025, 3, 10, 9, 5);
+	private static final LocalDate HOY = AHORA.toLocalDate();
+
+	private JdbcTemplate jdbcTemplate;
+	private SesionBBDD sesionBBDD;
+
+	@BeforeEach
+	void preparar() {
+		SingleConnectionDataSource dataSource = BaseDatosPrueba.crear();
+		jdbcTemplate = new JdbcTemplateContado(dataSource);
+		jdbcTemplate.update("INSERT INTO horario (profesor_id, dia_semana, asignatura_id, grupo_id, hora_inicio, hora_fin) VALUES (?, 'lunes', 1, 1, '09:00', '10:00')",
+				PROFESOR_ID);
+		for (int i = 0; i < ALUMNOS; i++) {
+			jdbcTemplate.update("INSERT INTO matricula VALUES (?, 1, 1)", 100 + i);
+			jdbcTemplate.update("INSERT INTO tarjetas_mifare (uid_mifare, usuario_id) VALUES (?, ?)", "A" + i, 100 + i);
+		}
+
+		RelojAplicacion reloj = new RelojAplicacion(Clock.fixed(
+				ZonedDateTime.of(AHORA, TimeZoneConfig.ZONA_MADRID).toInstant(), TimeZoneConfig.ZONA_MADRID));
+		HorarioBBDD horarioBBDD = new HorarioBBDD(jdbcTemplate, reloj);
+		horarioBBDD.recargarIndice();
+
+		TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		AsistenciaAlumnoBBDD asistenciaAlumnoBBDD = new AsistenciaAlumnoBBDD(jdbcTemplate, transactionTemplate);
+		sesionBBDD = new SesionBBDD(jdbcTemplate, asistenciaAlumnoBBDD, horarioBBDD, transactionTemplate);
+	}
+
+	@Test
+	void abrirSesionCreaLaListaDeClaseUnaVezConCuatroSentencias() {
+		int antes = JdbcTemplateContado.sentenciasDelHilo();
+		SesionAbierta sesion = sesionBBDD.crearNuevaSesion(PROFESOR_ID, 7, AHORA);
+		int sentencias = JdbcTemplateContado.sentenciasDelHilo() - antes;
+
+		assertNotNull(sesion);
+		assertEquals(new SesionAbierta(sesion.sesionId(), 1, 1, HOY, AHORA.toLocalTime()), sesion);
+		// Buscar preabierta, INSERT de la sesión, consulta de matriculados y lote de inserciones,
+		// sin depender del número de alumnos
+		assertEquals(4, sentencias);
+		assertEquals(ALUMNOS, contarRegistros(sesion.sesionId()));
+		assertEquals(ALUMNOS, jdbcTemplate.queryForObject(
+				"SELECT COUNT(DISTINCT usuario_id) FROM asistencia_alumno WHERE sesion_id = ?", Integer.class, sesion.sesionId()));
+	}
+
+	@Test
+	void preabrirSesionPreparaLaListaDeClaseEnLaMismaTransaccion() {
+		Integer preabierta = sesionBBDD.preabrirSesion(PROFESOR_ID, 1, 1, HOY);
+		assertEquals(ALUMNOS, contarRegistros(preabierta));
+
+		// Si falla la lista de clase tampoco queda la sesión
+		jdbcTemplate.execute("ALTER TABLE asistencia_alumno ADD CONSTRAINT ck_corte CHECK (usuario_id <> 500)");
+		jdbcTemplate.update("INSERT INTO horario (profesor_id, dia_semana, asignatura_id, grupo_id, hora_inicio, hora_fin) VALUES (2, 'lunes', 2, 1, '09:00', '10:00')");
+		jdbcTemplate.update("INSERT INTO matricula VALUES (500, 2, 1)");
+		assertThrows(DataIntegrityViolationException.class, () -> sesionBBDD.preabrirSesion(2, 2, 1, HOY));
+		assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM sesion WHERE profesor_id = 2", Integer.class));
+	}
+
+	@Test
+	void activarSesionPreabiertaSoloCreaLosRegistrosQueFaltan() {
+		Integer preabierta = sesionBBDD.preabrirSesion(PROFESOR_ID, 1, 1, HOY);
+		// Matrícula posterior a la preparación de la sesión
+		jdbcTemplate.update("INSERT INTO matricula VALUES (200, 1, 1)");
+
+		int antes = JdbcTemplateContado.sentenciasDelHilo();
+		SesionAbierta sesion = sesionBBDD.crearNuevaSesion(PROFESOR_ID, 7, AHORA);
+
+		assertEquals(preabierta, sesion.sesionId());
+		// Buscar preabierta, activarla, consulta de matriculados y lote con el alumno que faltaba
+		assertEquals(4, JdbcTemplateContado.sentenciasDelHilo() - antes);
+		assertEquals(ALUMNOS + 1, contarRegistros(preabierta));
+		assertEquals(AHORA.toLocalTime(), jdbcTemplate.queryForObject(
+				"SELECT hora_entrada_profesor FROM sesion WHERE sesion_id = ?", LocalTime.class, preabierta));
+	}
+
+	@Test
+	void siOtraInstanciaAbrioLaSesionSeDevuelveEsaSinDuplicarRegistros() {
+		// Sesión abierta por otra instancia entre la comprobación y la apertura
+		jdbcTemplate.update("""
+				INSERT INTO sesion (fecha_creacion, usuario_id, profesor_id, hora_entrada_profesor, asignatura_id, grupo_id, tarjeta_id)
+				VALUES (?, ?, ?, '09:04', 1, 1, 7)
+				""", HOY, PROFESOR_ID, PROFESOR_ID);
+		Integer existente = jdbcTemplate.queryForObject("SELECT MAX(sesion_id) FROM sesion", Integer.class);
+
+		SesionAbierta sesion = sesionBBDD.crearNuevaSesion(PROFESOR_ID, 7, AHORA);
+
+		assertEquals(existente, sesion.sesionId());
+		assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM sesion", Integer.class));
+		assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM asistencia_alumno", Integer.class));
+	}
+
+	private int contarRegistros(int sesionId) {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM asistencia_alumno WHERE sesion_id = ?",
+				Integer.class, sesionId);
+	}
+}
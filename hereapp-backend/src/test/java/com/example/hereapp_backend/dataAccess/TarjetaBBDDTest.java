@@ -0,0 +1,75 @@
+package com.example.hereapp_backend.dataAccess;
+
+import com.example.hereapp_backend.dataAccess.TarjetaBBDD.NuevaTarjeta;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Caché de tarjetas sobre H2 en modo MySQL: una tarjeta que falta en la caché, porque se dio
+ * de alta durante una recarga o porque no cabía, se sigue encontrando en la tabla.
+ */
+class TarjetaBBDDTest {
+
+	private SingleConnectionDataSource dataSource;
+	private TransactionTemplate transactionTemplate;
+	// Se ejecuta justo después de que la recarga lea la tabla, antes de cambiar los mapas
+	private Runnable trasLeerTabla = () -> {
+	};
+
+	@BeforeEach
+	void preparar() {
+		dataSource = BaseDatosPrueba.crear();
+		transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.update("INSERT INTO tarjetas_mifare (uid_mifare, usuario_id) VALUES ('A1', 100)");
+	}
+
+	@Test
+	void unaAltaDuranteUnaRecargaSeSigueEncontrando() {
+		TarjetaBBDD tarjetaBBDD = new TarjetaBBDD(jdbcTemplateConPausa(), transactionTemplate, 50_000);
+		tarjetaBBDD.recargarCache();
+		Map<String, Integer>[] altas = new Map[1];
+		trasLeerTabla = () -> altas[0] = tarjetaBBDD.registrarTarjetas(List.of(new NuevaTarjeta("A2", 101)));
+
+		tarjetaBBDD.recargarCache();
+
+		// La recarga leyó la tabla antes del alta, así que el primer pase la busca en la tabla
+		assertEquals(1, tarjetaBBDD.getTamanoCache());
+		assertEquals(altas[0].get("A2"), tarjetaBBDD.obtenerTarjetaId("A2"));
+		assertEquals(altas[0].get("A2"), tarjetaBBDD.buscarTarjetaEnCache("A2"));
+	}
+
+	@Test
+	void siUnaAltaNoCabeSeConsultaLaTabla() {
+		TarjetaBBDD tarjetaBBDD = new TarjetaBBDD(new JdbcTemplate(dataSource), transactionTemplate, 1);
+		tarjetaBBDD.recargarCache();
+
+		Integer tarjetaId = tarjetaBBDD.registrarTarjetas(List.of(new NuevaTarjeta("A2", 101))).get("A2");
+
+		assertEquals(1, tarjetaBBDD.getTamanoCache());
+		assertNull(tarjetaBBDD.buscarTarjetaEnCache("A2"));
+		assertEquals(tarjetaId, tarjetaBBDD.obtenerTarjetaId("A2"));
+	}
+
+	private JdbcTemplate jdbcTemplateConPausa() {
+		return new JdbcTemplate(dataSource) {
+			@Override
+			public void query(String sql, RowCallbackHandler rch) throws DataAccessException {
+				super.query(sql, rch);
+				trasLeerTabla.run();
+			}
+		};
+	}
+}
@@ -0,0 +1,72 @@
+package com.example.hereapp_backend.dataAccess;
+
+import com.example.hereapp_backend.config.JdbcTemplateContado;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Caché de identidades sobre H2 en modo MySQL: acotada, desalojando la entrada más antigua,
+ * purgada de caducadas fuera del camino de los pases e invalidable tras cambiar roles.
+ */
+class UsuarioBBDDTest {
+
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	void preparar() {
+		jdbcTemplate = new JdbcTemplateContado(BaseDatosPrueba.crear());
+		jdbcTemplate.update("INSERT INTO usuario (usuario_id, email) VALUES (1, 'ana@ufv.es'), (2, 'luis@ufv.es'), (3, 'eva@ufv.es')");
+		jdbcTemplate.update("INSERT INTO usuario_roles VALUES (1, 'ALUMNO'), (2, 'ALUMNO'), (3, 'PROFESOR')");
+	}
+
+	@Test
+	void conLaCacheLlenaLaIdentidadNuevaDesalojaLaMasAntigua() {
+		UsuarioBBDD usuarioBBDD = new UsuarioBBDD(null, jdbcTemplate, null, 2, 600_000);
+		usuarioBBDD.obtenerUsuarioId("ana@ufv.es");
+		usuarioBBDD.obtenerUsuarioId("luis@ufv.es");
+		usuarioBBDD.obtenerUsuarioId("eva@ufv.es");
+		assertEquals(2, usuarioBBDD.getTamanoCacheUsuarios());
+
+		// Eva y Luis siguen en caché; Ana, la más antigua, vuelve a la base de datos
+		int antes = JdbcTemplateContado.sentenciasDelHilo();
+		assertEquals("profesor", usuarioBBDD.determinarRolUsuario(3));
+		assertEquals(2, usuarioBBDD.obtenerUsuarioId("luis@ufv.es"));
+		assertEquals(antes, JdbcTemplateContado.sentenciasDelHilo());
+		assertEquals(1, usuarioBBDD.obtenerUsuarioId("ana@ufv.es"));
+		assertEquals(antes + 1, JdbcTemplateContado.sentenciasDelHilo());
+		assertEquals(2, usuarioBBDD.getTamanoCacheUsuarios());
+	}
+
+	@Test
+	void laPurgaQuitaLasCaducadas() throws InterruptedException {
+		UsuarioBBDD usuarioBBDD = new UsuarioBBDD(null, jdbcTemplate, null, 10, 1);
+		usuarioBBDD.obtenerUsuarioId("ana@ufv.es");
+		usuarioBBDD.obtenerUsuarioId("luis@ufv.es");
+		assertEquals(2, usuarioBBDD.getTamanoCacheUsuarios());
+
+		Thread.sleep(5);
+		usuarioBBDD.purgarCaducadas();
+
+		assertEquals(0, usuarioBBDD.getTamanoCacheUsuarios());
+	}
+
+	@Test
+	void invalidarUnUsuarioRecogeSusRolesNuevos() {
+		UsuarioBBDD usuarioBBDD = new UsuarioBBDD(null, jdbcTemplate, null, 10, 600_000);
+		assertEquals("alumno", usuarioBBDD.determinarRolUsuario(1));
+		jdbcTemplate.update("INSERT INTO usuario_roles VALUES (1, 'PROFESOR')");
+		assertEquals("alumno", usuarioBBDD.determinarRolUsuario(1));
+
+		usuarioBBDD.invalidarUsuario(" Ana@ufv.es ");
+		assertEquals("profesor", usuarioBBDD.determinarRolUsuario(1));
+
+		jdbcTemplate.update("DELETE FROM usuario_roles WHERE usuario_id = 1 AND rol_nombre = 'PROFESOR'");
+		usuarioBBDD.obtenerUsuarioId("luis@ufv.es");
+		usuarioBBDD.invalidarCacheUsuarios();
+		assertEquals(0, usuarioBBDD.getTamanoCacheUsuarios());
+		assertEquals("alumno", usuarioBBDD.determinarRolUsuario(1));
+	}
+}
@@ -0,0 +1,67 @@
+-- Tablas de HereApp anteriores a las migraciones de Flyway, para los tests y benchmarks (H2 en modo MySQL).
+-- Solo las columnas que usa dataAccess. Los indices, las restricciones de unicidad y las tablas nuevas
+-- los crean las migraciones de src/main/resources/db/migration, que BaseDatosPrueba aplica encima.
+
+CREATE TABLE usuario (
+    usuario_id INT AUTO_INCREMENT PRIMARY KEY,
+    nombre VARCHAR(100),
+    apellido1 VARCHAR(100),
+    apellido2 VARCHAR(100),
+    email VARCHAR(150) NOT NULL UNIQUE,
+    contrasena VARCHAR(100),
+    contrasena_provisional VARCHAR(100)
+);
+
+CREATE TABLE usuario_roles (
+    usuario_id INT NOT NULL,
+    rol_nombre VARCHAR(20) NOT NULL,
+    PRIMARY KEY (usuario_id, rol_nombre)
+);
+
+CREATE TABLE tarjetas_mifare (
+    tarjeta_id INT AUTO_INCREMENT PRIMARY KEY,
+    uid_mifare VARCHAR(50) NOT NULL,
+    usuario_id INT
+);
+
+CREATE TABLE horario (
+    horario_id INT AUTO_INCREMENT PRIMARY KEY,
+    profesor_id INT NOT NULL,
+    dia_semana VARCHAR(20) NOT NULL,
+    asignatura_id INT NOT NULL,
+    grupo_id INT NOT NULL,
+    hora_inicio TIME NOT NULL,
+    hora_fin TIME NOT NULL
+);
+
+CREATE TABLE matricula (
+    usuario_id INT NOT NULL,
+    asignatura_id INT NOT NULL,
+    grupo_id INT NOT NULL,
+    PRIMARY KEY (usuario_id, asignatura_id, grupo_id)
+);
+
+CREATE TABLE sesion (
+    sesion_id INT AUTO_INCREMENT PRIMARY KEY,
+    fecha_creacion DATE NOT NULL,
+    usuario_id INT,
+    profesor_id INT NOT NULL,
+    hora_entrada_profesor TIME NOT NULL,
+    hora_salida_profesor TIME,
+    asignatura_id INT NOT NULL,
+    grupo_id INT NOT NULL,
+    tarjeta_id INT NOT NULL
+);
+
+CREATE TABLE asistencia_alumno (
+    asistencia_alumno_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    usuario_id INT NOT NULL,
+    asignatura_id INT,
+    grupo_id INT,
+    sesion_id INT,
+    fecha_asistencia_alumno DATE NOT NULL,
+    hora_entrada_alumno TIME,
+    hora_salida_alumno TIME,
+    tipo_asistencia_id INT,
+    tarjeta_id INT
+);